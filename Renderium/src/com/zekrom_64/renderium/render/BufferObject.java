@@ -3,10 +3,12 @@ package com.zekrom_64.renderium.render;
 import java.nio.ByteBuffer;
 
 import org.lwjgl.opengl.GL45;
+import org.lwjgl.system.MemoryUtil;
 
 import com.zekrom_64.renderium.render.info.MapMode;
 import com.zekrom_64.renderium.util.ISafeCloseable;
 import com.zekrom_64.renderium.util.IStruct;
+import com.zekrom_64.renderium.util.collections.StructArray;
 
 public class BufferObject implements ISafeCloseable {
 
@@ -49,6 +51,32 @@ public class BufferObject implements ISafeCloseable {
 		return this;
 	}
 	
+	/** Updates this buffer from the dirty elements of a struct array, copying only the spans of
+	 * memory which have changed and then marking the array as clean. The buffer is expected to
+	 * hold a copy of the array's memory at the given offset.
+	 * 
+	 * @param array Struct array to update from
+	 * @param offset Byte offset of the array in this buffer
+	 * @return This buffer object
+	 */
+	public BufferObject update(StructArray<?> array, int offset) {
+		if (!array.isDirty()) return this;
+		// Map only the range covering the dirty spans
+		int[] range = { Integer.MAX_VALUE, 0 };
+		array.forEachDirtySpan((start, length) -> {
+			range[0] = Math.min(range[0], start);
+			range[1] = Math.max(range[1], start + length);
+		});
+		if (range[0] < range[1]) {
+			ByteBuffer mem = map(MapMode.WRITE_ONLY, offset + range[0], range[1] - range[0]);
+			long src = array.getAddress(), dst = MemoryUtil.memAddress(mem) - range[0];
+			array.forEachDirtySpan((start, length) -> MemoryUtil.memCopy(src + start, dst + start, length));
+			unmap();
+		}
+		array.clearDirty();
+		return this;
+	}
+	
 	@Override
 	public void close() {
 		GL45.glDeleteBuffers(bufferID);
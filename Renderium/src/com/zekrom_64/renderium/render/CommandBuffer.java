@@ -0,0 +1,415 @@
+package com.zekrom_64.renderium.render;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.lwjgl.system.MemoryUtil;
+
+import com.zekrom_64.renderium.render.info.BlendEquation;
+import com.zekrom_64.renderium.render.info.CullMode;
+import com.zekrom_64.renderium.render.info.DrawMode;
+import com.zekrom_64.renderium.render.info.FrontFace;
+import com.zekrom_64.renderium.render.info.UniformBinding;
+import com.zekrom_64.renderium.util.ISafeCloseable;
+import com.zekrom_64.renderium.util.TypeUtils;
+
+/** <p>A command buffer records rendering commands so they can be replayed later onto any
+ * {@link ICommandExecutor}, such as a {@link Renderer}. Commands are encoded as compact integer
+ * opcodes and arguments in native memory, and objects referenced by commands are stored once in a
+ * table of references. Recording does not call OpenGL, so command buffers can be recorded on any
+ * thread and replayed on the rendering thread.</p>
+ * 
+ * <p>A command buffer may be replayed any number of times, so static command sequences only need
+ * to be recorded once. Objects referenced by the commands must remain valid while the command
+ * buffer may be replayed.</p>
+ * 
+ * @author Zekrom_64
+ * 
+ */
+public class CommandBuffer implements ICommandExecutor, ISafeCloseable {
+	
+	/** Enumeration of commands that may be recorded.
+	 * 
+	 * @author Zekrom_64
+	 * 
+	 */
+	public static enum Command {
+		USE_VERTEX_ARRAY,
+		USE_SHADER_PROGRAM,
+		BIND_UNIFORM_BUFFER,
+		BIND_UNIFORM_TEXTURE,
+		USE_FRAMEBUFFER,
+		DRAW,
+		DRAW_INDEXED,
+		MULTI_DRAW,
+		MULTI_DRAW_INDEXED,
+		PUSH_VIEWPORT,
+		POP_VIEWPORT,
+		PUSH_SCISSOR,
+		POP_SCISSOR,
+		SET_FRONT_FACE,
+		SET_CULL_MODE,
+		SET_BLEND_EQUATION;
+		
+		// Cached array of values to decode opcodes
+		private static final Command[] VALUES = values();
+		
+	}
+	
+	// Cached enum values to decode arguments
+	private static final DrawMode[] DRAW_MODES = DrawMode.values();
+	private static final FrontFace[] FRONT_FACES = FrontFace.values();
+	private static final CullMode[] CULL_MODES = CullMode.values();
+	
+	// The initial size of the command memory in bytes
+	private static final int INITIAL_SIZE = 1024;
+	
+	// Memory storing encoded commands, or null once closed
+	private ByteBuffer commands;
+	// The address of the command memory
+	private long address;
+	// The number of bytes of commands recorded
+	private int length = 0;
+	// The number of commands recorded
+	private int commandCount = 0;
+	
+	// Table of objects referenced by commands
+	private Object[] references = new Object[16];
+	// The number of referenced objects
+	private int referenceCount = 0;
+	// Map of referenced objects to their indices
+	private final Map<Object, Integer> referenceIndices = new IdentityHashMap<>();
+	
+	/** Creates a new empty command buffer.
+	 * 
+	 */
+	public CommandBuffer() {
+		commands = MemoryUtil.memAlloc(INITIAL_SIZE);
+		address = MemoryUtil.memAddress(commands);
+	}
+	
+	@Override
+	public void close() {
+		if (commands != null) {
+			MemoryUtil.memFree(commands);
+			commands = null;
+			address = 0;
+			reset();
+		}
+	}
+	
+	// Checks that the command memory has not been freed
+	private void checkOpen() {
+		if (commands == null) throw new IllegalStateException("Command buffer is closed");
+	}
+	
+	//=========//
+	// Getters //
+	//=========//
+	
+	/** Gets the number of commands recorded.
+	 * 
+	 * @return Command count
+	 */
+	public int getCommandCount() {
+		return commandCount;
+	}
+	
+	/** Gets the number of bytes of native memory the recorded commands use.
+	 * 
+	 * @return Encoded command length
+	 */
+	public int getLength() {
+		return length;
+	}
+	
+	/** Gets if no commands have been recorded.
+	 * 
+	 * @return If the command buffer is empty
+	 */
+	public boolean isEmpty() {
+		return commandCount == 0;
+	}
+	
+	/** Removes all recorded commands and references, allowing the command buffer to be recorded again.
+	 * 
+	 * @return This command buffer
+	 */
+	public @NonNull CommandBuffer reset() {
+		length = 0;
+		commandCount = 0;
+		Arrays.fill(references, 0, referenceCount, null);
+		referenceCount = 0;
+		referenceIndices.clear();
+		return this;
+	}
+	
+	//==========//
+	// Encoding //
+	//==========//
+	
+	// Begins a new command, ensuring there is space for the opcode and arguments
+	private void begin(Command cmd, int nargs) {
+		checkOpen();
+		int required = length + 4 * (nargs + 1);
+		if (required > commands.capacity()) {
+			commands = MemoryUtil.memRealloc(commands, Math.max(commands.capacity() * 2, required));
+			address = MemoryUtil.memAddress(commands);
+		}
+		MemoryUtil.memPutInt(address + length, cmd.ordinal());
+		length += 4;
+		commandCount++;
+	}
+	
+	// Appends an integer argument
+	private void put(int value) {
+		MemoryUtil.memPutInt(address + length, value);
+		length += 4;
+	}
+	
+	// Appends a reference to an object argument
+	private void putReference(Object obj) {
+		Integer index = referenceIndices.get(obj);
+		if (index == null) {
+			if (referenceCount == references.length) references = Arrays.copyOf(references, referenceCount * 2);
+			index = referenceCount;
+			references[referenceCount++] = obj;
+			referenceIndices.put(obj, index);
+		}
+		put(index);
+	}
+	
+	@Override
+	public @NonNull CommandBuffer useVertexArray(@NonNull VertexArray array) {
+		begin(Command.USE_VERTEX_ARRAY, 1);
+		putReference(array);
+		return this;
+	}
+	
+	@Override
+	public @NonNull CommandBuffer useShaderProgram(@NonNull ShaderProgram program) {
+		begin(Command.USE_SHADER_PROGRAM, 1);
+		putReference(program);
+		return this;
+	}
+	
+	@Override
+	public @NonNull CommandBuffer bindUniform(@NonNull UniformBinding binding, @NonNull BufferObject buffer, int offset, int size) {
+		begin(Command.BIND_UNIFORM_BUFFER, 4);
+		putReference(binding);
+		putReference(buffer);
+		put(offset);
+		put(size);
+		return this;
+	}
+	
+	@Override
+	public @NonNull CommandBuffer bindUniform(@NonNull UniformBinding binding, @NonNull Texture texture, @NonNull Sampler sampler) {
+		begin(Command.BIND_UNIFORM_TEXTURE, 3);
+		putReference(binding);
+		putReference(texture);
+		putReference(sampler);
+		return this;
+	}
+	
+	@Override
+	public @NonNull CommandBuffer useFramebuffer(@NonNull Framebuffer fb) {
+		begin(Command.USE_FRAMEBUFFER, 1);
+		putReference(fb);
+		return this;
+	}
+	
+	@Override
+	public @NonNull CommandBuffer draw(@NonNull DrawMode mode, int vertexCount, int instanceCount, int firstVertex, int firstInstance) {
+		begin(Command.DRAW, 5);
+		put(mode.ordinal());
+		put(vertexCount);
+		put(instanceCount);
+		put(firstVertex);
+		put(firstInstance);
+		return this;
+	}
+	
+	@Override
+	public @NonNull CommandBuffer drawIndexed(@NonNull DrawMode mode, int indexCount, int instanceCount, int firstIndex, int vertexOffset, int firstInstance) {
+		begin(Command.DRAW_INDEXED, 6);
+		put(mode.ordinal());
+		put(indexCount);
+		put(instanceCount);
+		put(firstIndex);
+		put(vertexOffset);
+		put(firstInstance);
+		return this;
+	}
+	
+	@Override
+	public @NonNull CommandBuffer multiDraw(@NonNull DrawMode mode, @NonNull BufferObject buffer, int offset, int drawCount) {
+		begin(Command.MULTI_DRAW, 4);
+		put(mode.ordinal());
+		putReference(buffer);
+		put(offset);
+		put(drawCount);
+		return this;
+	}
+	
+	@Override
+	public @NonNull CommandBuffer multiDrawIndexed(@NonNull DrawMode mode, @NonNull BufferObject buffer, int offset, int drawCount) {
+		begin(Command.MULTI_DRAW_INDEXED, 4);
+		put(mode.ordinal());
+		putReference(buffer);
+		put(offset);
+		put(drawCount);
+		return this;
+	}
+	
+	@Override
+	public @NonNull CommandBuffer pushViewport(int x, int y, int width, int height) {
+		begin(Command.PUSH_VIEWPORT, 4);
+		put(x);
+		put(y);
+		put(width);
+		put(height);
+		return this;
+	}
+	
+	@Override
+	public @NonNull CommandBuffer popViewport() {
+		begin(Command.POP_VIEWPORT, 0);
+		return this;
+	}
+	
+	@Override
+	public @NonNull CommandBuffer pushScissor(int x, int y, int width, int height) {
+		begin(Command.PUSH_SCISSOR, 4);
+		put(x);
+		put(y);
+		put(width);
+		put(height);
+		return this;
+	}
+	
+	@Override
+	public @NonNull CommandBuffer popScissor() {
+		begin(Command.POP_SCISSOR, 0);
+		return this;
+	}
+	
+	@Override
+	public @NonNull CommandBuffer setFrontFace(@NonNull FrontFace face) {
+		begin(Command.SET_FRONT_FACE, 1);
+		put(face.ordinal());
+		return this;
+	}
+	
+	@Override
+	public @NonNull CommandBuffer setCullMode(@NonNull CullMode mode) {
+		begin(Command.SET_CULL_MODE, 1);
+		put(mode.ordinal());
+		return this;
+	}
+	
+	@Override
+	public @NonNull CommandBuffer setBlendEquation(@NonNull BlendEquation eq) {
+		begin(Command.SET_BLEND_EQUATION, 1);
+		putReference(eq);
+		return this;
+	}
+	
+	//==========//
+	// Decoding //
+	//==========//
+	
+	// Gets a referenced object
+	@SuppressWarnings("unchecked")
+	private <T> @NonNull T getReference(long ptr) {
+		return TypeUtils.nonNull((T)references[MemoryUtil.memGetInt(ptr)]);
+	}
+	
+	/** Replays the recorded commands onto an executor, in the order they were recorded.
+	 * 
+	 * @param executor Executor to replay commands onto
+	 * @return This command buffer
+	 * @throws IllegalStateException If the command buffer has been closed
+	 */
+	public @NonNull CommandBuffer replay(@NonNull ICommandExecutor executor) {
+		checkOpen();
+		long ptr = address, end = address + length;
+		while(ptr < end) {
+			Command cmd = Command.VALUES[MemoryUtil.memGetInt(ptr)];
+			ptr += 4;
+			switch(cmd) {
+			case USE_VERTEX_ARRAY:
+				executor.useVertexArray(getReference(ptr));
+				ptr += 4;
+				break;
+			case USE_SHADER_PROGRAM:
+				executor.useShaderProgram(getReference(ptr));
+				ptr += 4;
+				break;
+			case BIND_UNIFORM_BUFFER:
+				executor.bindUniform(this.<UniformBinding>getReference(ptr), this.<BufferObject>getReference(ptr + 4), MemoryUtil.memGetInt(ptr + 8), MemoryUtil.memGetInt(ptr + 12));
+				ptr += 16;
+				break;
+			case BIND_UNIFORM_TEXTURE:
+				executor.bindUniform(this.<UniformBinding>getReference(ptr), this.<Texture>getReference(ptr + 4), this.<Sampler>getReference(ptr + 8));
+				ptr += 12;
+				break;
+			case USE_FRAMEBUFFER:
+				executor.useFramebuffer(getReference(ptr));
+				ptr += 4;
+				break;
+			case DRAW:
+				executor.draw(TypeUtils.nonNull(DRAW_MODES[MemoryUtil.memGetInt(ptr)]), MemoryUtil.memGetInt(ptr + 4), MemoryUtil.memGetInt(ptr + 8),
+					MemoryUtil.memGetInt(ptr + 12), MemoryUtil.memGetInt(ptr + 16));
+				ptr += 20;
+				break;
+			case DRAW_INDEXED:
+				executor.drawIndexed(TypeUtils.nonNull(DRAW_MODES[MemoryUtil.memGetInt(ptr)]), MemoryUtil.memGetInt(ptr + 4), MemoryUtil.memGetInt(ptr + 8),
+					MemoryUtil.memGetInt(ptr + 12), MemoryUtil.memGetInt(ptr + 16), MemoryUtil.memGetInt(ptr + 20));
+				ptr += 24;
+				break;
+			case MULTI_DRAW:
+				executor.multiDraw(TypeUtils.nonNull(DRAW_MODES[MemoryUtil.memGetInt(ptr)]), this.<BufferObject>getReference(ptr + 4),
+					MemoryUtil.memGetInt(ptr + 8), MemoryUtil.memGetInt(ptr + 12));
+				ptr += 16;
+				break;
+			case MULTI_DRAW_INDEXED:
+				executor.multiDrawIndexed(TypeUtils.nonNull(DRAW_MODES[MemoryUtil.memGetInt(ptr)]), this.<BufferObject>getReference(ptr + 4),
+					MemoryUtil.memGetInt(ptr + 8), MemoryUtil.memGetInt(ptr + 12));
+				ptr += 16;
+				break;
+			case PUSH_VIEWPORT:
+				executor.pushViewport(MemoryUtil.memGetInt(ptr), MemoryUtil.memGetInt(ptr + 4), MemoryUtil.memGetInt(ptr + 8), MemoryUtil.memGetInt(ptr + 12));
+				ptr += 16;
+				break;
+			case POP_VIEWPORT:
+				executor.popViewport();
+				break;
+			case PUSH_SCISSOR:
+				executor.pushScissor(MemoryUtil.memGetInt(ptr), MemoryUtil.memGetInt(ptr + 4), MemoryUtil.memGetInt(ptr + 8), MemoryUtil.memGetInt(ptr + 12));
+				ptr += 16;
+				break;
+			case POP_SCISSOR:
+				executor.popScissor();
+				break;
+			case SET_FRONT_FACE:
+				executor.setFrontFace(TypeUtils.nonNull(FRONT_FACES[MemoryUtil.memGetInt(ptr)]));
+				ptr += 4;
+				break;
+			case SET_CULL_MODE:
+				executor.setCullMode(TypeUtils.nonNull(CULL_MODES[MemoryUtil.memGetInt(ptr)]));
+				ptr += 4;
+				break;
+			case SET_BLEND_EQUATION:
+				executor.setBlendEquation(getReference(ptr));
+				ptr += 4;
+				break;
+			}
+		}
+		return this;
+	}
+	
+}
@@ -0,0 +1,172 @@
+package com.zekrom_64.renderium.render;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+import com.zekrom_64.renderium.render.CommandBuffer.Command;
+import com.zekrom_64.renderium.render.info.BlendEquation;
+import com.zekrom_64.renderium.render.info.CullMode;
+import com.zekrom_64.renderium.render.info.DrawMode;
+import com.zekrom_64.renderium.render.info.FrontFace;
+import com.zekrom_64.renderium.render.info.UniformBinding;
+
+/** A counting command executor does not render anything, but counts the commands executed on it
+ * and the number of vertices and instances drawn. This does not require an OpenGL context, so it
+ * can be used to inspect recorded command buffers in headless environments.
+ * 
+ * @author Zekrom_64
+ * 
+ */
+public class CountingCommandExecutor implements ICommandExecutor {
+	
+	// The number of times each command was executed
+	private final int[] counts = new int[Command.values().length];
+	// The total number of vertices and instances drawn
+	private long vertexCount = 0, instanceCount = 0;
+	
+	/** Gets the number of times a command was executed.
+	 * 
+	 * @param cmd Command type
+	 * @return Command count
+	 */
+	public int getCount(@NonNull Command cmd) {
+		return counts[cmd.ordinal()];
+	}
+	
+	/** Gets the total number of commands executed.
+	 * 
+	 * @return Total command count
+	 */
+	public int getTotalCount() {
+		int total = 0;
+		for(int c : counts) total += c;
+		return total;
+	}
+	
+	/** Gets the number of draw commands executed, both indexed and non-indexed. Each multi-draw
+	 * command counts as a single draw.
+	 * 
+	 * @return Draw count
+	 */
+	public int getDrawCount() {
+		return getCount(Command.DRAW) + getCount(Command.DRAW_INDEXED) + getCount(Command.MULTI_DRAW) + getCount(Command.MULTI_DRAW_INDEXED);
+	}
+	
+	/** Gets the total number of vertices drawn, counting each instance separately. Vertices drawn
+	 * by multi-draw commands are not counted, as their parameters are stored in buffer objects.
+	 * 
+	 * @return Vertex count
+	 */
+	public long getVertexCount() {
+		return vertexCount;
+	}
+	
+	/** Gets the total number of instances drawn.
+	 * 
+	 * @return Instance count
+	 */
+	public long getInstanceCount() {
+		return instanceCount;
+	}
+	
+	/** Resets all counts to zero.
+	 * 
+	 * @return This executor
+	 */
+	public @NonNull CountingCommandExecutor reset() {
+		for(int i = 0; i < counts.length; i++) counts[i] = 0;
+		vertexCount = 0;
+		instanceCount = 0;
+		return this;
+	}
+	
+	// Counts a command
+	private @NonNull CountingCommandExecutor count(Command cmd) {
+		counts[cmd.ordinal()]++;
+		return this;
+	}
+	
+	@Override
+	public @NonNull CountingCommandExecutor useVertexArray(@NonNull VertexArray array) {
+		return count(Command.USE_VERTEX_ARRAY);
+	}
+	
+	@Override
+	public @NonNull CountingCommandExecutor useShaderProgram(@NonNull ShaderProgram program) {
+		return count(Command.USE_SHADER_PROGRAM);
+	}
+	
+	@Override
+	public @NonNull CountingCommandExecutor bindUniform(@NonNull UniformBinding binding, @NonNull BufferObject buffer, int offset, int size) {
+		return count(Command.BIND_UNIFORM_BUFFER);
+	}
+	
+	@Override
+	public @NonNull CountingCommandExecutor bindUniform(@NonNull UniformBinding binding, @NonNull Texture texture, @NonNull Sampler sampler) {
+		return count(Command.BIND_UNIFORM_TEXTURE);
+	}
+	
+	@Override
+	public @NonNull CountingCommandExecutor useFramebuffer(@NonNull Framebuffer fb) {
+		return count(Command.USE_FRAMEBUFFER);
+	}
+	
+	@Override
+	public @NonNull CountingCommandExecutor draw(@NonNull DrawMode mode, int vertexCount, int instanceCount, int firstVertex, int firstInstance) {
+		this.vertexCount += (long)vertexCount * instanceCount;
+		this.instanceCount += instanceCount;
+		return count(Command.DRAW);
+	}
+	
+	@Override
+	public @NonNull CountingCommandExecutor drawIndexed(@NonNull DrawMode mode, int indexCount, int instanceCount, int firstIndex, int vertexOffset, int firstInstance) {
+		this.vertexCount += (long)indexCount * instanceCount;
+		this.instanceCount += instanceCount;
+		return count(Command.DRAW_INDEXED);
+	}
+	
+	@Override
+	public @NonNull CountingCommandExecutor multiDraw(@NonNull DrawMode mode, @NonNull BufferObject buffer, int offset, int drawCount) {
+		return count(Command.MULTI_DRAW);
+	}
+	
+	@Override
+	public @NonNull CountingCommandExecutor multiDrawIndexed(@NonNull DrawMode mode, @NonNull BufferObject buffer, int offset, int drawCount) {
+		return count(Command.MULTI_DRAW_INDEXED);
+	}
+	
+	@Override
+	public @NonNull CountingCommandExecutor pushViewport(int x, int y, int width, int height) {
+		return count(Command.PUSH_VIEWPORT);
+	}
+	
+	@Override
+	public @NonNull CountingCommandExecutor popViewport() {
+		return count(Command.POP_VIEWPORT);
+	}
+	
+	@Override
+	public @NonNull CountingCommandExecutor pushScissor(int x, int y, int width, int height) {
+		return count(Command.PUSH_SCISSOR);
+	}
+	
+	@Override
+	public @NonNull CountingCommandExecutor popScissor() {
+		return count(Command.POP_SCISSOR);
+	}
+	
+	@Override
+	public @NonNull CountingCommandExecutor setFrontFace(@NonNull FrontFace face) {
+		return count(Command.SET_FRONT_FACE);
+	}
+	
+	@Override
+	public @NonNull CountingCommandExecutor setCullMode(@NonNull CullMode mode) {
+		return count(Command.SET_CULL_MODE);
+	}
+	
+	@Override
+	public @NonNull CountingCommandExecutor setBlendEquation(@NonNull BlendEquation eq) {
+		return count(Command.SET_BLEND_EQUATION);
+	}
+	
+}
@@ -0,0 +1,147 @@
+package com.zekrom_64.renderium.render;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.lwjgl.stb.STBImage;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+
+import com.zekrom_64.renderium.render.info.Format;
+import com.zekrom_64.renderium.resource.ResourceLocation;
+import com.zekrom_64.renderium.util.ISafeCloseable;
+
+/** A decoded image holds the pixels of an image decoded into host memory, ready to be uploaded to
+ * a texture. Decoding does not use OpenGL, so images may be decoded on any thread and uploaded
+ * later on the rendering thread.
+ * 
+ * @author Zekrom_64
+ * 
+ */
+public class DecodedImage implements ISafeCloseable {
+	
+	// The ways an image's pixels may be allocated
+	enum Allocation {
+		// Allocated with MemoryUtil.memAlloc
+		MEMORY_UTIL,
+		// Allocated by STB when decoding
+		STB,
+		// Mapped from a file, and released when garbage collected
+		MAPPED
+	}
+	
+	/** The width of the image in pixels. */
+	public final int width;
+	/** The height of the image in pixels. */
+	public final int height;
+	/** The format of the image's pixels. */
+	public final @NonNull Format format;
+	/** The image's pixels, with tightly packed rows. */
+	public final @NonNull ByteBuffer pixels;
+	// How the pixels were allocated
+	private final Allocation allocation;
+	// If the image has been closed
+	private boolean closed = false;
+	
+	/** Creates a decoded image from existing pixels. The pixels must be allocated with
+	 * {@link MemoryUtil#memAlloc}, and the image takes ownership of them.
+	 * 
+	 * @param width Image width
+	 * @param height Image height
+	 * @param format Pixel format
+	 * @param pixels Image pixels
+	 */
+	public DecodedImage(int width, int height, @NonNull Format format, @NonNull ByteBuffer pixels) {
+		this(width, height, format, pixels, Allocation.MEMORY_UTIL);
+	}
+	
+	DecodedImage(int width, int height, @NonNull Format format, @NonNull ByteBuffer pixels, Allocation allocation) {
+		this.width = width;
+		this.height = height;
+		this.format = format;
+		this.pixels = pixels;
+		this.allocation = allocation;
+	}
+	
+	/** Decodes an image from encoded image data in memory.
+	 * 
+	 * @param data Encoded image data
+	 * @return Decoded image
+	 * @throws IOException If the image cannot be decoded
+	 */
+	public static @NonNull DecodedImage decode(@NonNull ByteBuffer data) throws IOException {
+		try (MemoryStack sp = MemoryStack.stackPush()) {
+			IntBuffer x = sp.mallocInt(1), y = sp.mallocInt(1), channels = sp.mallocInt(1);
+			ByteBuffer pixels = STBImage.stbi_load_from_memory(data, x, y, channels, STBImage.STBI_default);
+			if (pixels == null) throw new IOException("Failed to decode image: " + STBImage.stbi_failure_reason());
+			// Initialize format based on what STB returns
+			Format format;
+			switch(channels.get(0)) {
+			case STBImage.STBI_rgb_alpha:
+				format = Format.R8G8B8A8_UNORM;
+				break;
+			case STBImage.STBI_rgb:
+				format = Format.R8G8B8_UNORM;
+				break;
+			default:
+				STBImage.stbi_image_free(pixels);
+				throw new IOException("Unsupported image channel count " + channels.get(0));
+			}
+			return new DecodedImage(x.get(0), y.get(0), format, pixels, Allocation.STB);
+		}
+	}
+	
+	/** Reads and decodes an image resource.
+	 * 
+	 * @param resource Image resource
+	 * @return Decoded image
+	 * @throws IOException If the resource cannot be read or decoded
+	 */
+	public static @NonNull DecodedImage decode(@NonNull ResourceLocation resource) throws IOException {
+		return decode(resource.readBytes());
+	}
+	
+	/** Decodes an image from encoded image data.
+	 * 
+	 * @param data Encoded image data
+	 * @return Decoded image
+	 * @throws IOException If the image cannot be decoded
+	 */
+	public static @NonNull DecodedImage decode(byte[] data) throws IOException {
+		ByteBuffer databuf = MemoryUtil.memAlloc(data.length);
+		try {
+			databuf.put(0, data);
+			return decode(databuf);
+		} finally {
+			MemoryUtil.memFree(databuf);
+		}
+	}
+	
+	/** Gets the size of the image's pixels in bytes.
+	 * 
+	 * @return Pixel data size
+	 */
+	public int getSize() {
+		return pixels.capacity();
+	}
+	
+	@Override
+	public void close() {
+		if (closed) return;
+		closed = true;
+		pixels.rewind();
+		switch(allocation) {
+		case MEMORY_UTIL:
+			MemoryUtil.memFree(pixels);
+			break;
+		case STB:
+			STBImage.stbi_image_free(pixels);
+			break;
+		case MAPPED:
+			break;
+		}
+	}
+	
+}
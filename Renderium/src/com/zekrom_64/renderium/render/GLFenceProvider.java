@@ -0,0 +1,48 @@
+package com.zekrom_64.renderium.render;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.lwjgl.opengl.GL45;
+
+/** A fence provider implemented using OpenGL sync objects.
+ * 
+ * @author Zekrom_64
+ * 
+ */
+public class GLFenceProvider implements IFenceProvider {
+	
+	/** The shared OpenGL fence provider. */
+	public static final @NonNull GLFenceProvider INSTANCE = new GLFenceProvider();
+	
+	// The time to wait for a fence before checking it again, in nanoseconds
+	private static final long WAIT_TIMEOUT = 1000000;
+	
+	@Override
+	public long createFence() {
+		return GL45.glFenceSync(GL45.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+	}
+	
+	@Override
+	public void waitFence(long fence) {
+		// Flush commands on the first wait so the fence is guaranteed to be signaled eventually
+		int flags = GL45.GL_SYNC_FLUSH_COMMANDS_BIT;
+		while(true) {
+			int result = GL45.glClientWaitSync(fence, flags, WAIT_TIMEOUT);
+			switch(result) {
+			case GL45.GL_ALREADY_SIGNALED:
+			case GL45.GL_CONDITION_SATISFIED:
+				return;
+			case GL45.GL_WAIT_FAILED:
+				throw new IllegalStateException("Failed to wait on fence");
+			default:
+				flags = 0;
+				break;
+			}
+		}
+	}
+	
+	@Override
+	public void deleteFence(long fence) {
+		GL45.glDeleteSync(fence);
+	}
+	
+}
@@ -0,0 +1,175 @@
+package com.zekrom_64.renderium.render;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+import com.zekrom_64.renderium.render.info.BlendEquation;
+import com.zekrom_64.renderium.render.info.CullMode;
+import com.zekrom_64.renderium.render.info.DrawMode;
+import com.zekrom_64.renderium.render.info.FrontFace;
+import com.zekrom_64.renderium.render.info.UniformBinding;
+
+/** A command executor accepts the rendering commands issued by a {@link Renderer}. The renderer
+ * itself executes commands immediately, while other executors may record commands for later
+ * execution (such as a {@link CommandBuffer}) or only observe them (such as a
+ * {@link CountingCommandExecutor}).
+ * 
+ * @author Zekrom_64
+ * 
+ */
+public interface ICommandExecutor {
+	
+	//==================//
+	// Resource Binding //
+	//==================//
+	
+	/** Binds the given vertex array for rendering.
+	 * 
+	 * @param array Vertex array to use
+	 * @return This executor
+	 */
+	public @NonNull ICommandExecutor useVertexArray(@NonNull VertexArray array);
+	
+	/** Binds the given shader program for rendering.
+	 * 
+	 * @param program Shader program to use
+	 * @return This executor
+	 */
+	public @NonNull ICommandExecutor useShaderProgram(@NonNull ShaderProgram program);
+	
+	/** Binds a buffer object range to a shader program uniform.
+	 * 
+	 * @param binding Uniform binding
+	 * @param buffer Buffer object to bind
+	 * @param offset The offset into the buffer to bind at
+	 * @param size The length of the binding in bytes
+	 * @return This executor
+	 */
+	public @NonNull ICommandExecutor bindUniform(@NonNull UniformBinding binding, @NonNull BufferObject buffer, int offset, int size);
+	
+	/** Binds a combined texture and sampler to a shader program uniform.
+	 * 
+	 * @param binding Uniform binding
+	 * @param texture Texture to bind
+	 * @param sampler Sampler to bind
+	 * @return This executor
+	 */
+	public @NonNull ICommandExecutor bindUniform(@NonNull UniformBinding binding, @NonNull Texture texture, @NonNull Sampler sampler);
+	
+	/** Binds the given framebuffer to use for rendering.
+	 * 
+	 * @param fb Framebuffer to use
+	 * @return This executor
+	 */
+	public @NonNull ICommandExecutor useFramebuffer(@NonNull Framebuffer fb);
+	
+	//============//
+	// Draw Calls //
+	//============//
+	
+	/** Draws vertices using the current set of bound resources.
+	 * 
+	 * @param mode Draw mode
+	 * @param vertexCount Number of vertices to draw
+	 * @param instanceCount Number of instances to draw
+	 * @param firstVertex Offset of the first vertex to draw
+	 * @param firstInstance Offset of the first instance to draw
+	 * @return This executor
+	 */
+	public @NonNull ICommandExecutor draw(@NonNull DrawMode mode, int vertexCount, int instanceCount, int firstVertex, int firstInstance);
+	
+	/** Draws indexed vertices using the current set of bound resources.
+	 * 
+	 * @param mode Draw mode
+	 * @param indexCount Number of indexed vertices to draw
+	 * @param instanceCount Number of instances to draw
+	 * @param firstIndex Offset of the first index to draw
+	 * @param vertexOffset Offset to apply to each index
+	 * @param firstInstance Offset of the first instance to draw
+	 * @return This executor
+	 */
+	public @NonNull ICommandExecutor drawIndexed(@NonNull DrawMode mode, int indexCount, int instanceCount, int firstIndex, int vertexOffset, int firstInstance);
+	
+	/** Draws vertices using the current set of bound resources, once for each
+	 * {@link DrawArray.Draw} command stored in a buffer.
+	 * 
+	 * @param mode Draw mode
+	 * @param buffer Buffer holding draw commands
+	 * @param offset Byte offset of the first draw command in the buffer
+	 * @param drawCount Number of draw commands
+	 * @return This executor
+	 */
+	public @NonNull ICommandExecutor multiDraw(@NonNull DrawMode mode, @NonNull BufferObject buffer, int offset, int drawCount);
+	
+	/** Draws indexed vertices using the current set of bound resources, once for each
+	 * {@link DrawArray.DrawIndexed} command stored in a buffer.
+	 * 
+	 * @param mode Draw mode
+	 * @param buffer Buffer holding draw commands
+	 * @param offset Byte offset of the first draw command in the buffer
+	 * @param drawCount Number of draw commands
+	 * @return This executor
+	 */
+	public @NonNull ICommandExecutor multiDrawIndexed(@NonNull DrawMode mode, @NonNull BufferObject buffer, int offset, int drawCount);
+	
+	//========================//
+	// Viewport/Scissor State //
+	//========================//
+	
+	/** Pushes a new viewport to the viewport stack and sets the current viewport.
+	 * 
+	 * @param x X offset
+	 * @param y Y offset
+	 * @param width Viewport width
+	 * @param height Viewport height
+	 * @return This executor
+	 */
+	public @NonNull ICommandExecutor pushViewport(int x, int y, int width, int height);
+	
+	/** Pops a viewport from the viewport stack and sets the current viewport to the new top.
+	 * 
+	 * @return This executor
+	 */
+	public @NonNull ICommandExecutor popViewport();
+	
+	/** Pushes a new scissor to the scissor stack and sets the current scissor.
+	 * 
+	 * @param x X offset
+	 * @param y Y offset
+	 * @param width Scissor width
+	 * @param height Scissor height
+	 * @return This executor
+	 */
+	public @NonNull ICommandExecutor pushScissor(int x, int y, int width, int height);
+	
+	/** Pops a scissor from the scissor stack and sets the current scissor to the new top.
+	 * 
+	 * @return This executor
+	 */
+	public @NonNull ICommandExecutor popScissor();
+	
+	//======================//
+	// Misc. Pipeline State //
+	//======================//
+	
+	/** Set which winding order is used to determine the front face for face culling.
+	 * 
+	 * @param face Front face type
+	 * @return This executor
+	 */
+	public @NonNull ICommandExecutor setFrontFace(@NonNull FrontFace face);
+	
+	/** Sets the face culling mode to use.
+	 * 
+	 * @param mode Face culling mode
+	 * @return This executor
+	 */
+	public @NonNull ICommandExecutor setCullMode(@NonNull CullMode mode);
+	
+	/** Sets the blend equation to use.
+	 * 
+	 * @param eq Blend equation
+	 * @return This executor
+	 */
+	public @NonNull ICommandExecutor setBlendEquation(@NonNull BlendEquation eq);
+	
+}
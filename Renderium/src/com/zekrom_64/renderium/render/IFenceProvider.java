@@ -0,0 +1,29 @@
+package com.zekrom_64.renderium.render;
+
+/** A fence provider creates and waits on fences, which track when the device has finished all
+ * commands issued before the fence was created. Fences are identified by opaque handles.
+ * 
+ * @author Zekrom_64
+ * 
+ */
+public interface IFenceProvider {
+	
+	/** Creates a new fence after all previously issued commands.
+	 * 
+	 * @return Fence handle
+	 */
+	public long createFence();
+	
+	/** Waits until a fence is signaled, blocking if needed.
+	 * 
+	 * @param fence Fence handle
+	 */
+	public void waitFence(long fence);
+	
+	/** Deletes a fence. The handle may not be used afterwards.
+	 * 
+	 * @param fence Fence handle
+	 */
+	public void deleteFence(long fence);
+	
+}
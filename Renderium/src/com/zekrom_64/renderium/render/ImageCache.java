@@ -0,0 +1,224 @@
+package com.zekrom_64.renderium.render;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.zekrom_64.renderium.render.DecodedImage.Allocation;
+import com.zekrom_64.renderium.render.info.Format;
+import com.zekrom_64.renderium.resource.ResourceLocation;
+
+/** <p>An image cache stores decoded images on disk, so images do not have to be decoded again
+ * each time they are loaded. Each image is stored in its own file named by a hash of its key,
+ * with a small header holding a digest of the encoded image data, the pixel format, the image
+ * size, and the number and sizes of its mip levels. Only the base level is cached, so the level
+ * count is always 1, and files holding any other number of levels are treated as invalid.</p>
+ * 
+ * <p>When loading an image the digest of its encoded data is compared against the cached digest,
+ * and the cached file is replaced if the source data has changed. Cached pixels are read through a
+ * memory mapping of the file, so a cache hit does not decode or copy the image before it is
+ * uploaded. Image caches may be used from multiple threads.</p>
+ * 
+ * @author Zekrom_64
+ * 
+ */
+public class ImageCache {
+	
+	// Magic number at the start of a cache file
+	private static final int MAGIC = 0x52494331;
+	// The version of the cache file format
+	private static final int VERSION = 1;
+	// The digest algorithm used for keys and source data
+	private static final String DIGEST_ALGORITHM = "SHA-256";
+	// The size of a digest in bytes
+	private static final int DIGEST_SIZE = 32;
+	// The offset of the digest in the header
+	private static final int DIGEST_OFFSET = 8;
+	// The size of the fixed header fields, excluding mip level sizes
+	private static final int HEADER_SIZE = DIGEST_OFFSET + DIGEST_SIZE + 16;
+	// The number of mip levels a cache file holds
+	private static final int LEVELS = 1;
+	// The file extension of cache files
+	private static final String EXTENSION = ".img";
+	
+	// The directory cache files are stored in
+	private final @NonNull File directory;
+	// The number of loads that were served from the cache
+	private final AtomicInteger hits = new AtomicInteger();
+	// The number of loads that had to decode the image
+	private final AtomicInteger misses = new AtomicInteger();
+	
+	/** Creates a new image cache storing files in the given directory, creating the directory if
+	 * it does not exist.
+	 * 
+	 * @param directory Cache directory
+	 * @throws IOException If the directory cannot be created
+	 */
+	public ImageCache(@NonNull File directory) throws IOException {
+		Files.createDirectories(directory.toPath());
+		this.directory = directory;
+	}
+	
+	/** Gets the directory cache files are stored in.
+	 * 
+	 * @return Cache directory
+	 */
+	public @NonNull File getDirectory() {
+		return directory;
+	}
+	
+	/** Gets the number of loads that were served from the cache.
+	 * 
+	 * @return Cache hit count
+	 */
+	public int getHits() {
+		return hits.get();
+	}
+	
+	/** Gets the number of loads that had to decode their image.
+	 * 
+	 * @return Cache miss count
+	 */
+	public int getMisses() {
+		return misses.get();
+	}
+	
+	// Creates a new message digest
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance(DIGEST_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	// Gets the cache file for a key
+	private File getFile(String key) {
+		byte[] hash = newDigest().digest(key.getBytes(StandardCharsets.UTF_8));
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < 16; i++) sb.append(String.format("%02x", hash[i]));
+		return new File(directory, sb.append(EXTENSION).toString());
+	}
+	
+	//=========//
+	// Loading //
+	//=========//
+	
+	/** Loads an image resource, using the cached image if the resource has not changed.
+	 * 
+	 * @param resource Image resource
+	 * @return Decoded image
+	 * @throws IOException If the resource cannot be read or decoded
+	 */
+	public @NonNull DecodedImage load(@NonNull ResourceLocation resource) throws IOException {
+		return load(resource.toString(), resource.readBytes());
+	}
+	
+	/** Loads an image from encoded image data, using the cached image for the key if the data has
+	 * not changed. If the data has changed or is not cached, the image is decoded and cached.
+	 * 
+	 * @param key Key identifying the image
+	 * @param data Encoded image data
+	 * @return Decoded image
+	 * @throws IOException If the image cannot be decoded
+	 */
+	public @NonNull DecodedImage load(@NonNull String key, byte[] data) throws IOException {
+		byte[] digest = newDigest().digest(data);
+		File file = getFile(key);
+		DecodedImage image = read(file, digest);
+		if (image != null) {
+			hits.incrementAndGet();
+			return image;
+		}
+		misses.incrementAndGet();
+		image = DecodedImage.decode(data);
+		try {
+			write(file, digest, image);
+		} catch (IOException e) {
+			// Failing to cache an image only means it will be decoded again next time
+		}
+		return image;
+	}
+	
+	// Reads a cached image, or returns null if it is not cached or the cached image is stale or invalid
+	private @Nullable DecodedImage read(File file, byte[] digest) {
+		if (!file.isFile()) return null;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long fileSize = channel.size();
+			if (fileSize < HEADER_SIZE) return null;
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			while(header.hasRemaining()) if (channel.read(header) < 0) return null;
+			if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) return null;
+			byte[] cachedDigest = new byte[DIGEST_SIZE];
+			header.get(DIGEST_OFFSET, cachedDigest);
+			if (!Arrays.equals(digest, cachedDigest)) return null;
+			
+			int p = DIGEST_OFFSET + DIGEST_SIZE;
+			Format format = getFormat(header.getInt(p));
+			int width = header.getInt(p + 4), height = header.getInt(p + 8), levels = header.getInt(p + 12);
+			// Textures are created with a single level, so extra levels could never be uploaded
+			if (format == null || width <= 0 || height <= 0 || levels != LEVELS) return null;
+			
+			// Read the size of the base level
+			ByteBuffer sizes = ByteBuffer.allocate(LEVELS * 4).order(ByteOrder.LITTLE_ENDIAN);
+			while(sizes.hasRemaining()) if (channel.read(sizes) < 0) return null;
+			long dataOffset = HEADER_SIZE + LEVELS * 4L;
+			int size = sizes.getInt(0);
+			if ((long)width * height * format.sizeof != size || dataOffset + size > fileSize) return null;
+			
+			ByteBuffer pixels = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset, size).order(ByteOrder.nativeOrder());
+			return new DecodedImage(width, height, format, pixels, Allocation.MAPPED);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+	
+	// Gets the format with the given OpenGL internal format, or null if there is none
+	private static @Nullable Format getFormat(int glInternalFormat) {
+		for(Format f : Format.values()) {
+			if (f.glInternalFormat == glInternalFormat && f.sizeof > 0) return f;
+		}
+		return null;
+	}
+	
+	// Writes an image to a cache file, replacing it atomically so readers never see a partial file
+	private void write(File file, byte[] digest, DecodedImage image) throws IOException {
+		Path temp = Files.createTempFile(directory.toPath(), file.getName(), ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + LEVELS * 4).order(ByteOrder.LITTLE_ENDIAN);
+				header.putInt(MAGIC).putInt(VERSION).put(digest);
+				header.putInt(image.format.glInternalFormat).putInt(image.width).putInt(image.height);
+				header.putInt(LEVELS).putInt(image.getSize());
+				header.flip();
+				while(header.hasRemaining()) channel.write(header);
+				ByteBuffer pixels = image.pixels.duplicate().clear();
+				while(pixels.hasRemaining()) channel.write(pixels);
+			}
+			try {
+				Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+	
+}
@@ -0,0 +1,273 @@
+package com.zekrom_64.renderium.render;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.lwjgl.system.MemoryUtil;
+
+import com.zekrom_64.renderium.render.DrawArray.Draw;
+import com.zekrom_64.renderium.render.DrawArray.DrawIndexed;
+import com.zekrom_64.renderium.render.info.DrawMode;
+import com.zekrom_64.renderium.render.info.MapMode;
+import com.zekrom_64.renderium.util.ISafeCloseable;
+import com.zekrom_64.renderium.util.TypeUtils;
+
+/** <p>An indirect draw builder collects many draw commands and submits them using as few
+ * multi-draw calls as possible. Draws are grouped into buckets of draws sharing the same shader
+ * program, vertex array, and draw mode. When submitted, the commands of each bucket are packed
+ * contiguously into a buffer object using the layout of {@link Draw} or {@link DrawIndexed}, and
+ * each bucket is drawn with a single call to {@link ICommandExecutor#multiDraw multiDraw} or
+ * {@link ICommandExecutor#multiDrawIndexed multiDrawIndexed}.</p>
+ * 
+ * <p>A builder holds either indexed or non-indexed draws, but not both. The buffer object holding
+ * commands is owned by the builder and is reallocated when it is too small.</p>
+ * 
+ * @author Zekrom_64
+ * 
+ */
+public class IndirectDrawBuilder implements ISafeCloseable {
+	
+	// The state shared by draws in a bucket
+	private static record StateKey(ShaderProgram program, VertexArray array, DrawMode mode) { }
+	
+	// If the builder holds indexed draws
+	private final boolean indexed;
+	// The number of integers in each draw command
+	private final int commandInts;
+	// Draw command parameters, in the order they were added
+	private int[] commands = new int[256];
+	// The bucket of each draw
+	private int[] drawBuckets = new int[64];
+	// The number of draws
+	private int drawCount = 0;
+	
+	// Map of states to bucket indices
+	private final Map<StateKey, Integer> bucketIndices = new HashMap<>();
+	// List of bucket states, by index
+	private final List<StateKey> buckets = new ArrayList<>();
+	
+	// The buffer object commands are uploaded to
+	private BufferObject buffer = null;
+	
+	/** Creates a new indirect draw builder.
+	 * 
+	 * @param indexed If the builder holds indexed draws
+	 */
+	public IndirectDrawBuilder(boolean indexed) {
+		this.indexed = indexed;
+		commandInts = indexed ? DrawIndexed.SIZEOF_INTS : Draw.SIZEOF_INTS;
+	}
+	
+	@Override
+	public void close() {
+		if (buffer != null) {
+			buffer.close();
+			buffer = null;
+		}
+	}
+	
+	//=========//
+	// Getters //
+	//=========//
+	
+	/** Gets if the builder holds indexed draws.
+	 * 
+	 * @return If draws are indexed
+	 */
+	public boolean isIndexed() {
+		return indexed;
+	}
+	
+	/** Gets the number of draws added to the builder.
+	 * 
+	 * @return Draw count
+	 */
+	public int getDrawCount() {
+		return drawCount;
+	}
+	
+	/** Gets the number of buckets of draws sharing state, which is the number of multi-draw calls
+	 * the builder will submit.
+	 * 
+	 * @return Bucket count
+	 */
+	public int getBucketCount() {
+		return buckets.size();
+	}
+	
+	/** Removes all draws from the builder.
+	 * 
+	 * @return This builder
+	 */
+	public @NonNull IndirectDrawBuilder clear() {
+		drawCount = 0;
+		bucketIndices.clear();
+		buckets.clear();
+		return this;
+	}
+	
+	//===========//
+	// Recording //
+	//===========//
+	
+	// Begins a new draw, returning the offset of its parameters
+	private int begin(ShaderProgram program, VertexArray array, DrawMode mode, boolean indexed) {
+		if (indexed != this.indexed) throw new IllegalArgumentException(this.indexed ? "Builder only accepts indexed draws" : "Builder only accepts non-indexed draws");
+		StateKey key = new StateKey(program, array, mode);
+		Integer bucket = bucketIndices.get(key);
+		if (bucket == null) {
+			bucket = buckets.size();
+			buckets.add(key);
+			bucketIndices.put(key, bucket);
+		}
+		if (drawCount == drawBuckets.length) drawBuckets = Arrays.copyOf(drawBuckets, drawCount * 2);
+		if ((drawCount + 1) * commandInts > commands.length) commands = Arrays.copyOf(commands, commands.length * 2);
+		drawBuckets[drawCount] = bucket;
+		return drawCount++ * commandInts;
+	}
+	
+	/** Adds a non-indexed draw.
+	 * 
+	 * @param program Shader program to draw with
+	 * @param array Vertex array to draw from
+	 * @param mode Draw mode
+	 * @param vertexCount Number of vertices to draw
+	 * @param instanceCount Number of instances to draw
+	 * @param firstVertex Offset of the first vertex to draw
+	 * @param firstInstance Offset of the first instance to draw
+	 * @return This builder
+	 */
+	public @NonNull IndirectDrawBuilder draw(@NonNull ShaderProgram program, @NonNull VertexArray array, @NonNull DrawMode mode,
+			int vertexCount, int instanceCount, int firstVertex, int firstInstance) {
+		int p = begin(program, array, mode, false);
+		commands[p] = vertexCount;
+		commands[p + 1] = instanceCount;
+		commands[p + 2] = firstVertex;
+		commands[p + 3] = firstInstance;
+		return this;
+	}
+	
+	/** Adds a non-indexed draw.
+	 * 
+	 * @param program Shader program to draw with
+	 * @param array Vertex array to draw from
+	 * @param mode Draw mode
+	 * @param draw Draw command
+	 * @return This builder
+	 */
+	public @NonNull IndirectDrawBuilder draw(@NonNull ShaderProgram program, @NonNull VertexArray array, @NonNull DrawMode mode, @NonNull Draw draw) {
+		return draw(program, array, mode, draw.vertexCount, draw.instanceCount, draw.firstVertex, draw.firstInstance);
+	}
+	
+	/** Adds an indexed draw.
+	 * 
+	 * @param program Shader program to draw with
+	 * @param array Vertex array to draw from
+	 * @param mode Draw mode
+	 * @param indexCount Number of indexed vertices to draw
+	 * @param instanceCount Number of instances to draw
+	 * @param firstIndex Offset of the first index to draw
+	 * @param vertexOffset Offset to apply to each index
+	 * @param firstInstance Offset of the first instance to draw
+	 * @return This builder
+	 */
+	public @NonNull IndirectDrawBuilder drawIndexed(@NonNull ShaderProgram program, @NonNull VertexArray array, @NonNull DrawMode mode,
+			int indexCount, int instanceCount, int firstIndex, int vertexOffset, int firstInstance) {
+		int p = begin(program, array, mode, true);
+		commands[p] = indexCount;
+		commands[p + 1] = instanceCount;
+		commands[p + 2] = firstIndex;
+		commands[p + 3] = vertexOffset;
+		commands[p + 4] = firstInstance;
+		return this;
+	}
+	
+	/** Adds an indexed draw.
+	 * 
+	 * @param program Shader program to draw with
+	 * @param array Vertex array to draw from
+	 * @param mode Draw mode
+	 * @param draw Draw command
+	 * @return This builder
+	 */
+	public @NonNull IndirectDrawBuilder drawIndexed(@NonNull ShaderProgram program, @NonNull VertexArray array, @NonNull DrawMode mode, @NonNull DrawIndexed draw) {
+		return drawIndexed(program, array, mode, draw.indexCount, draw.instanceCount, draw.firstIndex, draw.vertexOffset, draw.firstInstance);
+	}
+	
+	//============//
+	// Submission //
+	//============//
+	
+	// Orders buckets so buckets sharing a shader program are adjacent, then packs the commands of
+	// each bucket contiguously at the given address, storing the order of the buckets and the
+	// first command and number of commands of each bucket
+	private void pack(long address, int[] order, int[] starts, int[] counts) {
+		int nbuckets = buckets.size();
+		// Order buckets by the first appearance of their shader program
+		Map<ShaderProgram, Integer> programOrder = new IdentityHashMap<>();
+		Integer[] sorted = new Integer[nbuckets];
+		for(int i = 0; i < nbuckets; i++) {
+			programOrder.putIfAbsent(buckets.get(i).program(), programOrder.size());
+			sorted[i] = i;
+		}
+		Arrays.sort(sorted, (a, b) -> Integer.compare(programOrder.get(buckets.get(a).program()), programOrder.get(buckets.get(b).program())));
+		
+		// Compute the first command of each bucket from bucket sizes
+		for(int i = 0; i < drawCount; i++) counts[drawBuckets[i]]++;
+		int start = 0;
+		for(int i = 0; i < nbuckets; i++) {
+			int b = sorted[i];
+			order[i] = b;
+			starts[b] = start;
+			start += counts[b];
+		}
+		
+		// Scatter commands into their bucket's range
+		int[] next = Arrays.copyOf(starts, nbuckets);
+		int stride = commandInts * 4;
+		for(int i = 0; i < drawCount; i++) {
+			long dst = address + (long)next[drawBuckets[i]]++ * stride;
+			for(int j = 0, p = i * commandInts; j < commandInts; j++) MemoryUtil.memPutInt(dst + j * 4, commands[p + j]);
+		}
+	}
+	
+	/** Uploads the draws to the builder's buffer object and submits them to an executor, with a
+	 * single multi-draw call for each bucket. The draws are kept so they may be submitted again.
+	 * 
+	 * @param executor Executor to submit draws to
+	 * @return This builder
+	 */
+	public @NonNull IndirectDrawBuilder submit(@NonNull ICommandExecutor executor) {
+		if (drawCount == 0) return this;
+		int stride = commandInts * 4;
+		int size = drawCount * stride;
+		if (buffer == null || buffer.getSize() < size) {
+			if (buffer != null) buffer.close();
+			buffer = new BufferObject(Math.max(size, buffer != null ? buffer.getSize() * 2 : 0), MapMode.WRITE_INVALIDATE);
+		}
+		BufferObject buffer = this.buffer;
+		
+		int nbuckets = buckets.size();
+		int[] order = new int[nbuckets], starts = new int[nbuckets], counts = new int[nbuckets];
+		ByteBuffer mem = buffer.map(MapMode.WRITE_INVALIDATE, 0, size);
+		pack(MemoryUtil.memAddress(mem), order, starts, counts);
+		buffer.unmap();
+		
+		for(int i = 0; i < nbuckets; i++) {
+			int b = order[i];
+			StateKey state = buckets.get(b);
+			DrawMode mode = TypeUtils.nonNull(state.mode());
+			executor.useShaderProgram(TypeUtils.nonNull(state.program())).useVertexArray(TypeUtils.nonNull(state.array()));
+			if (indexed) executor.multiDrawIndexed(mode, buffer, starts[b] * stride, counts[b]);
+			else executor.multiDraw(mode, buffer, starts[b] * stride, counts[b]);
+		}
+		return this;
+	}
+	
+}
@@ -0,0 +1,427 @@
+package com.zekrom_64.renderium.render;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.zekrom_64.renderium.render.info.DrawMode;
+import com.zekrom_64.renderium.render.info.UniformBinding;
+import com.zekrom_64.renderium.util.TypeUtils;
+
+/** <p>A render queue collects draw calls over a frame and submits them in an order which minimizes
+ * the number of state changes. Each draw is assigned a 64-bit sort key which packs, from most to
+ * least significant, the render pass, shader program, texture, vertex array, and depth of the draw.
+ * The keys are radix sorted when the queue is submitted, so draws are grouped first by pass, then by
+ * shader program, and so on, with draws using identical state ordered front to back.</p>
+ * 
+ * <p>A pass may instead be ordered back to front, such as for translucent geometry. In such a pass
+ * the depth is placed directly below the pass in the sort key, so every draw in the pass is
+ * submitted strictly back to front regardless of its state, and state is only grouped between draws
+ * at the same quantized depth. The queue also counts the state changes the
+ * draws would have needed in submission order and the state changes actually needed after sorting,
+ * which can be measured without a GPU by submitting to a {@link CountingCommandExecutor}.</p>
+ * 
+ * @author Zekrom_64
+ * 
+ */
+public class RenderQueue {
+	
+	//==========//
+	// Sort Key //
+	//==========//
+	
+	// The number of bits of each sort key field
+	private static final int
+		PASS_BITS = 8,
+		PROGRAM_BITS = 12,
+		TEXTURE_BITS = 12,
+		ARRAY_BITS = 12,
+		DEPTH_BITS = 20;
+		
+	// The shift of each sort key field
+	private static final int
+		DEPTH_SHIFT = 0,
+		ARRAY_SHIFT = DEPTH_SHIFT + DEPTH_BITS,
+		TEXTURE_SHIFT = ARRAY_SHIFT + ARRAY_BITS,
+		PROGRAM_SHIFT = TEXTURE_SHIFT + TEXTURE_BITS,
+		PASS_SHIFT = PROGRAM_SHIFT + PROGRAM_BITS;
+		
+	// The shift of each sort key field in a pass ordered back to front, where depth is sorted first
+	private static final int
+		BTF_ARRAY_SHIFT = 0,
+		BTF_TEXTURE_SHIFT = BTF_ARRAY_SHIFT + ARRAY_BITS,
+		BTF_PROGRAM_SHIFT = BTF_TEXTURE_SHIFT + TEXTURE_BITS,
+		BTF_DEPTH_SHIFT = BTF_PROGRAM_SHIFT + PROGRAM_BITS;
+		
+	/** The number of render passes the queue supports. */
+	public static final int MAX_PASSES = 1 << PASS_BITS;
+	
+	// Quantizes a depth value, which must be non-negative, to an unsigned integer of DEPTH_BITS
+	private static long quantizeDepth(float depth) {
+		// The bits of non-negative floats are ordered the same as their values
+		if (!(depth > 0)) return 0;
+		return Float.floatToRawIntBits(depth) >>> (31 - DEPTH_BITS);
+	}
+	
+	//=================//
+	// Resource Tables //
+	//=================//
+	
+	// A table assigning small indices to objects used by draws in the queue
+	private static class ResourceTable {
+		
+		// The name of the resource type
+		private final String name;
+		// The maximum number of resources
+		private final int limit;
+		// Map of resources to indices
+		private final Map<Object, Integer> indices = new IdentityHashMap<>();
+		
+		ResourceTable(String name, int bits) {
+			this.name = name;
+			this.limit = 1 << bits;
+		}
+		
+		// Gets the index of a resource, where null resources use index 0
+		int indexOf(@Nullable Object obj) {
+			if (obj == null) return 0;
+			Integer index = indices.get(obj);
+			if (index == null) {
+				if (indices.size() + 1 >= limit) throw new IllegalStateException("Too many distinct " + name + " in render queue");
+				index = indices.size() + 1;
+				indices.put(obj, index);
+			}
+			return index;
+		}
+		
+		void clear() {
+			indices.clear();
+		}
+		
+	}
+	
+	// Resource tables for each type of resource
+	private final ResourceTable programTable = new ResourceTable("shader programs", PROGRAM_BITS);
+	private final ResourceTable textureTable = new ResourceTable("textures", TEXTURE_BITS);
+	private final ResourceTable arrayTable = new ResourceTable("vertex arrays", ARRAY_BITS);
+	
+	//=======//
+	// Draws //
+	//=======//
+	
+	// The number of integer parameters stored for each draw
+	private static final int DRAW_PARAMS = 7;
+	
+	// The number of draws in the queue
+	private int size = 0;
+	// The sort key of each draw
+	private long[] keys;
+	// Integer parameters of each draw (mode, indexed, count, instances, first, vertex offset, first instance)
+	private int[] params;
+	// Resources used by each draw
+	private ShaderProgram[] programs;
+	private VertexArray[] arrays;
+	private UniformBinding[] textureBindings;
+	private Texture[] textures;
+	private Sampler[] samplers;
+	
+	// Sorting buffers
+	private long[] sortKeys, tmpKeys;
+	private int[] sortIndices, tmpIndices;
+	private final int[] histograms = new int[8 * 256];
+	
+	// Set of passes which are sorted back to front
+	private final boolean[] backToFront = new boolean[MAX_PASSES];
+	
+	// State change counts of the last submission
+	private int unsortedStateChanges = 0, sortedStateChanges = 0;
+	
+	// Cached draw modes
+	private static final DrawMode[] DRAW_MODES = DrawMode.values();
+	
+	/** Creates a new render queue.
+	 * 
+	 * @param capacity The initial number of draws the queue can hold
+	 */
+	public RenderQueue(int capacity) {
+		allocate(Math.max(capacity, 16));
+	}
+	
+	/** Creates a new render queue with a default initial capacity.
+	 * 
+	 */
+	public RenderQueue() {
+		this(256);
+	}
+	
+	// Allocates storage for the given number of draws, preserving existing draws
+	private void allocate(int capacity) {
+		keys = keys == null ? new long[capacity] : Arrays.copyOf(keys, capacity);
+		params = params == null ? new int[capacity * DRAW_PARAMS] : Arrays.copyOf(params, capacity * DRAW_PARAMS);
+		programs = programs == null ? new ShaderProgram[capacity] : Arrays.copyOf(programs, capacity);
+		arrays = arrays == null ? new VertexArray[capacity] : Arrays.copyOf(arrays, capacity);
+		textureBindings = textureBindings == null ? new UniformBinding[capacity] : Arrays.copyOf(textureBindings, capacity);
+		textures = textures == null ? new Texture[capacity] : Arrays.copyOf(textures, capacity);
+		samplers = samplers == null ? new Sampler[capacity] : Arrays.copyOf(samplers, capacity);
+		sortKeys = new long[capacity];
+		tmpKeys = new long[capacity];
+		sortIndices = new int[capacity];
+		tmpIndices = new int[capacity];
+	}
+	
+	/** Gets the number of draws in the queue.
+	 * 
+	 * @return Queue size
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/** Sets if a render pass is ordered back to front instead of front to back. Draws in a pass
+	 * ordered back to front are sorted by depth before state, so they may need many more state
+	 * changes. This only affects draws added after it is set.
+	 * 
+	 * @param pass Render pass
+	 * @param enable If the pass is ordered back to front
+	 * @return This render queue
+	 */
+	public @NonNull RenderQueue setBackToFront(int pass, boolean enable) {
+		backToFront[pass] = enable;
+		return this;
+	}
+	
+	// Adds a draw to the queue
+	private @NonNull RenderQueue add(int pass, @NonNull ShaderProgram program, @NonNull VertexArray array, @Nullable UniformBinding textureBinding,
+			@Nullable Texture texture, @Nullable Sampler sampler, float depth, DrawMode mode, boolean indexed,
+			int count, int instanceCount, int first, int vertexOffset, int firstInstance) {
+		if (pass < 0 || pass >= MAX_PASSES) throw new IllegalArgumentException("Invalid render pass " + pass);
+		if ((textureBinding == null) != (texture == null) || (texture == null) != (sampler == null))
+			throw new IllegalArgumentException("Texture binding, texture, and sampler must all be given or all be null");
+		if (size == keys.length) allocate(size * 2);
+		
+		long depthKey = quantizeDepth(depth);
+		long programKey = programTable.indexOf(program), textureKey = textureTable.indexOf(texture), arrayKey = arrayTable.indexOf(array);
+		if (backToFront[pass]) {
+			// Depth takes priority over state so the whole pass is drawn back to front
+			depthKey = ~depthKey & ((1L << DEPTH_BITS) - 1);
+			keys[size] =
+				((long)pass << PASS_SHIFT) |
+				(depthKey << BTF_DEPTH_SHIFT) |
+				(programKey << BTF_PROGRAM_SHIFT) |
+				(textureKey << BTF_TEXTURE_SHIFT) |
+				(arrayKey << BTF_ARRAY_SHIFT);
+		} else {
+			keys[size] =
+				((long)pass << PASS_SHIFT) |
+				(programKey << PROGRAM_SHIFT) |
+				(textureKey << TEXTURE_SHIFT) |
+				(arrayKey << ARRAY_SHIFT) |
+				(depthKey << DEPTH_SHIFT);
+		}
+			
+		int p = size * DRAW_PARAMS;
+		params[p] = mode.ordinal();
+		params[p + 1] = indexed ? 1 : 0;
+		params[p + 2] = count;
+		params[p + 3] = instanceCount;
+		params[p + 4] = first;
+		params[p + 5] = vertexOffset;
+		params[p + 6] = firstInstance;
+		programs[size] = program;
+		arrays[size] = array;
+		textureBindings[size] = textureBinding;
+		textures[size] = texture;
+		samplers[size] = sampler;
+		size++;
+		return this;
+	}
+	
+	/** Queues a non-indexed draw.
+	 * 
+	 * @param pass Render pass
+	 * @param program Shader program to draw with
+	 * @param array Vertex array to draw from
+	 * @param textureBinding Uniform binding of the texture, or null if no texture is bound
+	 * @param texture Texture to bind, or null if no texture is bound
+	 * @param sampler Sampler to bind, or null if no texture is bound
+	 * @param depth Non-negative depth of the draw, such as the distance to the camera
+	 * @param mode Draw mode
+	 * @param vertexCount Number of vertices to draw
+	 * @param instanceCount Number of instances to draw
+	 * @param firstVertex Offset of the first vertex to draw
+	 * @param firstInstance Offset of the first instance to draw
+	 * @return This render queue
+	 */
+	public @NonNull RenderQueue draw(int pass, @NonNull ShaderProgram program, @NonNull VertexArray array, @Nullable UniformBinding textureBinding,
+			@Nullable Texture texture, @Nullable Sampler sampler, float depth, @NonNull DrawMode mode,
+			int vertexCount, int instanceCount, int firstVertex, int firstInstance) {
+		return add(pass, program, array, textureBinding, texture, sampler, depth, mode, false, vertexCount, instanceCount, firstVertex, 0, firstInstance);
+	}
+	
+	/** Queues an indexed draw.
+	 * 
+	 * @param pass Render pass
+	 * @param program Shader program to draw with
+	 * @param array Vertex array to draw from
+	 * @param textureBinding Uniform binding of the texture, or null if no texture is bound
+	 * @param texture Texture to bind, or null if no texture is bound
+	 * @param sampler Sampler to bind, or null if no texture is bound
+	 * @param depth Non-negative depth of the draw, such as the distance to the camera
+	 * @param mode Draw mode
+	 * @param indexCount Number of indexed vertices to draw
+	 * @param instanceCount Number of instances to draw
+	 * @param firstIndex Offset of the first index to draw
+	 * @param vertexOffset Offset to apply to each index
+	 * @param firstInstance Offset of the first instance to draw
+	 * @return This render queue
+	 */
+	public @NonNull RenderQueue drawIndexed(int pass, @NonNull ShaderProgram program, @NonNull VertexArray array, @Nullable UniformBinding textureBinding,
+			@Nullable Texture texture, @Nullable Sampler sampler, float depth, @NonNull DrawMode mode,
+			int indexCount, int instanceCount, int firstIndex, int vertexOffset, int firstInstance) {
+		return add(pass, program, array, textureBinding, texture, sampler, depth, mode, true, indexCount, instanceCount, firstIndex, vertexOffset, firstInstance);
+	}
+	
+	/** Removes all draws from the queue without submitting them.
+	 * 
+	 */
+	public void clear() {
+		Arrays.fill(programs, 0, size, null);
+		Arrays.fill(arrays, 0, size, null);
+		Arrays.fill(textureBindings, 0, size, null);
+		Arrays.fill(textures, 0, size, null);
+		Arrays.fill(samplers, 0, size, null);
+		size = 0;
+		programTable.clear();
+		textureTable.clear();
+		arrayTable.clear();
+	}
+	
+	//============//
+	// Submission //
+	//============//
+	
+	// Sorts draw indices by key using an LSD radix sort, leaving the result in sortKeys/sortIndices
+	private void sort() {
+		int n = size;
+		System.arraycopy(keys, 0, sortKeys, 0, n);
+		for(int i = 0; i < n; i++) sortIndices[i] = i;
+		
+		// Compute the histograms of every byte in a single pass
+		int[] histograms = this.histograms;
+		Arrays.fill(histograms, 0);
+		for(int i = 0; i < n; i++) {
+			long key = sortKeys[i];
+			for(int b = 0; b < 8; b++) histograms[(b << 8) | (int)((key >>> (b << 3)) & 0xFF)]++;
+		}
+		
+		long[] srcKeys = sortKeys, dstKeys = tmpKeys;
+		int[] srcIndices = sortIndices, dstIndices = tmpIndices;
+		for(int b = 0; b < 8; b++) {
+			int base = b << 8, shift = b << 3;
+			// Skip bytes which are the same for every key
+			if (histograms[base | (int)((srcKeys[0] >>> shift) & 0xFF)] == n) continue;
+			int sum = 0;
+			for(int i = 0; i < 256; i++) {
+				int count = histograms[base | i];
+				histograms[base | i] = sum;
+				sum += count;
+			}
+			for(int i = 0; i < n; i++) {
+				long key = srcKeys[i];
+				int dst = histograms[base | (int)((key >>> shift) & 0xFF)]++;
+				dstKeys[dst] = key;
+				dstIndices[dst] = srcIndices[i];
+			}
+			long[] tk = srcKeys; srcKeys = dstKeys; dstKeys = tk;
+			int[] ti = srcIndices; srcIndices = dstIndices; dstIndices = ti;
+		}
+		sortKeys = srcKeys;
+		tmpKeys = dstKeys;
+		sortIndices = srcIndices;
+		tmpIndices = dstIndices;
+	}
+	
+	// Counts the state changes needed to issue draws in the given order
+	private int countStateChanges(int[] order, boolean identity) {
+		Object program = null, array = null, texture = null, sampler = null, binding = null;
+		int changes = 0;
+		for(int i = 0; i < size; i++) {
+			int d = identity ? i : order[i];
+			if (programs[d] != program) {
+				program = programs[d];
+				changes++;
+			}
+			if (arrays[d] != array) {
+				array = arrays[d];
+				changes++;
+			}
+			if (textures[d] != null && (textures[d] != texture || samplers[d] != sampler || textureBindings[d] != binding)) {
+				texture = textures[d];
+				sampler = samplers[d];
+				binding = textureBindings[d];
+				changes++;
+			}
+		}
+		return changes;
+	}
+	
+	/** Sorts the queued draws and submits them to an executor, binding resources only when they
+	 * change, then clears the queue.
+	 * 
+	 * @param executor Executor to submit draws to
+	 * @return This render queue
+	 */
+	public @NonNull RenderQueue submit(@NonNull ICommandExecutor executor) {
+		if (size == 0) {
+			unsortedStateChanges = sortedStateChanges = 0;
+			return this;
+		}
+		sort();
+		unsortedStateChanges = countStateChanges(sortIndices, true);
+		sortedStateChanges = countStateChanges(sortIndices, false);
+		
+		ShaderProgram program = null;
+		VertexArray array = null;
+		Texture texture = null;
+		Sampler sampler = null;
+		UniformBinding binding = null;
+		for(int i = 0; i < size; i++) {
+			int d = sortIndices[i];
+			if (programs[d] != program) executor.useShaderProgram(TypeUtils.nonNull(program = programs[d]));
+			if (arrays[d] != array) executor.useVertexArray(TypeUtils.nonNull(array = arrays[d]));
+			if (textures[d] != null && (textures[d] != texture || samplers[d] != sampler || textureBindings[d] != binding)) {
+				texture = textures[d];
+				sampler = samplers[d];
+				binding = textureBindings[d];
+				executor.bindUniform(TypeUtils.nonNull(binding), TypeUtils.nonNull(texture), TypeUtils.nonNull(sampler));
+			}
+			int p = d * DRAW_PARAMS;
+			DrawMode mode = TypeUtils.nonNull(DRAW_MODES[params[p]]);
+			if (params[p + 1] != 0) executor.drawIndexed(mode, params[p + 2], params[p + 3], params[p + 4], params[p + 5], params[p + 6]);
+			else executor.draw(mode, params[p + 2], params[p + 3], params[p + 4], params[p + 6]);
+		}
+		clear();
+		return this;
+	}
+	
+	/** Gets the number of state changes the draws of the last submission would have needed if they
+	 * were submitted in the order they were queued.
+	 * 
+	 * @return Unsorted state change count
+	 */
+	public int getUnsortedStateChanges() {
+		return unsortedStateChanges;
+	}
+	
+	/** Gets the number of state changes needed by the last submission after sorting.
+	 * 
+	 * @return Sorted state change count
+	 */
+	public int getSortedStateChanges() {
+		return sortedStateChanges;
+	}
+	
+}
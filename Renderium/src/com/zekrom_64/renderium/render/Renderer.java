@@ -1,7 +1,6 @@
 package com.zekrom_64.renderium.render;
 
-import java.nio.ByteBuffer;
-import java.nio.IntBuffer;
+import java.io.IOException;
 
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
@@ -11,8 +10,6 @@ import org.lwjgl.glfw.GLFW;
 import org.lwjgl.opengl.GL;
 import org.lwjgl.opengl.GL45;
 import org.lwjgl.opengl.GLDebugMessageCallbackI;
-import org.lwjgl.stb.STBImage;
-import org.lwjgl.system.MemoryStack;
 import org.lwjgl.system.MemoryUtil;
 import org.slf4j.Logger;
 import org.slf4j.event.Level;
@@ -23,7 +20,6 @@ import com.zekrom_64.renderium.render.info.BlendEquation;
 import com.zekrom_64.renderium.render.info.CullMode;
 import com.zekrom_64.renderium.render.info.DrawMode;
 import com.zekrom_64.renderium.render.info.Filter;
-import com.zekrom_64.renderium.render.info.Format;
 import com.zekrom_64.renderium.render.info.FrontFace;
 import com.zekrom_64.renderium.render.info.MapMode;
 import com.zekrom_64.renderium.render.info.TextureType;
@@ -36,7 +32,7 @@ import com.zekrom_64.renderium.util.LogUtil;
 import com.zekrom_64.renderium.util.TypeUtils;
 import com.zekrom_64.renderium.util.collections.RectStack;
 
-public class Renderer implements ISafeCloseable {
+public class Renderer implements ICommandExecutor, ISafeCloseable {
 
 	// The number of frame times to use to compute the average
 	private static final int FRAMETIME_AVG_COUNT = 16;
@@ -186,6 +182,66 @@ public class Renderer implements ISafeCloseable {
 	
 	// Buffer object used for uploads
 	private BufferObject uploadBuffer = null;
+	// Cache of decoded images, or null if images are always decoded
+	private volatile @Nullable ImageCache imageCache = null;
+	
+	/** Gets the cache decoded images are loaded from, or null if images are always decoded.
+	 * 
+	 * @return Image cache
+	 */
+	public @Nullable ImageCache getImageCache() {
+		return imageCache;
+	}
+	
+	/** Sets the cache decoded images are loaded from. If null, images are always decoded.
+	 * 
+	 * @param cache Image cache
+	 * @return This renderer
+	 */
+	public @NonNull Renderer setImageCache(@Nullable ImageCache cache) {
+		imageCache = cache;
+		return this;
+	}
+	
+	/** Reads and decodes an image resource, using the image cache if one is set. This does not
+	 * use OpenGL, so it may be called from any thread.
+	 * 
+	 * @param resource Image resource
+	 * @return Decoded image
+	 * @throws IOException If the resource cannot be read or decoded
+	 */
+	public @NonNull DecodedImage decodeImage(@NonNull ResourceLocation resource) throws IOException {
+		ImageCache cache = imageCache;
+		return cache != null ? cache.load(resource) : DecodedImage.decode(resource);
+	}
+	
+	/** Creates a texture from a decoded image, uploading the image's pixels through a pixel
+	 * unpack buffer. This does not close the image.
+	 * 
+	 * @param image Decoded image
+	 * @return Created texture
+	 */
+	public @NonNull Texture createTexture(@NonNull DecodedImage image) {
+		int size = image.getSize();
+		// If missing the upload buffer or it is too small, recreate it
+		if (uploadBuffer == null || uploadBuffer.getSize() < size) {
+			if (uploadBuffer != null) uploadBuffer.close();
+			uploadBuffer = new BufferObject(size, MapMode.WRITE_INVALIDATE);
+		}
+		// Map the upload buffer and copy the pixel data, then unmap
+		uploadBuffer.map(MapMode.WRITE_INVALIDATE, 0, size).put(image.pixels.duplicate().clear());
+		uploadBuffer.unmap();
+		
+		// Create a new texture and upload the pixel data, then return the created texture
+		Texture texture = new Texture(new TextureInfo(
+			TextureType.TEX2D,
+			image.format,
+			new Vector3i(image.width, image.height, 1),
+			1
+		));
+		texture.upload(uploadBuffer);
+		return texture;
+	}
 	
 	/** Loads an image as a texture. If the texture fails to load, a "missing texture"
 	 * texture is returned.
@@ -194,57 +250,11 @@ public class Renderer implements ISafeCloseable {
 	 * @return Loaded texture
 	 */
 	public @NonNull Texture loadTextureImage(@NonNull ResourceLocation resource) {
-		ByteBuffer databuf = null;
-		try (MemoryStack sp = MemoryStack.stackPush()) {
-			// Read resource bytes and transfer to byte buffer
-			byte[] imgdata = resource.readBytes();
-			databuf = MemoryUtil.memAlloc(imgdata.length);
-			databuf.put(0, imgdata);
-			
-			// Load from memory
-			IntBuffer x = sp.mallocInt(1), y = sp.mallocInt(1), channels = sp.mallocInt(1);
-			ByteBuffer pixels = STBImage.stbi_load_from_memory(databuf, x, y, channels, STBImage.STBI_default);
-			// Initialize format based on what STB returns
-			Format format = null;
-			switch(channels.get(0)) {
-			case STBImage.STBI_rgb_alpha:
-				format = Format.R8G8B8A8_UNORM;
-				break;
-			case STBImage.STBI_rgb:
-				format = Format.R8G8B8_UNORM;
-				break;
-			}
-			
-			try {
-				// If missing the upload buffer or it is too small, recreate it
-				if (uploadBuffer == null || uploadBuffer.getSize() < pixels.capacity()) {
-					if (uploadBuffer != null) uploadBuffer.close();
-					uploadBuffer = new BufferObject(pixels.capacity(), MapMode.WRITE_INVALIDATE);
-				}
-				// Map the upload buffer and copy the pixel data, then unmap
-				uploadBuffer.map(MapMode.WRITE_INVALIDATE).put(pixels);
-				uploadBuffer.unmap();
-				
-				// Create a new texture and upload the pixel data, then return the created texture
-				Texture texture = new Texture(new TextureInfo(
-					TextureType.TEX2D,
-					format,
-					new Vector3i(x.get(0), y.get(0), 1),
-					1
-				));
-				texture.upload(uploadBuffer);
-				return texture;
-			} finally {
-				// Free the pixel data STB returned
-				pixels.rewind();
-				STBImage.stbi_image_free(pixels);
-			}
+		try (DecodedImage image = decodeImage(resource)) {
+			return createTexture(image);
 		} catch (Exception e) {
 			// If there was an error loading the texture, return the "missing texture" texture
 			return missingTexture;
-		} finally {
-			// Free the image data
-			if (databuf != null) MemoryUtil.memFree(databuf);
 		}
 	}
 	
@@ -385,6 +395,7 @@ public class Renderer implements ISafeCloseable {
 	 * @param array Vertex array to use
 	 * @return This renderer
 	 */
+	@Override
 	public @NonNull Renderer useVertexArray(@NonNull VertexArray array) {
 		int id = array.vertexArrayID;
 		if (id != currentVertexArrayID) {
@@ -399,6 +410,7 @@ public class Renderer implements ISafeCloseable {
 	 * @param program Shader program to use
 	 * @return This renderer
 	 */
+	@Override
 	public @NonNull Renderer useShaderProgram(@NonNull ShaderProgram program) {
 		int id = program.programID;
 		if (id != currentProgramID) {
@@ -416,6 +428,7 @@ public class Renderer implements ISafeCloseable {
 	 * @param size The length of the binding in bytes
 	 * @return This renderer
 	 */
+	@Override
 	public @NonNull Renderer bindUniform(@NonNull UniformBinding binding, @NonNull BufferObject buffer, int offset, int size) {
 		switch(binding.type()) {
 		case UNIFORM_BUFFER:
@@ -444,6 +457,7 @@ public class Renderer implements ISafeCloseable {
 	 * @param sampler Sampler to bind
 	 * @return This renderer
 	 */
+	@Override
 	public @NonNull Renderer bindUniform(@NonNull UniformBinding binding, @NonNull Texture texture, @NonNull Sampler sampler) {
 		switch(binding.type()) {
 		case TEXTURE:
@@ -461,6 +475,7 @@ public class Renderer implements ISafeCloseable {
 	 * @param fb Framebuffer to use
 	 * @return This renderer
 	 */
+	@Override
 	public @NonNull Renderer useFramebuffer(@NonNull Framebuffer fb) {
 		int id = fb.framebufferID;
 		if (id != currentFramebufferID) {
@@ -483,6 +498,7 @@ public class Renderer implements ISafeCloseable {
 	 * @param firstInstance Offset of the first instance to draw
 	 * @return This renderer
 	 */
+	@Override
 	public @NonNull Renderer draw(@NonNull DrawMode mode, int vertexCount, int instanceCount, int firstVertex, int firstInstance) {
 		GL45.glDrawArraysInstancedBaseInstance(mode.glMode, firstVertex, vertexCount, instanceCount, firstInstance);
 		return this;
@@ -498,18 +514,57 @@ public class Renderer implements ISafeCloseable {
 	 * @param firstInstance Offset of the first instance to draw
 	 * @return This renderer
 	 */
+	@Override
 	public @NonNull Renderer drawIndexed(@NonNull DrawMode mode, int indexCount, int instanceCount, int firstIndex, int vertexOffset, int firstInstance) {
 		GL45.glDrawElementsInstancedBaseVertexBaseInstance(mode.glMode, indexCount, GL45.GL_UNSIGNED_INT, 4 * firstIndex, instanceCount, vertexOffset, firstInstance);
 		return this;
 	}
 	
+	// Binds a buffer as the indirect draw buffer. The binding is not cached, as deleting a bound
+	// buffer resets the binding and buffer names are reused, so a cached name may be stale.
+	private void useIndirectBuffer(@NonNull BufferObject buffer) {
+		GL45.glBindBuffer(GL45.GL_DRAW_INDIRECT_BUFFER, buffer.bufferID);
+	}
+	
+	/** Draws vertices using the current set of bound resources, once for each
+	 * {@link DrawArray.Draw} command stored in a buffer.
+	 * 
+	 * @param mode Draw mode
+	 * @param buffer Buffer holding draw commands
+	 * @param offset Byte offset of the first draw command in the buffer
+	 * @param drawCount Number of draw commands
+	 * @return This renderer
+	 */
+	@Override
+	public @NonNull Renderer multiDraw(@NonNull DrawMode mode, @NonNull BufferObject buffer, int offset, int drawCount) {
+		useIndirectBuffer(buffer);
+		GL45.glMultiDrawArraysIndirect(mode.glMode, offset, drawCount, 0);
+		return this;
+	}
+	
+	/** Draws indexed vertices using the current set of bound resources, once for each
+	 * {@link DrawArray.DrawIndexed} command stored in a buffer.
+	 * 
+	 * @param mode Draw mode
+	 * @param buffer Buffer holding draw commands
+	 * @param offset Byte offset of the first draw command in the buffer
+	 * @param drawCount Number of draw commands
+	 * @return This renderer
+	 */
+	@Override
+	public @NonNull Renderer multiDrawIndexed(@NonNull DrawMode mode, @NonNull BufferObject buffer, int offset, int drawCount) {
+		useIndirectBuffer(buffer);
+		GL45.glMultiDrawElementsIndirect(mode.glMode, GL45.GL_UNSIGNED_INT, offset, drawCount, 0);
+		return this;
+	}
+	
 	//========================//
 	// Viewport/Scissor State //
 	//========================//
 	
 	// Viewport/scissor stack
-	private final RectStack viewportStack = new RectStack(1000);
-	private final RectStack scissorStack = new RectStack(1000);
+	private final RectStack viewportStack = new RectStack(16, true);
+	private final RectStack scissorStack = new RectStack(16, true);
 	
 	/** Resets the viewport stack and initializes it with the given viewport parameters.
 	 * 
@@ -532,6 +587,7 @@ public class Renderer implements ISafeCloseable {
 	 * @param height Viewport height
 	 * @return This renderer
 	 */
+	@Override
 	public @NonNull Renderer pushViewport(int x, int y, int width, int height) {
 		y = -y;
 		viewportStack.push(x, y, width, height);
@@ -543,6 +599,7 @@ public class Renderer implements ISafeCloseable {
 	 * 
 	 * @return This renderer
 	 */
+	@Override
 	public @NonNull Renderer popViewport() {
 		if (viewportStack.getSize() > 1) {
 			viewportStack.pop();
@@ -575,6 +632,7 @@ public class Renderer implements ISafeCloseable {
 	 * @param height Scissor height
 	 * @return This renderer
 	 */
+	@Override
 	public @NonNull Renderer pushScissor(int x, int y, int width, int height) {
 		y = -y;
 		scissorStack.push(x, y, width, height);
@@ -586,6 +644,7 @@ public class Renderer implements ISafeCloseable {
 	 * 
 	 * @return This renderer
 	 */
+	@Override
 	public @NonNull Renderer popScissor() {
 		if (scissorStack.getSize() > 1) {
 			scissorStack.pop();
@@ -626,6 +685,7 @@ public class Renderer implements ISafeCloseable {
 	 * @param face Front face type
 	 * @return This renderer
 	 */
+	@Override
 	public @NonNull Renderer setFrontFace(@NonNull FrontFace face) {
 		if (face != frontFace) {
 			frontFace = face;
@@ -639,6 +699,7 @@ public class Renderer implements ISafeCloseable {
 	 * @param mode Face culling mode
 	 * @return This renderer
 	 */
+	@Override
 	public @NonNull Renderer setCullMode(@NonNull CullMode mode) {
 		if (mode != cullMode) {
 			cullMode = mode;
@@ -660,6 +721,7 @@ public class Renderer implements ISafeCloseable {
 	 * @param eq Blend equation
 	 * @return This renderer
 	 */
+	@Override
 	public @NonNull Renderer setBlendEquation(@NonNull BlendEquation eq) {
 		if (eq != blending) {
 			blending = eq;
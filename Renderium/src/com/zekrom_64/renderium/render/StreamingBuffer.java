@@ -0,0 +1,273 @@
+package com.zekrom_64.renderium.render;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import org.lwjgl.system.MemoryUtil;
+
+import com.zekrom_64.renderium.render.info.MapMode;
+import com.zekrom_64.renderium.util.ISafeCloseable;
+import com.zekrom_64.renderium.util.TypeUtils;
+
+/** <p>A streaming buffer is a buffer object which is persistently mapped once and used to stream
+ * data that changes every frame, such as dynamic vertices, indices, or uniforms. The buffer is split
+ * into a ring of equally sized regions, and each frame allocates from the next region in the ring.
+ * When a frame ends a fence is created for its region, and the region is not reused until the
+ * fence is signaled, so the host never overwrites data the device may still be reading.</p>
+ * 
+ * <p>Allocations within a frame are simple bump allocations, and the memory of each allocation is
+ * written directly through the persistent mapping. Fences are created and waited on through an
+ * {@link IFenceProvider}, which allows the region bookkeeping to be used without a device.</p>
+ * 
+ * @author Zekrom_64
+ * 
+ */
+public class StreamingBuffer implements ISafeCloseable {
+	
+	// The buffer object being streamed to, or null if streaming to host memory
+	private final @Nullable BufferObject buffer;
+	// The mapped memory of the buffer
+	private final @NonNull ByteBuffer memory;
+	// The provider of fences guarding regions
+	private final @NonNull IFenceProvider fences;
+	// The size of each region in bytes
+	private final int regionSize;
+	// The number of regions
+	private final int regionCount;
+	// The fence guarding each region, or 0 if the region is not in use
+	private final long[] regionFences;
+	// The current region, or -1 if no frame has begun
+	private int currentRegion = -1;
+	// The offset of the next allocation in the buffer
+	private int allocOffset = 0;
+	// The end of the current region in the buffer
+	private int regionEnd = 0;
+	// If a frame is in progress
+	private boolean inFrame = false;
+	
+	/** Creates a new streaming buffer, creating and persistently mapping a buffer object.
+	 * 
+	 * @param regionSize The size of each region in bytes
+	 * @param regionCount The number of regions, usually the number of frames that may be in flight plus one
+	 * @param fences Fence provider
+	 */
+	public StreamingBuffer(int regionSize, int regionCount, @NonNull IFenceProvider fences) {
+		checkSizes(regionSize, regionCount);
+		BufferObject buffer = new BufferObject(regionSize * regionCount, MapMode.PERSISTENT_WRITE);
+		this.buffer = buffer;
+		this.memory = TypeUtils.nonNull(buffer.map(MapMode.PERSISTENT_WRITE));
+		this.fences = fences;
+		this.regionSize = regionSize;
+		this.regionCount = regionCount;
+		regionFences = new long[regionCount];
+	}
+	
+	/** Creates a new streaming buffer using OpenGL fences.
+	 * 
+	 * @param regionSize The size of each region in bytes
+	 * @param regionCount The number of regions
+	 */
+	public StreamingBuffer(int regionSize, int regionCount) {
+		this(regionSize, regionCount, GLFenceProvider.INSTANCE);
+	}
+	
+	/** Creates a new streaming buffer over existing memory, without a buffer object. The memory is
+	 * split evenly into regions. This is mainly useful to exercise region bookkeeping without a
+	 * device, using a fake fence provider. The memory must be a direct buffer, as allocations are
+	 * accessed through their addresses.
+	 * 
+	 * @param memory Memory to stream to
+	 * @param regionCount The number of regions
+	 * @param fences Fence provider
+	 */
+	public StreamingBuffer(@NonNull ByteBuffer memory, int regionCount, @NonNull IFenceProvider fences) {
+		if (!memory.isDirect()) throw new IllegalArgumentException("Streaming buffer memory must be a direct buffer");
+		int regionSize = regionCount > 0 ? memory.capacity() / regionCount : 0;
+		checkSizes(regionSize, regionCount);
+		this.buffer = null;
+		this.memory = memory;
+		this.fences = fences;
+		this.regionSize = regionSize;
+		this.regionCount = regionCount;
+		regionFences = new long[regionCount];
+	}
+	
+	private static void checkSizes(int regionSize, int regionCount) {
+		if (regionCount < 1) throw new IllegalArgumentException("Streaming buffer must have at least one region");
+		if (regionSize < 1) throw new IllegalArgumentException("Streaming buffer regions must not be empty");
+		if ((long)regionSize * regionCount > Integer.MAX_VALUE) throw new IllegalArgumentException("Streaming buffer is too large");
+	}
+	
+	@Override
+	public void close() {
+		for(int i = 0; i < regionCount; i++) {
+			if (regionFences[i] != 0) {
+				fences.waitFence(regionFences[i]);
+				fences.deleteFence(regionFences[i]);
+				regionFences[i] = 0;
+			}
+		}
+		if (buffer != null) {
+			buffer.unmap();
+			buffer.close();
+		}
+	}
+	
+	//=========//
+	// Getters //
+	//=========//
+	
+	/** Gets the buffer object being streamed to. This is null if the streaming buffer was created
+	 * over host memory.
+	 * 
+	 * @return Buffer object
+	 */
+	public @Nullable BufferObject getBuffer() {
+		return buffer;
+	}
+	
+	/** Gets the mapped memory of the whole buffer.
+	 * 
+	 * @return Mapped memory
+	 */
+	public @NonNull ByteBuffer getMemory() {
+		return memory;
+	}
+	
+	/** Gets the address of an offset in the buffer's mapped memory.
+	 * 
+	 * @param offset Offset in the buffer
+	 * @return Memory address
+	 */
+	public long getAddress(int offset) {
+		return MemoryUtil.memAddress0(memory) + offset;
+	}
+	
+	/** Gets the size of each region in bytes, which is the most that can be allocated in a frame.
+	 * 
+	 * @return Region size
+	 */
+	public int getRegionSize() {
+		return regionSize;
+	}
+	
+	/** Gets the number of regions in the buffer.
+	 * 
+	 * @return Region count
+	 */
+	public int getRegionCount() {
+		return regionCount;
+	}
+	
+	/** Gets the region used by the current frame, or -1 if no frame has begun.
+	 * 
+	 * @return Current region
+	 */
+	public int getCurrentRegion() {
+		return currentRegion;
+	}
+	
+	/** Gets the number of bytes remaining in the current region.
+	 * 
+	 * @return Remaining bytes
+	 */
+	public int getRemaining() {
+		return inFrame ? regionEnd - allocOffset : 0;
+	}
+	
+	/** Gets if a region is guarded by a fence which has not yet been waited on.
+	 * 
+	 * @param region Region index
+	 * @return If the region is in use
+	 */
+	public boolean isRegionInUse(int region) {
+		return regionFences[region] != 0;
+	}
+	
+	//=================//
+	// Frame Lifecycle //
+	//=================//
+	
+	/** Begins a new frame, moving to the next region in the ring. If the device may still be using
+	 * the region this waits on its fence.
+	 * 
+	 * @return This streaming buffer
+	 * @throws IllegalStateException If a frame is already in progress
+	 */
+	public @NonNull StreamingBuffer beginFrame() {
+		if (inFrame) throw new IllegalStateException("Streaming buffer frame already in progress");
+		currentRegion = (currentRegion + 1) % regionCount;
+		long fence = regionFences[currentRegion];
+		if (fence != 0) {
+			fences.waitFence(fence);
+			fences.deleteFence(fence);
+			regionFences[currentRegion] = 0;
+		}
+		allocOffset = currentRegion * regionSize;
+		regionEnd = allocOffset + regionSize;
+		inFrame = true;
+		return this;
+	}
+	
+	/** Ends the current frame, guarding its region with a fence. This should be called after all
+	 * commands using data from the frame have been issued.
+	 * 
+	 * @return This streaming buffer
+	 * @throws IllegalStateException If no frame is in progress
+	 */
+	public @NonNull StreamingBuffer endFrame() {
+		if (!inFrame) throw new IllegalStateException("No streaming buffer frame in progress");
+		regionFences[currentRegion] = fences.createFence();
+		inFrame = false;
+		return this;
+	}
+	
+	//============//
+	// Allocation //
+	//============//
+	
+	/** Allocates memory in the current frame's region.
+	 * 
+	 * @param size The number of bytes to allocate
+	 * @param alignment The alignment of the allocation in bytes, which must be a power of two
+	 * @return The offset of the allocation in the buffer
+	 * @throws IllegalStateException If no frame is in progress
+	 * @throws BufferOverflowException If there is not enough space left in the region
+	 */
+	public int allocate(int size, int alignment) {
+		if (!inFrame) throw new IllegalStateException("No streaming buffer frame in progress");
+		if (size < 0) throw new IllegalArgumentException("Allocation size cannot be negative");
+		if (alignment <= 0 || Integer.bitCount(alignment) != 1) throw new IllegalArgumentException("Alignment must be a power of two");
+		long offset = ((long)allocOffset + alignment - 1) & -alignment;
+		if (offset + size > regionEnd) throw new BufferOverflowException();
+		allocOffset = (int)(offset + size);
+		return (int)offset;
+	}
+	
+	/** Allocates memory in the current frame's region with 4-byte alignment.
+	 * 
+	 * @param size The number of bytes to allocate
+	 * @return The offset of the allocation in the buffer
+	 */
+	public int allocate(int size) {
+		return allocate(size, 4);
+	}
+	
+	/** Allocates memory in the current frame's region and copies data into it. The data may be
+	 * either a direct or heap buffer, and its position is not changed.
+	 * 
+	 * @param data Data to copy, from its position to its limit
+	 * @param alignment The alignment of the allocation in bytes, which must be a power of two
+	 * @return The offset of the allocation in the buffer
+	 */
+	public int write(@NonNull ByteBuffer data, int alignment) {
+		int size = data.remaining();
+		int offset = allocate(size, alignment);
+		if (data.isDirect()) MemoryUtil.memCopy(MemoryUtil.memAddress(data), getAddress(offset), size);
+		else memory.put(offset, data, data.position(), size);
+		return offset;
+	}
+	
+}
@@ -76,6 +76,8 @@ public class Texture implements ISafeCloseable, IFramebufferAttachment {
 			buffer = buffer.slice();
 			buffer.position(offset);
 		}
+		// Client memory is only read if no pixel unpack buffer is bound
+		GL45.glBindBuffer(GL45.GL_PIXEL_UNPACK_BUFFER, 0);
 		GL45.glTextureSubImage2D(textureID, mipLevel, x, y, width, height, info.format.glFormat, info.format.glType, buffer);
 		return this;
 	}
@@ -0,0 +1,185 @@
+package com.zekrom_64.renderium.render;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.joml.Vector3i;
+import org.lwjgl.system.MemoryUtil;
+
+import com.zekrom_64.renderium.render.Texture.TextureInfo;
+import com.zekrom_64.renderium.render.info.Format;
+import com.zekrom_64.renderium.render.info.TextureType;
+import com.zekrom_64.renderium.util.ISafeCloseable;
+import com.zekrom_64.renderium.util.TypeUtils;
+import com.zekrom_64.renderium.util.geometry.Rectangle;
+import com.zekrom_64.renderium.util.geometry.SkylinePacker;
+
+/** <p>A texture atlas packs many small images into a few large texture pages, so drawing
+ * different images does not require binding different textures. Images are inserted incrementally
+ * using a {@link SkylinePacker} for each page, and a new page is created when an image does not fit
+ * in any existing page. Each inserted image is described by a {@link Region} holding its page and
+ * texture coordinates.</p>
+ * 
+ * <p>To avoid bleeding between neighboring images when sampling with filtering or mipmaps, each
+ * image may be surrounded by an extruded border, which repeats the image's edge pixels, and by
+ * padding, which is left empty.</p>
+ * 
+ * @author Zekrom_64
+ * 
+ */
+public class TextureAtlas implements ISafeCloseable {
+	
+	/** A region of a texture atlas page holding a single image.
+	 * 
+	 * @author Zekrom_64
+	 * 
+	 * @param texture The texture of the page holding the image
+	 * @param page The index of the page holding the image
+	 * @param x The X coordinate of the image in the page, in pixels
+	 * @param y The Y coordinate of the image in the page, in pixels
+	 * @param width The width of the image in pixels
+	 * @param height The height of the image in pixels
+	 * @param u0 The minimum U texture coordinate of the image
+	 * @param v0 The minimum V texture coordinate of the image
+	 * @param u1 The maximum U texture coordinate of the image
+	 * @param v1 The maximum V texture coordinate of the image
+	 */
+	public static record Region(@NonNull Texture texture, int page, int x, int y, int width, int height, float u0, float v0, float u1, float v1) { }
+	
+	// A page of the atlas
+	private static record Page(@NonNull Texture texture, @NonNull SkylinePacker packer) { }
+	
+	// The width and height of each page
+	private final int pageSize;
+	// The number of empty pixels placed after each image
+	private final int padding;
+	// The number of extruded pixels placed around each image
+	private final int extrude;
+	// The atlas pages
+	private final List<Page> pages = new ArrayList<>();
+	// Rectangle receiving packed positions
+	private final Rectangle packed = new Rectangle();
+	
+	/** Creates a new texture atlas.
+	 * 
+	 * @param pageSize The width and height of each page in pixels
+	 * @param padding The number of empty pixels placed between images
+	 * @param extrude The number of pixels each image's edges are extruded by
+	 */
+	public TextureAtlas(int pageSize, int padding, int extrude) {
+		if (pageSize <= 0) throw new IllegalArgumentException("Atlas page size must be positive");
+		if (padding < 0 || extrude < 0) throw new IllegalArgumentException("Atlas padding and extrusion cannot be negative");
+		this.pageSize = pageSize;
+		this.padding = padding;
+		this.extrude = extrude;
+	}
+	
+	@Override
+	public void close() {
+		for(Page page : pages) page.texture().close();
+		pages.clear();
+	}
+	
+	//=========//
+	// Getters //
+	//=========//
+	
+	/** Gets the width and height of each page in pixels.
+	 * 
+	 * @return Page size
+	 */
+	public int getPageSize() {
+		return pageSize;
+	}
+	
+	/** Gets the number of pages in the atlas.
+	 * 
+	 * @return Page count
+	 */
+	public int getPageCount() {
+		return pages.size();
+	}
+	
+	/** Gets the texture of a page in the atlas.
+	 * 
+	 * @param page Page index
+	 * @return Page texture
+	 */
+	public @NonNull Texture getPage(int page) {
+		return pages.get(page).texture();
+	}
+	
+	//===========//
+	// Insertion //
+	//===========//
+	
+	/** Adds an image to the atlas. The image must be in the {@link Format#R8G8B8A8_UNORM} format,
+	 * with tightly packed rows starting at the buffer's position.
+	 * 
+	 * @param pixels Image pixels
+	 * @param width Image width
+	 * @param height Image height
+	 * @return The region of the atlas holding the image
+	 * @throws IllegalArgumentException If the image cannot fit in a page
+	 */
+	public @NonNull Region add(@NonNull ByteBuffer pixels, int width, int height) {
+		if (width <= 0 || height <= 0) throw new IllegalArgumentException("Cannot add an empty image to an atlas");
+		int outerWidth = width + 2 * extrude, outerHeight = height + 2 * extrude;
+		int cellWidth = outerWidth + padding, cellHeight = outerHeight + padding;
+		if (cellWidth > pageSize || cellHeight > pageSize) throw new IllegalArgumentException("Image is too large for atlas pages");
+		if (pixels.remaining() < width * height * 4) throw new IllegalArgumentException("Image pixel buffer is too small");
+		
+		// Find a page the image fits in, creating a new page if needed
+		int pageIndex = 0;
+		for(; pageIndex < pages.size(); pageIndex++) {
+			if (pages.get(pageIndex).packer().insert(cellWidth, cellHeight, packed)) break;
+		}
+		if (pageIndex == pages.size()) {
+			Page page = new Page(new Texture(new TextureInfo(
+				TextureType.TEX2D,
+				Format.R8G8B8A8_UNORM,
+				new Vector3i(pageSize, pageSize, 1),
+				1
+			)), new SkylinePacker(pageSize, pageSize));
+			pages.add(page);
+			page.packer().insert(cellWidth, cellHeight, packed);
+		}
+		Texture texture = pages.get(pageIndex).texture();
+		int x = packed.getMin().x(), y = packed.getMin().y();
+		
+		// Upload the image surrounded by its extruded border
+		if (extrude == 0) texture.upload(pixels, x, y, width, height);
+		else {
+			ByteBuffer outer = TypeUtils.nonNull(MemoryUtil.memAlloc(outerWidth * outerHeight * 4));
+			try {
+				extrude(pixels, width, height, outer);
+				texture.upload(outer, x, y, outerWidth, outerHeight);
+			} finally {
+				MemoryUtil.memFree(outer);
+			}
+		}
+		
+		int ix = x + extrude, iy = y + extrude;
+		float scale = 1.0f / pageSize;
+		return new Region(texture, pageIndex, ix, iy, width, height, ix * scale, iy * scale, (ix + width) * scale, (iy + height) * scale);
+	}
+	
+	// Copies an image into the center of a larger image, clamping to the image's edges for pixels outside of it
+	private void extrude(ByteBuffer pixels, int width, int height, ByteBuffer outer) {
+		long src = MemoryUtil.memAddress(pixels), dst = MemoryUtil.memAddress(outer);
+		int outerWidth = width + 2 * extrude, outerHeight = height + 2 * extrude;
+		for(int oy = 0; oy < outerHeight; oy++) {
+			int sy = Math.min(Math.max(oy - extrude, 0), height - 1);
+			long srcRow = src + (long)sy * width * 4, dstRow = dst + (long)oy * outerWidth * 4;
+			int left = MemoryUtil.memGetInt(srcRow), right = MemoryUtil.memGetInt(srcRow + (width - 1) * 4L);
+			for(int i = 0; i < extrude; i++) {
+				MemoryUtil.memPutInt(dstRow + i * 4L, left);
+				MemoryUtil.memPutInt(dstRow + (extrude + width + i) * 4L, right);
+			}
+			MemoryUtil.memCopy(srcRow, dstRow + extrude * 4L, width * 4L);
+		}
+	}
+	
+}
@@ -0,0 +1,291 @@
+package com.zekrom_64.renderium.render;
+
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.event.Level;
+
+import com.zekrom_64.renderium.resource.ResourceLocation;
+import com.zekrom_64.renderium.util.ISafeCloseable;
+import com.zekrom_64.renderium.util.LogUtil;
+
+/** <p>A texture loader loads textures asynchronously. Image resources are read and decoded on
+ * worker threads, while the decoded images are uploaded to textures on the rendering thread when
+ * {@link #processUploads()} is called, usually once per frame. The number of bytes uploaded in each
+ * call is limited by an upload budget, so loading many textures at once does not stall a frame.</p>
+ * 
+ * <p>Loading a texture returns a {@link Handle}, which holds the renderer's missing texture until
+ * the texture has been uploaded. If a texture fails to load the handle keeps the missing texture.
+ * Closing the loader cancels every texture which has not been uploaded yet, completing the futures
+ * of their handles with a {@link CancellationException}.</p>
+ * 
+ * @author Zekrom_64
+ * 
+ */
+public class TextureLoader implements ISafeCloseable {
+	
+	/** A handle to a texture being loaded asynchronously.
+	 * 
+	 * @author Zekrom_64
+	 * 
+	 */
+	public static class Handle {
+		
+		/** The resource the texture is loaded from. */
+		public final @NonNull ResourceLocation resource;
+		// The current texture of the handle
+		private volatile @NonNull Texture texture;
+		// The future completed when the texture is loaded
+		private final @NonNull CompletableFuture<Texture> future = new CompletableFuture<>();
+		
+		private Handle(@NonNull ResourceLocation resource, @NonNull Texture placeholder) {
+			this.resource = resource;
+			this.texture = placeholder;
+		}
+		
+		/** Gets the current texture of the handle. This is the renderer's missing texture until the
+		 * texture has been loaded, or if it failed to load.
+		 * 
+		 * @return Current texture
+		 */
+		public @NonNull Texture getTexture() {
+			return texture;
+		}
+		
+		/** Gets if the texture has been successfully loaded.
+		 * 
+		 * @return If the texture is loaded
+		 */
+		public boolean isLoaded() {
+			return future.isDone() && !future.isCompletedExceptionally();
+		}
+		
+		/** Gets if the texture failed to load.
+		 * 
+		 * @return If the texture failed to load
+		 */
+		public boolean isFailed() {
+			return future.isCompletedExceptionally();
+		}
+		
+		/** Gets a future which is completed on the rendering thread with the loaded texture, or
+		 * completed exceptionally if the texture fails to load or the loader is closed first.
+		 * 
+		 * @return Texture future
+		 */
+		public @NonNull CompletableFuture<Texture> getFuture() {
+			return future;
+		}
+		
+	}
+	
+	// A decoded image waiting to be uploaded, or the error that occurred loading it
+	private static record PendingUpload(@NonNull Handle handle, @Nullable DecodedImage image, @Nullable Exception error) { }
+	
+	// A task loading the image of a handle
+	private class LoadTask implements Runnable {
+		
+		// The handle being loaded
+		private final @NonNull Handle handle;
+		
+		private LoadTask(@NonNull Handle handle) {
+			this.handle = handle;
+		}
+		
+		@Override
+		public void run() {
+			// Tasks still queued when the loader was closed are cancelled without loading
+			if (closed) {
+				cancel(handle);
+				return;
+			}
+			PendingUpload up;
+			try {
+				up = new PendingUpload(handle, renderer.decodeImage(handle.resource), null);
+			} catch (Exception e) {
+				up = new PendingUpload(handle, null, e);
+			}
+			pending.add(up);
+			// If the loader was closed while decoding, make sure the image is freed
+			if (closed) drainPending();
+		}
+		
+	}
+	
+	// The number of loader threads created, used to name threads
+	private static final AtomicInteger threadCount = new AtomicInteger();
+	
+	// The renderer textures are created with
+	private final @NonNull Renderer renderer;
+	// The executor images are decoded with
+	private final @NonNull ExecutorService executor;
+	// If the executor was created by the loader and should be shut down when closed
+	private final boolean ownsExecutor;
+	// Queue of loaded images waiting to be processed on the rendering thread
+	private final Queue<PendingUpload> pending = new ConcurrentLinkedQueue<>();
+	// The maximum number of bytes to upload in each call to processUploads
+	private long uploadBudget;
+	// If the loader has been closed
+	private volatile boolean closed = false;
+	
+	/** Creates a new texture loader, decoding images using the given executor. The executor is
+	 * not shut down when the loader is closed.
+	 * 
+	 * @param renderer Renderer to create textures with
+	 * @param executor Executor to decode images with
+	 * @param uploadBudget The maximum number of bytes to upload in each call to {@link #processUploads()}
+	 */
+	public TextureLoader(@NonNull Renderer renderer, @NonNull ExecutorService executor, long uploadBudget) {
+		this(renderer, executor, false, uploadBudget);
+	}
+	
+	/** Creates a new texture loader, decoding images with its own pool of daemon threads.
+	 * 
+	 * @param renderer Renderer to create textures with
+	 * @param threads The number of threads to decode images with
+	 * @param uploadBudget The maximum number of bytes to upload in each call to {@link #processUploads()}
+	 */
+	@SuppressWarnings("null")
+	public TextureLoader(@NonNull Renderer renderer, int threads, long uploadBudget) {
+		this(renderer, Executors.newFixedThreadPool(threads, r -> {
+			Thread t = new Thread(r, "Texture Loader " + threadCount.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}), true, uploadBudget);
+	}
+	
+	private TextureLoader(@NonNull Renderer renderer, @NonNull ExecutorService executor, boolean ownsExecutor, long uploadBudget) {
+		this.renderer = renderer;
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor;
+		setUploadBudget(uploadBudget);
+	}
+	
+	@Override
+	public void close() {
+		closed = true;
+		if (ownsExecutor) {
+			// Tasks which never started are returned by the executor and must be cancelled here
+			for(Runnable r : executor.shutdownNow()) {
+				if (r instanceof LoadTask task) cancel(task.handle);
+			}
+		}
+		drainPending();
+	}
+	
+	// Frees all pending images without uploading them, cancelling their handles
+	private void drainPending() {
+		PendingUpload up;
+		while((up = pending.poll()) != null) {
+			if (up.image() != null) up.image().close();
+			cancel(up.handle());
+		}
+	}
+	
+	// Cancels loading a handle because the loader has been closed
+	private static void cancel(Handle handle) {
+		handle.future.completeExceptionally(new CancellationException("Texture loader has been closed"));
+	}
+	
+	//==========//
+	// Settings //
+	//==========//
+	
+	/** Gets the maximum number of bytes uploaded in each call to {@link #processUploads()}.
+	 * 
+	 * @return Upload budget in bytes
+	 */
+	public long getUploadBudget() {
+		return uploadBudget;
+	}
+	
+	/** Sets the maximum number of bytes uploaded in each call to {@link #processUploads()}. At least
+	 * one image is always uploaded if any are pending, so images larger than the budget are still
+	 * loaded.
+	 * 
+	 * @param uploadBudget Upload budget in bytes
+	 * @return This loader
+	 */
+	public @NonNull TextureLoader setUploadBudget(long uploadBudget) {
+		if (uploadBudget <= 0) throw new IllegalArgumentException("Upload budget must be positive");
+		this.uploadBudget = uploadBudget;
+		return this;
+	}
+	
+	/** Gets the number of loaded images waiting to be processed on the rendering thread.
+	 * 
+	 * @return Pending upload count
+	 */
+	public int getPendingCount() {
+		return pending.size();
+	}
+	
+	//=========//
+	// Loading //
+	//=========//
+	
+	/** Begins loading a texture asynchronously.
+	 * 
+	 * @param resource Image resource
+	 * @return Handle to the loading texture
+	 * @throws IllegalStateException If the loader has been closed
+	 */
+	public @NonNull Handle load(@NonNull ResourceLocation resource) {
+		if (closed) throw new IllegalStateException("Texture loader has been closed");
+		Handle handle = new Handle(resource, renderer.missingTexture);
+		executor.execute(new LoadTask(handle));
+		return handle;
+	}
+	
+	/** Uploads pending images to textures, until the upload budget is spent. This must be called
+	 * on the rendering thread, and completes the futures of the handles processed. Nothing is
+	 * uploaded once the loader has been closed.
+	 * 
+	 * @return The number of handles processed
+	 */
+	public int processUploads() {
+		if (closed) {
+			drainPending();
+			return 0;
+		}
+		long spent = 0;
+		int processed = 0;
+		PendingUpload up;
+		while((up = pending.peek()) != null) {
+			DecodedImage image = up.image();
+			if (image != null) {
+				int size = image.getSize();
+				if (spent > 0 && spent + size > uploadBudget) break;
+				spent += size;
+			}
+			pending.poll();
+			processed++;
+			
+			Handle handle = up.handle();
+			if (image != null) {
+				try (image) {
+					Texture texture = renderer.createTexture(image);
+					handle.texture = texture;
+					handle.future.complete(texture);
+				} catch (Exception e) {
+					fail(handle, e);
+				}
+			} else fail(handle, up.error());
+		}
+		return processed;
+	}
+	
+	// Marks a handle as failed to load
+	private void fail(Handle handle, @Nullable Exception error) {
+		if (renderer.logger != null) LogUtil.log(renderer.logger, Level.WARN, "Failed to load texture \"" + handle.resource + "\": " + error);
+		handle.future.completeExceptionally(error != null ? error : new IllegalStateException("Unknown error"));
+	}
+	
+}
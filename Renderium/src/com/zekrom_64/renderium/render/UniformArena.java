@@ -0,0 +1,173 @@
+package com.zekrom_64.renderium.render;
+
+import java.nio.BufferOverflowException;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.lwjgl.opengl.GL45;
+
+import com.zekrom_64.renderium.render.info.UniformBinding;
+import com.zekrom_64.renderium.util.ISafeCloseable;
+import com.zekrom_64.renderium.util.IStructAccessor;
+
+/** <p>A uniform arena packs many uniform struct values into a single {@link StreamingBuffer},
+ * instead of using a separate {@link UniformBuffer} for each value. Each value is written to its
+ * own slot, aligned to the device's uniform buffer offset alignment, and is selected for drawing by
+ * binding the range of its slot with {@link ICommandExecutor#bindUniform(UniformBinding, BufferObject, int, int) bindUniform}.</p>
+ * 
+ * <p>Slots are bump allocated and only live for the frame they were allocated in. All slots are
+ * released at once when the next frame begins, and the memory of a frame is not reused until the
+ * device has finished with it.</p>
+ * 
+ * @author Zekrom_64
+ * 
+ */
+public class UniformArena implements ISafeCloseable {
+	
+	// The streaming buffer slots are allocated from
+	private final @NonNull StreamingBuffer stream;
+	// The alignment of each slot
+	private final int alignment;
+	// The number of slots allocated in the current frame
+	private int slotCount = 0;
+	
+	/** Creates a new uniform arena using the device's uniform buffer offset alignment.
+	 * 
+	 * @param frameSize The number of bytes that can be allocated in each frame
+	 * @param frameCount The number of frames that may be in flight at once
+	 */
+	public UniformArena(int frameSize, int frameCount) {
+		this(new StreamingBuffer(frameSize, frameCount), GL45.glGetInteger(GL45.GL_UNIFORM_BUFFER_OFFSET_ALIGNMENT));
+	}
+	
+	/** Creates a new uniform arena over an existing streaming buffer. The arena takes ownership of
+	 * the streaming buffer and will close it when closed.
+	 * 
+	 * @param stream Streaming buffer to allocate from
+	 * @param alignment The alignment of each slot, which must be a power of two
+	 */
+	public UniformArena(@NonNull StreamingBuffer stream, int alignment) {
+		if (alignment <= 0 || Integer.bitCount(alignment) != 1) throw new IllegalArgumentException("Alignment must be a power of two");
+		this.stream = stream;
+		this.alignment = alignment;
+	}
+	
+	@Override
+	public void close() {
+		stream.close();
+	}
+	
+	//=========//
+	// Getters //
+	//=========//
+	
+	/** Gets the streaming buffer slots are allocated from.
+	 * 
+	 * @return Streaming buffer
+	 */
+	public @NonNull StreamingBuffer getStream() {
+		return stream;
+	}
+	
+	/** Gets the alignment of each slot in bytes.
+	 * 
+	 * @return Slot alignment
+	 */
+	public int getAlignment() {
+		return alignment;
+	}
+	
+	/** Gets the number of slots allocated in the current frame.
+	 * 
+	 * @return Slot count
+	 */
+	public int getSlotCount() {
+		return slotCount;
+	}
+	
+	//=================//
+	// Frame Lifecycle //
+	//=================//
+	
+	/** Begins a new frame, releasing all slots allocated in the frame that previously used the same
+	 * memory.
+	 * 
+	 * @return This arena
+	 */
+	public @NonNull UniformArena beginFrame() {
+		stream.beginFrame();
+		slotCount = 0;
+		return this;
+	}
+	
+	/** Ends the current frame. This should be called after all draws using slots from the frame have
+	 * been issued.
+	 * 
+	 * @return This arena
+	 */
+	public @NonNull UniformArena endFrame() {
+		stream.endFrame();
+		return this;
+	}
+	
+	//============//
+	// Allocation //
+	//============//
+	
+	/** Allocates a slot in the current frame.
+	 * 
+	 * @param size The size of the slot in bytes
+	 * @return The offset of the slot in the buffer
+	 * @throws BufferOverflowException If there is not enough space left in the frame
+	 */
+	public int allocate(int size) {
+		int offset = stream.allocate(size, alignment);
+		slotCount++;
+		return offset;
+	}
+	
+	/** Allocates a slot in the current frame and writes a struct value to it.
+	 * 
+	 * @param <S> Struct type
+	 * @param accessor Struct accessor
+	 * @param struct Struct value
+	 * @return The offset of the slot in the buffer
+	 * @throws BufferOverflowException If there is not enough space left in the frame
+	 */
+	public <@NonNull S> int push(@NonNull IStructAccessor<S> accessor, S struct) {
+		int offset = allocate(accessor.getSizeOf());
+		accessor.write(offset, stream.getMemory(), struct);
+		return offset;
+	}
+	
+	/** Binds a slot to a shader program uniform.
+	 * 
+	 * @param executor Executor to bind with
+	 * @param binding Uniform binding
+	 * @param offset The offset of the slot in the buffer
+	 * @param size The size of the slot in bytes
+	 * @return This arena
+	 * @throws IllegalStateException If the streaming buffer has no buffer object
+	 */
+	public @NonNull UniformArena bind(@NonNull ICommandExecutor executor, @NonNull UniformBinding binding, int offset, int size) {
+		BufferObject buffer = stream.getBuffer();
+		if (buffer == null) throw new IllegalStateException("Uniform arena streaming buffer has no buffer object");
+		executor.bindUniform(binding, buffer, offset, size);
+		return this;
+	}
+	
+	/** Allocates a slot in the current frame, writes a struct value to it, and binds it to a shader
+	 * program uniform.
+	 * 
+	 * @param <S> Struct type
+	 * @param executor Executor to bind with
+	 * @param binding Uniform binding
+	 * @param accessor Struct accessor
+	 * @param struct Struct value
+	 * @return This arena
+	 * @throws BufferOverflowException If there is not enough space left in the frame
+	 */
+	public <@NonNull S> @NonNull UniformArena pushAndBind(@NonNull ICommandExecutor executor, @NonNull UniformBinding binding, @NonNull IStructAccessor<S> accessor, S struct) {
+		return bind(executor, binding, push(accessor, struct), accessor.getSizeOf());
+	}
+	
+}
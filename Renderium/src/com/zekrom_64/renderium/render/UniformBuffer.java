@@ -6,12 +6,15 @@ import java.util.function.Consumer;
 import org.eclipse.jdt.annotation.NonNull;
 
 import com.zekrom_64.renderium.render.info.MapMode;
+import com.zekrom_64.renderium.render.structs.StructLayout;
 import com.zekrom_64.renderium.util.IStruct;
+import com.zekrom_64.renderium.util.TypeUtils;
 
 /** A uniform buffer is a specialization of a {@link BufferObject} that stores a
  * single struct value that is updated before rendering. The uniform buffer
  * class will keep a CPU-side instance of this struct and track if it needs
- * to be updated before rendering.
+ * to be updated before rendering. If the struct class has a {@link StructLayout} the
+ * struct is written directly to the mapped buffer memory using the layout.
  * 
  * @author Zekrom_64
  *
@@ -20,6 +23,7 @@ import com.zekrom_64.renderium.util.IStruct;
 public class UniformBuffer<T extends IStruct<ByteBuffer>> extends BufferObject {
 	
 	private final T instance;
+	private final StructLayout<T> layout;
 	private boolean dirty;
 	
 	/** Creates a new uniform buffer using the given struct instance.
@@ -27,8 +31,20 @@ public class UniformBuffer<T extends IStruct<ByteBuffer>> extends BufferObject {
 	 * @param instance Uniform struct instance
 	 */
 	public UniformBuffer(@NonNull T instance) {
-		super(IStruct.getSizeOf(instance.getClass()), MapMode.WRITE_INVALIDATE);
+		this(instance, getLayout(instance));
+	}
+	
+	private UniformBuffer(@NonNull T instance, StructLayout<T> layout) {
+		super(layout != null ? layout.getSizeOf() : IStruct.getSizeOf(instance.getClass()), MapMode.WRITE_INVALIDATE);
 		this.instance = instance;
+		this.layout = layout;
+	}
+	
+	// Gets the struct layout of an instance's class, or null if it has none
+	@SuppressWarnings("unchecked")
+	private static <T extends IStruct<ByteBuffer>> StructLayout<T> getLayout(@NonNull T instance) {
+		Class<T> clazz = (Class<T>)instance.getClass();
+		return StructLayout.hasLayout(clazz) ? StructLayout.of(clazz) : null;
 	}
 	
 	/** Modifies this uniform buffer, notifying the buffer that it needs to be updated.
@@ -49,7 +65,11 @@ public class UniformBuffer<T extends IStruct<ByteBuffer>> extends BufferObject {
 	public UniformBuffer<T> update() {
 		if (dirty) {
 			dirty = false;
-			update(instance);
+			if (layout != null) {
+				ByteBuffer mem = map(MapMode.WRITE_INVALIDATE);
+				layout.write(0, TypeUtils.nonNull(mem), instance);
+				unmap();
+			} else update(instance);
 		}
 		return this;
 	}
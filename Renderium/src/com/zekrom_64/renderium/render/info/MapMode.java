@@ -16,7 +16,11 @@ public enum MapMode {
 	READ_WRITE(GL45.GL_READ_WRITE, GL45.GL_MAP_READ_BIT | GL45.GL_MAP_WRITE_BIT),
 	
 	/** Similar to {@link WRITE_ONLY} but hints that the memory range can be invalidated before writing. */
-	WRITE_INVALIDATE(GL45.GL_WRITE_ONLY, GL45.GL_MAP_WRITE_BIT | GL45.GL_MAP_INVALIDATE_RANGE_BIT);
+	WRITE_INVALIDATE(GL45.GL_WRITE_ONLY, GL45.GL_MAP_WRITE_BIT | GL45.GL_MAP_INVALIDATE_RANGE_BIT),
+	
+	/** The mapped memory will only be written to by the host, and may stay mapped while the buffer is used for
+	 * rendering. Writes are visible to the device without flushing, but must be synchronized with fences. */
+	PERSISTENT_WRITE(GL45.GL_WRITE_ONLY, GL45.GL_MAP_WRITE_BIT | GL45.GL_MAP_PERSISTENT_BIT | GL45.GL_MAP_COHERENT_BIT);
 	
 	/** The OpenGL mapping mode. */
 	public final int glMapMode;
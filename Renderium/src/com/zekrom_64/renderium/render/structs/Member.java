@@ -0,0 +1,35 @@
+package com.zekrom_64.renderium.render.structs;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/** Marks a public field as a member of a struct laid out by {@link StructLayout}. Members may be
+ * <tt>float</tt>, <tt>int</tt>, or <tt>boolean</tt> scalars, JOML float or integer vectors,
+ * {@link org.joml.Matrix3f} or {@link org.joml.Matrix4f} matrices, or arrays of these types.
+ * Vector and matrix members are usually final, as they are written and read in place.
+ * 
+ * @author Zekrom_64
+ * 
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Member {
+	
+	/** The order of the member in the struct, with lower values placed first.
+	 * 
+	 * @return Member order
+	 */
+	public int value();
+	
+	/** The number of elements if the member is an array. Arrays stored in the field may be shorter
+	 * than this length, in which case the remaining elements are left unmodified.
+	 * 
+	 * @return Array length
+	 */
+	public int length() default 0;
+	
+}
@@ -0,0 +1,21 @@
+package com.zekrom_64.renderium.render.structs;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/** Marks a struct class as being laid out in memory using the GLSL 'std140' layout rules, which
+ * are required for uniform blocks. The members of the struct are the fields annotated with
+ * {@link Member}, and the layout is computed by {@link StructLayout}.
+ * 
+ * @author Zekrom_64
+ * 
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Std140 {
+
+}
@@ -0,0 +1,657 @@
+package com.zekrom_64.renderium.render.structs;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.joml.Matrix3f;
+import org.joml.Matrix4f;
+import org.joml.Vector2f;
+import org.joml.Vector2i;
+import org.joml.Vector3f;
+import org.joml.Vector3i;
+import org.joml.Vector4f;
+import org.joml.Vector4i;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+
+import com.zekrom_64.renderium.util.IStructAccessor;
+import com.zekrom_64.renderium.util.TypeUtils;
+
+/** <p>A struct layout describes how the members of a struct class are stored in memory following
+ * the GLSL 'std140' or 'std430' layout rules. The struct class is annotated with {@link Std140} or
+ * {@link Std430}, and each of its members is a public field annotated with {@link Member}.</p>
+ * 
+ * <p>Member offsets, padding, and the struct size are computed once when the layout is first
+ * requested for a class. Structs are then written and read directly at a memory address, member by
+ * member, without any intermediate buffers. Each member is accessed through its own method handle,
+ * so a layout is convenient rather than as fast as a hand-written accessor; structs written in very
+ * hot paths may still implement {@link IStructAccessor} directly. A struct layout is also an
+ * {@link IStructAccessor} so it can be used to store structs in other native collections.</p>
+ * 
+ * @author Zekrom_64
+ * 
+ * @param <S> Struct type
+ */
+public final class StructLayout<@NonNull S> implements IStructAccessor<S> {
+	
+	//==============//
+	// Member Types //
+	//==============//
+	
+	// Enumeration of the types a member or array element may have
+	private static enum Kind {
+		FLOAT(float.class, 4, 4) {
+			@Override
+			void write(Object value, long address) {
+				MemoryUtil.memPutFloat(address, (Float)value);
+			}
+			@Override
+			Object read(long address, Object value) {
+				return MemoryUtil.memGetFloat(address);
+			}
+		},
+		INT(int.class, 4, 4) {
+			@Override
+			void write(Object value, long address) {
+				MemoryUtil.memPutInt(address, (Integer)value);
+			}
+			@Override
+			Object read(long address, Object value) {
+				return MemoryUtil.memGetInt(address);
+			}
+		},
+		BOOLEAN(boolean.class, 4, 4) {
+			@Override
+			void write(Object value, long address) {
+				MemoryUtil.memPutInt(address, (Boolean)value ? 1 : 0);
+			}
+			@Override
+			Object read(long address, Object value) {
+				return MemoryUtil.memGetInt(address) != 0;
+			}
+		},
+		VEC2F(Vector2f.class, 8, 8) {
+			@Override
+			void write(Object value, long address) {
+				Vector2f v = (Vector2f)value;
+				MemoryUtil.memPutFloat(address, v.x);
+				MemoryUtil.memPutFloat(address + 4, v.y);
+			}
+			@Override
+			Object read(long address, Object value) {
+				((Vector2f)value).set(MemoryUtil.memGetFloat(address), MemoryUtil.memGetFloat(address + 4));
+				return value;
+			}
+		},
+		VEC3F(Vector3f.class, 12, 16) {
+			@Override
+			void write(Object value, long address) {
+				Vector3f v = (Vector3f)value;
+				MemoryUtil.memPutFloat(address, v.x);
+				MemoryUtil.memPutFloat(address + 4, v.y);
+				MemoryUtil.memPutFloat(address + 8, v.z);
+			}
+			@Override
+			Object read(long address, Object value) {
+				((Vector3f)value).set(MemoryUtil.memGetFloat(address), MemoryUtil.memGetFloat(address + 4), MemoryUtil.memGetFloat(address + 8));
+				return value;
+			}
+		},
+		VEC4F(Vector4f.class, 16, 16) {
+			@Override
+			void write(Object value, long address) {
+				Vector4f v = (Vector4f)value;
+				MemoryUtil.memPutFloat(address, v.x);
+				MemoryUtil.memPutFloat(address + 4, v.y);
+				MemoryUtil.memPutFloat(address + 8, v.z);
+				MemoryUtil.memPutFloat(address + 12, v.w);
+			}
+			@Override
+			Object read(long address, Object value) {
+				((Vector4f)value).set(MemoryUtil.memGetFloat(address), MemoryUtil.memGetFloat(address + 4), MemoryUtil.memGetFloat(address + 8), MemoryUtil.memGetFloat(address + 12));
+				return value;
+			}
+		},
+		VEC2I(Vector2i.class, 8, 8) {
+			@Override
+			void write(Object value, long address) {
+				Vector2i v = (Vector2i)value;
+				MemoryUtil.memPutInt(address, v.x);
+				MemoryUtil.memPutInt(address + 4, v.y);
+			}
+			@Override
+			Object read(long address, Object value) {
+				((Vector2i)value).set(MemoryUtil.memGetInt(address), MemoryUtil.memGetInt(address + 4));
+				return value;
+			}
+		},
+		VEC3I(Vector3i.class, 12, 16) {
+			@Override
+			void write(Object value, long address) {
+				Vector3i v = (Vector3i)value;
+				MemoryUtil.memPutInt(address, v.x);
+				MemoryUtil.memPutInt(address + 4, v.y);
+				MemoryUtil.memPutInt(address + 8, v.z);
+			}
+			@Override
+			Object read(long address, Object value) {
+				((Vector3i)value).set(MemoryUtil.memGetInt(address), MemoryUtil.memGetInt(address + 4), MemoryUtil.memGetInt(address + 8));
+				return value;
+			}
+		},
+		VEC4I(Vector4i.class, 16, 16) {
+			@Override
+			void write(Object value, long address) {
+				Vector4i v = (Vector4i)value;
+				MemoryUtil.memPutInt(address, v.x);
+				MemoryUtil.memPutInt(address + 4, v.y);
+				MemoryUtil.memPutInt(address + 8, v.z);
+				MemoryUtil.memPutInt(address + 12, v.w);
+			}
+			@Override
+			Object read(long address, Object value) {
+				((Vector4i)value).set(MemoryUtil.memGetInt(address), MemoryUtil.memGetInt(address + 4), MemoryUtil.memGetInt(address + 8), MemoryUtil.memGetInt(address + 12));
+				return value;
+			}
+		},
+		// Matrix columns are always aligned to 16 bytes
+		MAT3F(Matrix3f.class, 48, 16) {
+			@Override
+			void write(Object value, long address) {
+				Matrix3f m = (Matrix3f)value;
+				MemoryUtil.memPutFloat(address, m.m00);
+				MemoryUtil.memPutFloat(address + 4, m.m01);
+				MemoryUtil.memPutFloat(address + 8, m.m02);
+				MemoryUtil.memPutFloat(address + 16, m.m10);
+				MemoryUtil.memPutFloat(address + 20, m.m11);
+				MemoryUtil.memPutFloat(address + 24, m.m12);
+				MemoryUtil.memPutFloat(address + 32, m.m20);
+				MemoryUtil.memPutFloat(address + 36, m.m21);
+				MemoryUtil.memPutFloat(address + 40, m.m22);
+			}
+			@Override
+			Object read(long address, Object value) {
+				((Matrix3f)value).set(
+					MemoryUtil.memGetFloat(address), MemoryUtil.memGetFloat(address + 4), MemoryUtil.memGetFloat(address + 8),
+					MemoryUtil.memGetFloat(address + 16), MemoryUtil.memGetFloat(address + 20), MemoryUtil.memGetFloat(address + 24),
+					MemoryUtil.memGetFloat(address + 32), MemoryUtil.memGetFloat(address + 36), MemoryUtil.memGetFloat(address + 40)
+				);
+				return value;
+			}
+		},
+		MAT4F(Matrix4f.class, 64, 16) {
+			@Override
+			void write(Object value, long address) {
+				Matrix4f m = (Matrix4f)value;
+				MemoryUtil.memPutFloat(address, m.m00());
+				MemoryUtil.memPutFloat(address + 4, m.m01());
+				MemoryUtil.memPutFloat(address + 8, m.m02());
+				MemoryUtil.memPutFloat(address + 12, m.m03());
+				MemoryUtil.memPutFloat(address + 16, m.m10());
+				MemoryUtil.memPutFloat(address + 20, m.m11());
+				MemoryUtil.memPutFloat(address + 24, m.m12());
+				MemoryUtil.memPutFloat(address + 28, m.m13());
+				MemoryUtil.memPutFloat(address + 32, m.m20());
+				MemoryUtil.memPutFloat(address + 36, m.m21());
+				MemoryUtil.memPutFloat(address + 40, m.m22());
+				MemoryUtil.memPutFloat(address + 44, m.m23());
+				MemoryUtil.memPutFloat(address + 48, m.m30());
+				MemoryUtil.memPutFloat(address + 52, m.m31());
+				MemoryUtil.memPutFloat(address + 56, m.m32());
+				MemoryUtil.memPutFloat(address + 60, m.m33());
+			}
+			@Override
+			Object read(long address, Object value) {
+				((Matrix4f)value).set(
+					MemoryUtil.memGetFloat(address), MemoryUtil.memGetFloat(address + 4), MemoryUtil.memGetFloat(address + 8), MemoryUtil.memGetFloat(address + 12),
+					MemoryUtil.memGetFloat(address + 16), MemoryUtil.memGetFloat(address + 20), MemoryUtil.memGetFloat(address + 24), MemoryUtil.memGetFloat(address + 28),
+					MemoryUtil.memGetFloat(address + 32), MemoryUtil.memGetFloat(address + 36), MemoryUtil.memGetFloat(address + 40), MemoryUtil.memGetFloat(address + 44),
+					MemoryUtil.memGetFloat(address + 48), MemoryUtil.memGetFloat(address + 52), MemoryUtil.memGetFloat(address + 56), MemoryUtil.memGetFloat(address + 60)
+				);
+				return value;
+			}
+		};
+		
+		// The Java type of the member
+		final Class<?> type;
+		// The size of the member in bytes
+		final int size;
+		// The base alignment of the member in bytes
+		final int alignment;
+		
+		private Kind(Class<?> type, int size, int alignment) {
+			this.type = type;
+			this.size = size;
+			this.alignment = alignment;
+		}
+		
+		// Writes a value to memory, scalars are passed boxed
+		abstract void write(Object value, long address);
+		
+		// Reads a value from memory, returning the value read. Vectors and matrices are read in place
+		// and returned, scalars are returned boxed.
+		abstract Object read(long address, Object value);
+		
+		// Gets the kind of a Java type
+		static Kind of(Class<?> type) {
+			for(Kind k : values()) if (k.type == type) return k;
+			return null;
+		}
+		
+	}
+	
+	
+	//=========//
+	// Members //
+	//=========//
+	
+	// Base class for a member of a laid out struct
+	private static abstract class LayoutMember {
+		
+		// The name of the member
+		final String name;
+		// The byte offset of the member
+		final int offset;
+		
+		LayoutMember(String name, int offset) {
+			this.name = name;
+			this.offset = offset;
+		}
+		
+		// Writes the member of a struct at the struct address
+		abstract void write(Object struct, long address) throws Throwable;
+		
+		// Reads the member of a struct from the struct address
+		abstract void read(long address, Object struct) throws Throwable;
+		
+	}
+	
+	// A scalar member
+	private static class ScalarMember extends LayoutMember {
+		
+		// The kind of scalar
+		private final Kind kind;
+		// Getter and setter for the field, setter is null if the field is final
+		private final MethodHandle getter, setter;
+		
+		ScalarMember(String name, int offset, Kind kind, MethodHandle getter, MethodHandle setter) {
+			super(name, offset);
+			this.kind = kind;
+			this.getter = getter.asType(MethodType.methodType(kind.type, Object.class));
+			this.setter = setter != null ? setter.asType(MethodType.methodType(void.class, Object.class, kind.type)) : null;
+		}
+		
+		@Override
+		void write(Object struct, long address) throws Throwable {
+			address += offset;
+			switch(kind) {
+			case FLOAT:
+				MemoryUtil.memPutFloat(address, (float)getter.invokeExact(struct));
+				break;
+			case INT:
+				MemoryUtil.memPutInt(address, (int)getter.invokeExact(struct));
+				break;
+			default:
+				MemoryUtil.memPutInt(address, (boolean)getter.invokeExact(struct) ? 1 : 0);
+				break;
+			}
+		}
+		
+		@Override
+		void read(long address, Object struct) throws Throwable {
+			if (setter == null) return;
+			address += offset;
+			switch(kind) {
+			case FLOAT:
+				setter.invokeExact(struct, MemoryUtil.memGetFloat(address));
+				break;
+			case INT:
+				setter.invokeExact(struct, MemoryUtil.memGetInt(address));
+				break;
+			default:
+				setter.invokeExact(struct, MemoryUtil.memGetInt(address) != 0);
+				break;
+			}
+		}
+		
+	}
+	
+	// A vector or matrix member
+	private static class ObjectMember extends LayoutMember {
+		
+		// The kind of object
+		private final Kind kind;
+		// Getter for the field
+		private final MethodHandle getter;
+		
+		ObjectMember(String name, int offset, Kind kind, MethodHandle getter) {
+			super(name, offset);
+			this.kind = kind;
+			this.getter = getter.asType(MethodType.methodType(Object.class, Object.class));
+		}
+		
+		@Override
+		void write(Object struct, long address) throws Throwable {
+			Object value = (Object)getter.invokeExact(struct);
+			if (value != null) kind.write(value, address + offset);
+		}
+		
+		@Override
+		void read(long address, Object struct) throws Throwable {
+			Object value = (Object)getter.invokeExact(struct);
+			if (value != null) kind.read(address + offset, value);
+		}
+		
+	}
+	
+	// An array member
+	private static class ArrayMember extends LayoutMember {
+		
+		// The kind of array element
+		private final Kind kind;
+		// Getter for the field
+		private final MethodHandle getter;
+		// The number of elements and the stride between them
+		private final int length, stride;
+		
+		ArrayMember(String name, int offset, Kind kind, MethodHandle getter, int length, int stride) {
+			super(name, offset);
+			this.kind = kind;
+			this.getter = getter.asType(MethodType.methodType(Object.class, Object.class));
+			this.length = length;
+			this.stride = stride;
+		}
+		
+		@Override
+		void write(Object struct, long address) throws Throwable {
+			Object array = (Object)getter.invokeExact(struct);
+			if (array == null) return;
+			address += offset;
+			switch(kind) {
+			case FLOAT: {
+				float[] a = (float[])array;
+				for(int i = 0, n = Math.min(a.length, length); i < n; i++, address += stride) MemoryUtil.memPutFloat(address, a[i]);
+			} break;
+			case INT: {
+				int[] a = (int[])array;
+				for(int i = 0, n = Math.min(a.length, length); i < n; i++, address += stride) MemoryUtil.memPutInt(address, a[i]);
+			} break;
+			case BOOLEAN: {
+				boolean[] a = (boolean[])array;
+				for(int i = 0, n = Math.min(a.length, length); i < n; i++, address += stride) MemoryUtil.memPutInt(address, a[i] ? 1 : 0);
+			} break;
+			default: {
+				Object[] a = (Object[])array;
+				for(int i = 0, n = Math.min(a.length, length); i < n; i++, address += stride) if (a[i] != null) kind.write(a[i], address);
+			} break;
+			}
+		}
+		
+		@Override
+		void read(long address, Object struct) throws Throwable {
+			Object array = (Object)getter.invokeExact(struct);
+			if (array == null) return;
+			address += offset;
+			switch(kind) {
+			case FLOAT: {
+				float[] a = (float[])array;
+				for(int i = 0, n = Math.min(a.length, length); i < n; i++, address += stride) a[i] = MemoryUtil.memGetFloat(address);
+			} break;
+			case INT: {
+				int[] a = (int[])array;
+				for(int i = 0, n = Math.min(a.length, length); i < n; i++, address += stride) a[i] = MemoryUtil.memGetInt(address);
+			} break;
+			case BOOLEAN: {
+				boolean[] a = (boolean[])array;
+				for(int i = 0, n = Math.min(a.length, length); i < n; i++, address += stride) a[i] = MemoryUtil.memGetInt(address) != 0;
+			} break;
+			default: {
+				Object[] a = (Object[])array;
+				for(int i = 0, n = Math.min(a.length, length); i < n; i++, address += stride) if (a[i] != null) kind.read(address, a[i]);
+			} break;
+			}
+		}
+		
+	}
+	
+	
+	//=========//
+	// Layouts //
+	//=========//
+	
+	// Cache of computed layouts
+	private static final ClassValue<StructLayout<?>> LAYOUTS = new ClassValue<>() {
+		
+		@Override
+		protected StructLayout<?> computeValue(Class<?> type) {
+			return new StructLayout<>(type);
+		}
+		
+	};
+	
+	/** Gets if a class is annotated with a struct layout.
+	 * 
+	 * @param clazz Struct class
+	 * @return If the class has a struct layout
+	 */
+	public static boolean hasLayout(Class<?> clazz) {
+		return clazz.isAnnotationPresent(Std140.class) || clazz.isAnnotationPresent(Std430.class);
+	}
+	
+	/** Gets the layout of a struct class. The layout is computed the first time it is requested.
+	 * 
+	 * @param <S> Struct type
+	 * @param clazz Struct class
+	 * @return Struct layout
+	 * @throws IllegalArgumentException If the class is not a valid struct class
+	 */
+	@SuppressWarnings("unchecked")
+	public static <@NonNull S> @NonNull StructLayout<S> of(Class<S> clazz) {
+		return TypeUtils.nonNull((StructLayout<S>)LAYOUTS.get(clazz));
+	}
+	
+	// The struct class
+	private final Class<S> type;
+	// If the layout follows the std140 rules
+	private final boolean std140;
+	// The members of the struct in order
+	private final LayoutMember[] members;
+	// The size and base alignment of the struct in bytes
+	private final int size, alignment;
+	// The struct constructor, created on demand
+	private Supplier<@NonNull S> constructor;
+	
+	private static int align(int value, int alignment) {
+		return (value + alignment - 1) & -alignment;
+	}
+	
+	private StructLayout(Class<S> type) {
+		this.type = type;
+		std140 = type.isAnnotationPresent(Std140.class);
+		if (!std140 && !type.isAnnotationPresent(Std430.class))
+			throw new IllegalArgumentException("Struct class " + type.getTypeName() + " is not annotated with a layout");
+			
+		List<Field> fields = new ArrayList<>();
+		for(Field f : type.getFields()) {
+			if (Modifier.isStatic(f.getModifiers())) continue;
+			if (f.isAnnotationPresent(Member.class)) fields.add(f);
+		}
+		fields.sort(Comparator.comparingInt((Field f) -> f.getAnnotation(Member.class).value()));
+		
+		MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+		List<LayoutMember> members = new ArrayList<>();
+		int offset = 0, maxalign = std140 ? 16 : 4;
+		for(int i = 0; i < fields.size(); i++) {
+			Field f = fields.get(i);
+			Member m = f.getAnnotation(Member.class);
+			if (i > 0 && fields.get(i - 1).getAnnotation(Member.class).value() == m.value())
+				throw new IllegalArgumentException("Duplicate member order " + m.value() + " in struct " + type.getTypeName());
+			Class<?> ftype = f.getType();
+			Kind kind = Kind.of(ftype.isArray() ? ftype.getComponentType() : ftype);
+			if (kind == null) throw new IllegalArgumentException("Unsupported member type " + ftype.getTypeName() + " for " + f.getName());
+			
+			MethodHandle getter, setter = null;
+			try {
+				getter = lookup.unreflectGetter(f);
+				if (!ftype.isArray() && ftype.isPrimitive() && !Modifier.isFinal(f.getModifiers())) setter = lookup.unreflectSetter(f);
+			} catch (IllegalAccessException e) {
+				throw new IllegalArgumentException("Member " + f.getName() + " of struct " + type.getTypeName() + " is not accessible", e);
+			}
+			
+			LayoutMember lm;
+			if (ftype.isArray()) {
+				if (m.length() <= 0) throw new IllegalArgumentException("Array member " + f.getName() + " must declare a length");
+				// Array elements in std140 are aligned like vec4s
+				int elemalign = std140 ? align(kind.alignment, 16) : kind.alignment;
+				int stride = align(kind.size, elemalign);
+				offset = align(offset, elemalign);
+				lm = new ArrayMember(f.getName(), offset, kind, getter, m.length(), stride);
+				offset += stride * m.length();
+				maxalign = Math.max(maxalign, elemalign);
+			} else {
+				offset = align(offset, kind.alignment);
+				if (ftype.isPrimitive()) lm = new ScalarMember(f.getName(), offset, kind, getter, setter);
+				else lm = new ObjectMember(f.getName(), offset, kind, getter);
+				offset += kind.size;
+				maxalign = Math.max(maxalign, kind.alignment);
+			}
+			members.add(lm);
+		}
+		this.members = members.toArray(new LayoutMember[0]);
+		alignment = maxalign;
+		size = align(offset, maxalign);
+	}
+	
+	
+	//=========//
+	// Getters //
+	//=========//
+	
+	/** Gets the struct class this layout describes.
+	 * 
+	 * @return Struct class
+	 */
+	public Class<S> getType() {
+		return type;
+	}
+	
+	/** Gets if this layout follows the 'std140' rules, otherwise it follows the 'std430' rules.
+	 * 
+	 * @return If this is a 'std140' layout
+	 */
+	public boolean isStd140() {
+		return std140;
+	}
+	
+	/** Gets the base alignment of the struct in bytes.
+	 * 
+	 * @return Struct alignment
+	 */
+	public int getAlignment() {
+		return alignment;
+	}
+	
+	/** Gets the byte offset of a member of the struct.
+	 * 
+	 * @param name Member field name
+	 * @return Member offset
+	 * @throws IllegalArgumentException If the struct has no such member
+	 */
+	public int getOffset(String name) {
+		for(LayoutMember m : members) if (m.name.equals(name)) return m.offset;
+		throw new IllegalArgumentException("Struct " + type.getTypeName() + " has no member " + name);
+	}
+	
+	@Override
+	public int getSizeOf() {
+		return size;
+	}
+	
+	
+	//====================//
+	// Read/Write Methods //
+	//====================//
+	
+	/** Writes a struct to memory at the given address. Padding between members is left unmodified.
+	 * 
+	 * @param struct Struct to write
+	 * @param address Memory address to write at
+	 */
+	public void write(S struct, long address) {
+		try {
+			for(LayoutMember m : members) m.write(struct, address);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new RuntimeException("Failed to write struct " + type.getTypeName(), t);
+		}
+	}
+	
+	/** Reads a struct from memory at the given address. Final scalar members are not modified.
+	 * 
+	 * @param address Memory address to read from
+	 * @param struct Struct to read into
+	 */
+	public void read(long address, S struct) {
+		try {
+			for(LayoutMember m : members) m.read(address, struct);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new RuntimeException("Failed to read struct " + type.getTypeName(), t);
+		}
+	}
+	
+	/** Reads a struct from a buffer. Direct buffers are read in place, while heap buffers are first
+	 * copied to temporary native memory. Members are always read in native byte order.
+	 * 
+	 * @param position Byte position in the buffer
+	 * @param buffer Buffer to read from
+	 * @param struct Struct to read into
+	 */
+	@Override
+	public void read(int position, @NonNull ByteBuffer buffer, S struct) {
+		Objects.checkFromIndexSize(position, size, buffer.limit());
+		if (buffer.isDirect()) read(MemoryUtil.memAddress0(buffer) + position, struct);
+		else try (MemoryStack sp = MemoryStack.stackPush()) {
+			ByteBuffer tmp = sp.malloc(size);
+			tmp.put(0, buffer, position, size);
+			read(MemoryUtil.memAddress(tmp), struct);
+		}
+	}
+	
+	/** Writes a struct to a buffer. Direct buffers are written in place, while heap buffers are
+	 * written through temporary native memory. Members are always written in native byte order.
+	 * 
+	 * @param position Byte position in the buffer
+	 * @param buffer Buffer to write to
+	 * @param struct Struct to write
+	 */
+	@Override
+	public void write(int position, @NonNull ByteBuffer buffer, S struct) {
+		Objects.checkFromIndexSize(position, size, buffer.limit());
+		if (buffer.isDirect()) write(struct, MemoryUtil.memAddress0(buffer) + position);
+		else try (MemoryStack sp = MemoryStack.stackPush()) {
+			ByteBuffer tmp = sp.calloc(size);
+			write(struct, MemoryUtil.memAddress(tmp));
+			buffer.put(position, tmp, 0, size);
+		}
+	}
+	
+	@Override
+	public S create() {
+		if (constructor == null) constructor = TypeUtils.getDefaultConstructor(type);
+		return constructor.get();
+	}
+	
+}
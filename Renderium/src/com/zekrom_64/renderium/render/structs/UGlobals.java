@@ -2,24 +2,30 @@ package com.zekrom_64.renderium.render.structs;
 
 import java.nio.ByteBuffer;
 
+import org.eclipse.jdt.annotation.NonNull;
 import org.joml.Matrix4f;
 
 import com.zekrom_64.renderium.util.IStruct;
 
+@Std140
 public class UGlobals implements IStruct<ByteBuffer> {
 
-	public static final int SIZEOF = 16 * Float.BYTES;
+	/** The memory layout of the struct. */
+	public static final @NonNull StructLayout<UGlobals> LAYOUT = StructLayout.of(UGlobals.class);
 	
+	public static final int SIZEOF = LAYOUT.getSizeOf();
+	
+	@Member(0)
 	public final Matrix4f mTransform = new Matrix4f();
 	
 	@Override
 	public void get(int position, ByteBuffer buffer) {
-		mTransform.get(buffer);
+		LAYOUT.write(position, buffer, this);
 	}
 
 	@Override
 	public void set(int position, ByteBuffer buffer) {
-		mTransform.set(buffer);
+		LAYOUT.read(position, buffer, this);
 	}
 
 }
@@ -25,17 +25,14 @@ public interface IStruct<TBuffer extends Buffer> {
 	 */
 	public void set(int position, TBuffer buffer);
 	
-	/** Reflects the size of a structure type from the static int field 'SIZEOF'.
+	/** Reflects the size of a structure type from the static int field 'SIZEOF'. The size of
+	 * each type is only reflected once and cached afterwards.
 	 * 
 	 * @param clazz Struct type
 	 * @return Size of the type
 	 */
 	public static int getSizeOf(Class<?> clazz) {
-		try {
-			return clazz.getField("SIZEOF").getInt(null);
-		} catch (Exception e) {
-			throw new RuntimeException("Failed to get structure size of type " + clazz.getTypeName(), e);
-		}
+		return StructSizeCache.SIZES.get(clazz);
 	}
 	
 }
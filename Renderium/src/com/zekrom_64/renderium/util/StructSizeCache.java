@@ -0,0 +1,26 @@
+package com.zekrom_64.renderium.util;
+
+/** Cache of the sizes of {@link IStruct} types, reflected from their static 'SIZEOF' field.
+ * 
+ * @author Zekrom_64
+ * 
+ */
+final class StructSizeCache {
+	
+	/** The cached struct sizes. */
+	static final ClassValue<Integer> SIZES = new ClassValue<>() {
+		
+		@Override
+		protected Integer computeValue(Class<?> clazz) {
+			try {
+				return clazz.getField("SIZEOF").getInt(null);
+			} catch (Exception e) {
+				throw new RuntimeException("Failed to get structure size of type " + clazz.getTypeName(), e);
+			}
+		}
+		
+	};
+	
+	private StructSizeCache() { }
+	
+}
@@ -1,8 +1,12 @@
 package com.zekrom_64.renderium.util;
 
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaConversionException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Array;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.util.Objects;
 import java.util.function.Supplier;
 
@@ -28,27 +32,55 @@ public class TypeUtils {
 		return arr;
 	}
 
+	// Lookup used to generate constructor suppliers
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+	
 	/** Gets a supplier for the "default" constructor for a class (ie. a public
-	 * parameterless constructor).
+	 * parameterless constructor). Where possible the supplier is generated as a lambda calling
+	 * the constructor directly, so creating instances does not go through reflection.
+	 * 
+	 * <p>Looking up the constructor requires this library's module to read the class's module, so
+	 * as a side effect a read edge to the class's module is added if it is not already present.
+	 * Adding a read edge has no effect on other modules, and is only ever done once per module.</p>
 	 * 
 	 * @param <T> Type to reflect
 	 * @param clazz Class to get constructor for
 	 * @return Supplier for the default constructor
 	 */
-	@SuppressWarnings("null")
+	@SuppressWarnings({ "null", "unchecked" })
 	public static <T> Supplier<@NonNull T> getDefaultConstructor(Class<T> clazz) {
+		MethodHandle ctor;
 		try {
-			Constructor<T> ctor = clazz.getConstructor();
+			// Method handle lookups require the class's module to be readable
+			Module module = TypeUtils.class.getModule();
+			if (!module.canRead(clazz.getModule())) module.addReads(clazz.getModule());
+			ctor = LOOKUP.findConstructor(clazz, MethodType.methodType(void.class));
+		} catch (NoSuchMethodException | IllegalAccessException | SecurityException e) {
+			throw new RuntimeException("Failed to find default constructor for class " + clazz.getTypeName(), e);
+		}
+		CallSite site;
+		try {
+			site = LambdaMetafactory.metafactory(LOOKUP, "get", MethodType.methodType(Supplier.class),
+				MethodType.methodType(Object.class), ctor, MethodType.methodType(clazz));
+		} catch (LambdaConversionException e) {
+			// The class cannot be linked to directly, so invoke the constructor handle instead
+			MethodHandle gctor = ctor.asType(MethodType.methodType(Object.class));
 			return () -> {
 				try {
-					return ctor.newInstance();
-				} catch (InstantiationException | IllegalAccessException | IllegalArgumentException
-						| InvocationTargetException e) {
-					throw new RuntimeException("Failed to construct class " + clazz);
+					return (T)gctor.invokeExact();
+				} catch (RuntimeException | Error e2) {
+					throw e2;
+				} catch (Throwable e2) {
+					throw new RuntimeException("Failed to construct class " + clazz.getTypeName(), e2);
 				}
 			};
-		} catch (NoSuchMethodException | SecurityException e) {
-			throw new RuntimeException("Failed to find default constructor for class" + clazz);
+		}
+		try {
+			return (Supplier<@NonNull T>)site.getTarget().invoke();
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new RuntimeException("Failed to create constructor supplier for class " + clazz.getTypeName(), t);
 		}
 	}
 	
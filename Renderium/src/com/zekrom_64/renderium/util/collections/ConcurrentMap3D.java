@@ -0,0 +1,440 @@
+package com.zekrom_64.renderium.util.collections;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import org.joml.Vector3ic;
+
+import com.zekrom_64.renderium.util.TypeUtils;
+import com.zekrom_64.renderium.util.collections.Map3D.HashInt3D;
+import com.zekrom_64.renderium.util.collections.Map3D.IntTriFunction;
+import com.zekrom_64.renderium.util.collections.Map3D.IntTriObjConsumer;
+import com.zekrom_64.renderium.util.collections.Map3D.IntTriPredicate;
+import com.zekrom_64.renderium.util.threading.IRWLock;
+import com.zekrom_64.renderium.util.threading.StampedRWLock;
+
+/** <p>A thread-safe variant of {@link Map3D} which uses lock striping. The map is split into a
+ * number of independent {@link Map3D} stripes each guarded by its own reader-writer lock, and
+ * every coordinate is assigned to a stripe by its hash. Operations on coordinates in different
+ * stripes never contend with each other.</p>
+ * 
+ * <p>Like other concurrent maps, <b>null</b> values are not permitted. Iterators over the
+ * collection views are weakly consistent, taking a snapshot of each stripe as it is reached.</p>
+ * 
+ * @author Zekrom_64
+ * 
+ * @param <V> The mapped value type
+ */
+public class ConcurrentMap3D<V> extends AbstractMap<Vector3ic, V> implements ConcurrentMap<Vector3ic, V> {
+	
+	// Multiplier used to spread hash values when selecting stripes (2^32 / golden ratio)
+	private static final int HASH_SPREAD = 0x9E3779B9;
+	
+	// The hashing function
+	private final HashInt3D hashfn;
+	// The maps storing each stripe of entries
+	private final Map3D<V>[] stripes;
+	// The locks guarding each stripe
+	private final IRWLock[] locks;
+	// The number of bits to shift spread hashes by to get a stripe index
+	private final int stripeShift;
+	
+	/** Creates a new concurrent 3D map.
+	 * 
+	 * @param concurrencyLevel The estimated number of concurrently updating threads, rounded up to a power of two stripes
+	 * @param bucketsPerStripe Initial number of hash buckets in each stripe
+	 * @param hashfn Hashing function
+	 */
+	public ConcurrentMap3D(int concurrencyLevel, int bucketsPerStripe, @NonNull HashInt3D hashfn) {
+		if (concurrencyLevel <= 0) throw new IllegalArgumentException("Concurrency level must be positive");
+		int nstripes = Math.max(Integer.highestOneBit(Math.min(concurrencyLevel, 1 << 16) - 1) << 1, 2);
+		this.hashfn = hashfn;
+		stripes = TypeUtils.createGenericArray(nstripes, Map3D.class);
+		locks = new IRWLock[nstripes];
+		for(int i = 0; i < nstripes; i++) {
+			stripes[i] = new Map3D<>(bucketsPerStripe, hashfn);
+			locks[i] = new StampedRWLock();
+		}
+		stripeShift = 32 - Integer.numberOfTrailingZeros(nstripes);
+	}
+	
+	/** Creates a new concurrent 3D map with the given hashing function, using four stripes per
+	 * available processor.
+	 * 
+	 * @param hashfn Hashing function
+	 */
+	public ConcurrentMap3D(@NonNull HashInt3D hashfn) {
+		this(4 * Runtime.getRuntime().availableProcessors(), 64, hashfn);
+	}
+	
+	/** Creates a new concurrent 3D map with the default hashing function.
+	 * 
+	 */
+	public ConcurrentMap3D() {
+		this(Map3D.DEFAULT_HASH);
+	}
+	
+	// Gets the stripe index for a coordinate
+	private int getStripeIndex(int x, int y, int z) {
+		// Use the high bits of the spread hash so stripes don't share the low bits each stripe buckets by
+		return (hashfn.hash(x, y, z) * HASH_SPREAD) >>> stripeShift;
+	}
+	
+	/** Gets the number of stripes the map is divided into.
+	 * 
+	 * @return Stripe count
+	 */
+	public int getStripeCount() {
+		return stripes.length;
+	}
+	
+	//======================//
+	// Primitive Operations //
+	//======================//
+	
+	/** Gets a value from this 3D map, or <b>null</b> if no such element exists.
+	 * 
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @param z Z coordinate
+	 * @return Value at these coordinates, or <b>null</b>
+	 */
+	public @Nullable V get(int x, int y, int z) {
+		int i = getStripeIndex(x, y, z);
+		try(var rlock = locks[i].read()) {
+			return stripes[i].get(x, y, z);
+		}
+	}
+	
+	/** Sets a value in the 3D map.
+	 * 
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @param z Z coordinate
+	 * @param value Value to set
+	 * @return The existing value at these coordinates, or <b>null</b>
+	 */
+	public @Nullable V put(int x, int y, int z, @NonNull V value) {
+		Objects.requireNonNull(value);
+		int i = getStripeIndex(x, y, z);
+		try(var wlock = locks[i].write()) {
+			return stripes[i].put(x, y, z, value);
+		}
+	}
+	
+	/** Sets a value in the 3D map if no value is currently present.
+	 * 
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @param z Z coordinate
+	 * @param value Value to set
+	 * @return The existing value at these coordinates, or <b>null</b> if the value was set
+	 */
+	public @Nullable V putIfAbsent(int x, int y, int z, @NonNull V value) {
+		Objects.requireNonNull(value);
+		int i = getStripeIndex(x, y, z);
+		try(var wlock = locks[i].write()) {
+			Map3D<V> stripe = stripes[i];
+			V old = stripe.get(x, y, z);
+			if (old == null) stripe.put(x, y, z, value);
+			return old;
+		}
+	}
+	
+	/** Removes a value from the 3D map.
+	 * 
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @param z Z coordinate
+	 * @return Removed value at these coordinates, or <b>null</b>
+	 */
+	public @Nullable V remove(int x, int y, int z) {
+		int i = getStripeIndex(x, y, z);
+		try(var wlock = locks[i].write()) {
+			return stripes[i].remove(x, y, z);
+		}
+	}
+	
+	/** Gets the value at the given coordinates, atomically computing and inserting it if there is
+	 * no such value. The function is called at most once and while holding the lock of the stripe
+	 * containing the coordinates, so it should be short and must not modify this map. If the function
+	 * returns <b>null</b> nothing is inserted.
+	 * 
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @param z Z coordinate
+	 * @param func Function computing the value to insert
+	 * @return The existing or computed value at these coordinates, or <b>null</b>
+	 */
+	public @Nullable V computeIfAbsent(int x, int y, int z, IntTriFunction<? extends V> func) {
+		int i = getStripeIndex(x, y, z);
+		// Most calls find an existing value, so try under the shared lock first
+		try(var rlock = locks[i].read()) {
+			V value = stripes[i].get(x, y, z);
+			if (value != null) return value;
+		}
+		try(var wlock = locks[i].write()) {
+			return stripes[i].computeIfAbsent(x, y, z, func);
+		}
+	}
+	
+	/** Passes every entry of this map to a consumer without allocating any objects. Each stripe is
+	 * visited while holding its read lock, so the consumer must not modify this map.
+	 * 
+	 * @param consumer Entry consumer
+	 */
+	public void forEach(IntTriObjConsumer<? super V> consumer) {
+		for(int i = 0; i < stripes.length; i++) {
+			try(var rlock = locks[i].read()) {
+				stripes[i].forEach(consumer);
+			}
+		}
+	}
+	
+	/** Removes every entry of this map matching a predicate without allocating any objects. Each
+	 * stripe is visited while holding its write lock, so the predicate must not access this map.
+	 * 
+	 * @param predicate Predicate selecting entries to remove
+	 * @return If any entries were removed
+	 */
+	public boolean removeIf(IntTriPredicate<? super V> predicate) {
+		boolean removed = false;
+		for(int i = 0; i < stripes.length; i++) {
+			try(var wlock = locks[i].write()) {
+				removed |= stripes[i].removeIf(predicate);
+			}
+		}
+		return removed;
+	}
+	
+	//===============//
+	// Map Interface //
+	//===============//
+	
+	@Override
+	public int size() {
+		long size = 0;
+		for(int i = 0; i < stripes.length; i++) {
+			try(var rlock = locks[i].read()) {
+				size += stripes[i].size();
+			}
+		}
+		return (int)Math.min(size, Integer.MAX_VALUE);
+	}
+	
+	@Override
+	public boolean isEmpty() {
+		for(int i = 0; i < stripes.length; i++) {
+			try(var rlock = locks[i].read()) {
+				if (!stripes[i].isEmpty()) return false;
+			}
+		}
+		return true;
+	}
+	
+	@Override
+	public boolean containsKey(Object key) {
+		return get(key) != null;
+	}
+	
+	@Override
+	public boolean containsValue(Object value) {
+		for(int i = 0; i < stripes.length; i++) {
+			try(var rlock = locks[i].read()) {
+				if (stripes[i].containsValue(value)) return true;
+			}
+		}
+		return false;
+	}
+	
+	@Override
+	public V get(Object key) {
+		Vector3ic v = (Vector3ic)key;
+		return get(v.x(), v.y(), v.z());
+	}
+	
+	@Override
+	public V put(Vector3ic key, V value) {
+		return put(key.x(), key.y(), key.z(), value);
+	}
+	
+	@Override
+	public V remove(Object key) {
+		Vector3ic v = (Vector3ic)key;
+		return remove(v.x(), v.y(), v.z());
+	}
+	
+	@Override
+	public void putAll(Map<? extends Vector3ic, ? extends V> m) {
+		for(var entry : m.entrySet()) put(entry.getKey(), entry.getValue());
+	}
+	
+	@Override
+	public void clear() {
+		for(int i = 0; i < stripes.length; i++) {
+			try(var wlock = locks[i].write()) {
+				stripes[i].clear();
+			}
+		}
+	}
+	
+	//=========================//
+	// ConcurrentMap Interface //
+	//=========================//
+	
+	@Override
+	public V putIfAbsent(Vector3ic key, V value) {
+		return putIfAbsent(key.x(), key.y(), key.z(), value);
+	}
+	
+	@Override
+	public boolean remove(Object key, Object value) {
+		if (value == null) return false;
+		Vector3ic v = (Vector3ic)key;
+		int x = v.x(), y = v.y(), z = v.z();
+		int i = getStripeIndex(x, y, z);
+		try(var wlock = locks[i].write()) {
+			Map3D<V> stripe = stripes[i];
+			if (!value.equals(stripe.get(x, y, z))) return false;
+			stripe.remove(x, y, z);
+			return true;
+		}
+	}
+	
+	@Override
+	public boolean replace(Vector3ic key, V oldValue, V newValue) {
+		Objects.requireNonNull(oldValue);
+		Objects.requireNonNull(newValue);
+		int x = key.x(), y = key.y(), z = key.z();
+		int i = getStripeIndex(x, y, z);
+		try(var wlock = locks[i].write()) {
+			Map3D<V> stripe = stripes[i];
+			if (!oldValue.equals(stripe.get(x, y, z))) return false;
+			stripe.put(x, y, z, newValue);
+			return true;
+		}
+	}
+	
+	@Override
+	public V replace(Vector3ic key, V value) {
+		Objects.requireNonNull(value);
+		int x = key.x(), y = key.y(), z = key.z();
+		int i = getStripeIndex(x, y, z);
+		try(var wlock = locks[i].write()) {
+			Map3D<V> stripe = stripes[i];
+			if (stripe.get(x, y, z) == null) return null;
+			return stripe.put(x, y, z, value);
+		}
+	}
+	
+	@Override
+	public V computeIfAbsent(Vector3ic key, Function<? super Vector3ic, ? extends V> mappingFunction) {
+		Objects.requireNonNull(mappingFunction);
+		return computeIfAbsent(key.x(), key.y(), key.z(), (x, y, z) -> mappingFunction.apply(key));
+	}
+	
+	//==================//
+	// Collection Views //
+	//==================//
+	
+	private class EntryIterator implements Iterator<Entry<Vector3ic, V>> {
+		
+		// The index of the next stripe to snapshot
+		private int stripeIndex = 0;
+		// Snapshot of the entries of the current stripe
+		private final List<Entry<Vector3ic, V>> snapshot = new ArrayList<>();
+		// The index of the next entry in the snapshot
+		private int entryIndex = 0;
+		// The last entry returned
+		private Entry<Vector3ic, V> lastEntry = null;
+		
+		public EntryIterator() {
+			seekToEntry();
+		}
+		
+		private void seekToEntry() {
+			while(entryIndex >= snapshot.size() && stripeIndex < stripes.length) {
+				snapshot.clear();
+				entryIndex = 0;
+				try(var rlock = locks[stripeIndex].read()) {
+					// Node keys are never modified, so they can be shared by the snapshot
+					for(var e : stripes[stripeIndex].entrySet())
+						snapshot.add(new SimpleImmutableEntry<>(e.getKey(), e.getValue()));
+				}
+				stripeIndex++;
+			}
+		}
+		
+		@Override
+		public boolean hasNext() {
+			return entryIndex < snapshot.size();
+		}
+		
+		@Override
+		public Entry<Vector3ic, V> next() {
+			if (!hasNext()) throw new NoSuchElementException();
+			lastEntry = snapshot.get(entryIndex++);
+			seekToEntry();
+			return lastEntry;
+		}
+		
+		@Override
+		public void remove() {
+			if (lastEntry == null) throw new IllegalStateException();
+			ConcurrentMap3D.this.remove(lastEntry.getKey(), lastEntry.getValue());
+			lastEntry = null;
+		}
+		
+	}
+	
+	private class EntrySet extends AbstractSet<Entry<Vector3ic, V>> {
+		
+		@Override
+		public Iterator<Entry<Vector3ic, V>> iterator() {
+			return new EntryIterator();
+		}
+		
+		@Override
+		public int size() {
+			return ConcurrentMap3D.this.size();
+		}
+		
+		@Override
+		public boolean contains(Object o) {
+			if (!(o instanceof Entry<?, ?> e)) return false;
+			V value = get(e.getKey());
+			return value != null && value.equals(e.getValue());
+		}
+		
+		@Override
+		public boolean remove(Object o) {
+			if (!(o instanceof Entry<?, ?> e)) return false;
+			return ConcurrentMap3D.this.remove(e.getKey(), e.getValue());
+		}
+		
+		@Override
+		public void clear() {
+			ConcurrentMap3D.this.clear();
+		}
+		
+	}
+	
+	private final EntrySet entrySet = new EntrySet();
+	
+	@Override
+	public Set<Entry<Vector3ic, V>> entrySet() {
+		return entrySet;
+	}
+	
+}
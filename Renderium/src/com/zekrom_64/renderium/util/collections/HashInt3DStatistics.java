@@ -0,0 +1,177 @@
+package com.zekrom_64.renderium.util.collections;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+import com.zekrom_64.renderium.util.collections.Map3D.HashInt3D;
+
+/** <p>Measures how well {@link HashInt3D} functions distribute a set of coordinates, to help
+ * choose a hash function for a particular workload. Coordinates are usually taken from a trace
+ * of the keys a real {@link Map3D} holds.</p>
+ * 
+ * <p>This class may also be run directly, taking the path of a trace file and optionally a
+ * bucket count. Each line of the trace file holds the X, Y, and Z coordinates of a single key
+ * separated by whitespace or commas, and lines starting with '#' are ignored.</p>
+ * 
+ * @author Zekrom_64
+ * 
+ */
+public class HashInt3DStatistics {
+	
+	/** The distribution statistics of a hash function over a set of coordinates.
+	 * 
+	 * @author Zekrom_64
+	 * 
+	 * @param name The name of the hash function
+	 * @param keys The number of distinct keys
+	 * @param buckets The number of buckets
+	 * @param occupiedBuckets The number of buckets holding at least one key
+	 * @param longestChain The length of the longest bucket chain
+	 * @param meanProbeLength The average number of keys compared by a successful lookup
+	 * @param lookupsPerSecond The number of successful lookups per second in a {@link Map3D}
+	 */
+	public static record Result(
+		@NonNull String name,
+		int keys,
+		int buckets,
+		int occupiedBuckets,
+		int longestChain,
+		double meanProbeLength,
+		double lookupsPerSecond
+	) {
+		
+		/** Gets the fraction of buckets holding at least one key.
+		 * 
+		 * @return Bucket occupancy
+		 */
+		public double occupancy() {
+			return buckets > 0 ? (double)occupiedBuckets / buckets : 0;
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("%-12s keys=%d buckets=%d occupancy=%.3f longest=%d probes=%.3f lookups/s=%.3e",
+				name, keys, buckets, occupancy(), longestChain, meanProbeLength, lookupsPerSecond);
+		}
+		
+	}
+	
+	// The number of timed lookup passes
+	private static final int TIMED_PASSES = 5;
+	// Sink for lookup results so timed lookups are not optimized away
+	private static volatile long blackhole;
+	
+	/** Gets the built-in hash functions of {@link Map3D} by name.
+	 * 
+	 * @return Map of names to hash functions
+	 */
+	public static @NonNull Map<String, HashInt3D> getBuiltinHashes() {
+		Map<String, HashInt3D> hashes = new LinkedHashMap<>();
+		hashes.put("default", Map3D.DEFAULT_HASH);
+		hashes.put("align16", Map3D.ALIGN16_HASH);
+		hashes.put("morton", Map3D.MORTON_HASH);
+		hashes.put("fibonacci", Map3D.FIBONACCI_HASH);
+		hashes.put("xxhash", Map3D.XXHASH_HASH);
+		return hashes;
+	}
+	
+	/** Measures the distribution of a hash function over a set of coordinates, using the bucket
+	 * selection of a {@link Map3D} with the given number of buckets. Duplicate coordinates are
+	 * only counted once.
+	 * 
+	 * @param name The name of the hash function
+	 * @param hashfn The hash function
+	 * @param coords Packed array of X, Y, and Z coordinates
+	 * @param nbuckets The number of buckets
+	 * @return Distribution statistics
+	 */
+	public static @NonNull Result measure(@NonNull String name, @NonNull HashInt3D hashfn, int[] coords, int nbuckets) {
+		if (coords.length % 3 != 0) throw new IllegalArgumentException("Coordinate array length must be a multiple of 3");
+		Map3D<Integer> map = new Map3D<>(nbuckets, hashfn, Map3D.NO_RESIZE);
+		for(int i = 0; i < coords.length; i += 3) map.put(coords[i], coords[i + 1], coords[i + 2], i);
+		int keys = map.size();
+		
+		// Compute chain lengths the same way the map selects buckets
+		int[] chains = new int[nbuckets];
+		boolean fasthash = Integer.bitCount(nbuckets) == 1;
+		map.forEach((int x, int y, int z, Integer value) -> {
+			int h = hashfn.hash(x, y, z);
+			chains[fasthash ? h & (nbuckets - 1) : Math.abs(h % nbuckets)]++;
+		});
+		int occupied = 0, longest = 0;
+		long probes = 0;
+		for(int c : chains) {
+			if (c > 0) occupied++;
+			longest = Math.max(longest, c);
+			// A successful lookup of the i'th key in a chain compares i keys
+			probes += (long)c * (c + 1) / 2;
+		}
+		
+		// Time lookups of every key, after a warm-up pass
+		long sink = 0, best = Long.MAX_VALUE;
+		for(int pass = 0; pass <= TIMED_PASSES; pass++) {
+			long start = System.nanoTime();
+			for(int i = 0; i < coords.length; i += 3) sink += map.get(coords[i], coords[i + 1], coords[i + 2]);
+			long time = System.nanoTime() - start;
+			if (pass > 0) best = Math.min(best, time);
+		}
+		blackhole = sink;
+		
+		double lookups = coords.length / 3;
+		return new Result(name, keys, nbuckets, occupied, longest, keys > 0 ? (double)probes / keys : 0, lookups / Math.max(best, 1) * 1e9);
+	}
+	
+	/** Reads a coordinate trace file. Each line holds the X, Y, and Z coordinates of a key separated
+	 * by whitespace or commas, and empty lines or lines starting with '#' are ignored.
+	 * 
+	 * @param file The trace file
+	 * @return Packed array of X, Y, and Z coordinates
+	 * @throws IOException If an error occurs reading the file or it is malformed
+	 */
+	public static int[] readTrace(@NonNull File file) throws IOException {
+		int[] coords = new int[3 * 1024];
+		int n = 0;
+		try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+			String line;
+			int lineno = 0;
+			while((line = reader.readLine()) != null) {
+				lineno++;
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) continue;
+				String[] parts = line.split("[\\s,]+");
+				if (parts.length != 3) throw new IOException("Expected 3 coordinates on line " + lineno);
+				if (n + 3 > coords.length) coords = Arrays.copyOf(coords, coords.length * 2);
+				try {
+					for(int i = 0; i < 3; i++) coords[n++] = Integer.parseInt(parts[i]);
+				} catch (NumberFormatException e) {
+					throw new IOException("Invalid coordinate on line " + lineno, e);
+				}
+			}
+		}
+		return Arrays.copyOf(coords, n);
+	}
+	
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: HashInt3DStatistics <trace file> [bucket count]");
+			System.exit(1);
+		}
+		int[] coords = readTrace(new File(args[0]));
+		int nbuckets;
+		if (args.length > 1) nbuckets = Integer.parseInt(args[1]);
+		else {
+			// Match the bucket count a default map would grow to
+			nbuckets = 1;
+			while(nbuckets * Map3D.DEFAULT_LOAD_FACTOR < coords.length / 3) nbuckets <<= 1;
+		}
+		for(var e : getBuiltinHashes().entrySet()) System.out.println(measure(e.getKey(), e.getValue(), coords, nbuckets));
+	}
+	
+}
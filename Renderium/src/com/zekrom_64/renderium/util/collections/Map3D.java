@@ -5,6 +5,7 @@ import java.util.Collection;
 import java.util.ConcurrentModificationException;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Set;
 
@@ -40,10 +41,80 @@ public class Map3D<V> implements Map<Vector3ic, V> {
 		
 	}
 	
+	/** A function which computes a value from a 3D integer coordinate.
+	 * 
+	 * @author Zekrom_64
+	 * 
+	 * @param <R> The result type
+	 */
+	@FunctionalInterface
+	public static interface IntTriFunction<R> {
+		
+		public R apply(int x, int y, int z);
+		
+	}
+	
+	/** A consumer which accepts a 3D integer coordinate and an object value.
+	 * 
+	 * @author Zekrom_64
+	 * 
+	 * @param <T> The value type
+	 */
+	@FunctionalInterface
+	public static interface IntTriObjConsumer<T> {
+		
+		public void accept(int x, int y, int z, T value);
+		
+	}
+	
+	/** A predicate which tests a 3D integer coordinate and an object value.
+	 * 
+	 * @author Zekrom_64
+	 * 
+	 * @param <T> The value type
+	 */
+	@FunctionalInterface
+	public static interface IntTriPredicate<T> {
+		
+		public boolean test(int x, int y, int z, T value);
+		
+	}
+	
 	/** The default hashing function, which exclusive-ORs X, Y left rotated by 4, and Z left rotated by 8. */
 	public static final HashInt3D DEFAULT_HASH = (int x, int y, int z) -> x ^ Integer.rotateLeft(y, 4) ^ Integer.rotateLeft(z, 8);
 	/** A "16-value aligned" hash function, which ORs the lower five bits of X, Y, and Z, where Y is left shifted 4 and Z left shifted 8. */
 	public static final HashInt3D ALIGN16_HASH = (int x, int y, int z) -> (x & 0xF) | ((y & 0xF) << 4) | ((z & 0xF) << 8);
+	/** A Morton (Z-order) hash function, which interleaves the lower 10 bits of X, Y, and Z. Nearby coordinates
+	 * map to nearby buckets, and dense regions of up to 1024 in each dimension never collide. */
+	public static final HashInt3D MORTON_HASH = (int x, int y, int z) -> spreadBits(x) | (spreadBits(y) << 1) | (spreadBits(z) << 2);
+	/** A multiplicative (Fibonacci) hash function, which combines the coordinates with odd multipliers and folds the
+	 * high bits of the product into the low bits used to select a bucket. */
+	public static final HashInt3D FIBONACCI_HASH = (int x, int y, int z) -> {
+		int h = (x * 0x9E3779B9) + (y * 0x85EBCA77) + (z * 0xC2B2AE3D);
+		return h ^ (h >>> 16);
+	};
+	/** A hash function based on the xxHash32 mixing steps, which fully avalanches every bit of the coordinates. It
+	 * is slower than the other hash functions but distributes even adversarial coordinates well. */
+	public static final HashInt3D XXHASH_HASH = (int x, int y, int z) -> {
+		int h = 0x165667B1 + 12;
+		h = Integer.rotateLeft(h + x * 0xC2B2AE3D, 17) * 0x27D4EB2F;
+		h = Integer.rotateLeft(h + y * 0xC2B2AE3D, 17) * 0x27D4EB2F;
+		h = Integer.rotateLeft(h + z * 0xC2B2AE3D, 17) * 0x27D4EB2F;
+		h ^= h >>> 15;
+		h *= 0x85EBCA77;
+		h ^= h >>> 13;
+		h *= 0xC2B2AE3D;
+		return h ^ (h >>> 16);
+	};
+	
+	// Spreads the lower 10 bits of a value so there are two zero bits between each bit
+	private static int spreadBits(int v) {
+		v &= 0x3FF;
+		v = (v | (v << 16)) & 0x030000FF;
+		v = (v | (v << 8)) & 0x0300F00F;
+		v = (v | (v << 4)) & 0x030C30C3;
+		return (v | (v << 2)) & 0x09249249;
+	}
 	
 	private class Node implements Entry<Vector3ic,V> {
 		
@@ -53,6 +124,14 @@ public class Map3D<V> implements Map<Vector3ic, V> {
 		public final Vector3i key;
 		public @NonNull V value;
 		
+		// The spatial index cell containing this node, and the links within that cell
+		public Cell cell;
+		public Node cellPrev;
+		public Node cellNext;
+		
+		// If this node has been accessed since the eviction clock last passed it
+		public boolean referenced = false;
+		
 		public Node(int x, int y, int z, @NonNull V value) {
 			key = new Vector3i(x, y, z);
 			this.value = value;
@@ -60,20 +139,31 @@ public class Map3D<V> implements Map<Vector3ic, V> {
 		
 		public void remove() {
 			modcount++;
+			// Move the eviction clock hand past this node
+			if (this == clockNode) {
+				clockNode = next;
+				if (next == null) clockIndex++;
+			}
 			// Update the next node to point to the previous node
 			if (next != null) next.prev = prev;
 			// Update the previous node to point to the next node
-			// Else, if the first node in a bucket, update the bucket
+			// Else, if the first node in a bucket, update the bucket of whichever table holds it
 			if (prev != null) prev.next = next;
-			else hashtable[getBucketIndex(key.x, key.y, key.z)] = next;
-		}
-		
-		public void append(@NonNull Node n) {
-			if (next != null) next.append(n);
 			else {
-				next = n;
-				n.prev = this;
+				int i = getBucketIndex(key.x, key.y, key.z);
+				if (hashtable[i] == this) hashtable[i] = next;
+				else oldtable[getOldBucketIndex(key.x, key.y, key.z)] = next;
 			}
+			prev = null;
+			next = null;
+			if (cell != null) unindexNode(this);
+		}
+		
+		public void insertInto(Node[] table, int i) {
+			prev = null;
+			next = table[i];
+			if (next != null) next.prev = this;
+			table[i] = this;
 		}
 
 		@Override
@@ -117,14 +207,70 @@ public class Map3D<V> implements Map<Vector3ic, V> {
 		
 	}
 	
+	/** The default load factor, the ratio of entries to buckets at which the table will grow. */
+	public static final float DEFAULT_LOAD_FACTOR = 0.75f;
+	/** A load factor which disables automatic resizing, keeping the initial number of buckets. */
+	public static final float NO_RESIZE = Float.POSITIVE_INFINITY;
+	/** A maximum size which disables eviction, allowing the map to grow without limit. */
+	public static final int UNBOUNDED = Integer.MAX_VALUE;
+	
+	// The maximum number of buckets the table will grow to
+	private static final int MAX_BUCKETS = 1 << 30;
+	// The minimum number of buckets migrated from the old table per modification during a rehash
+	private static final int MIN_REHASH_STEP = 4;
+	
+	// A cell of the spatial index, listing every node within a cubic region
+	private class Cell {
+		
+		public final int cx, cy, cz;
+		public Node head = null;
+		public int count = 0;
+		
+		public Cell(int cx, int cy, int cz) {
+			this.cx = cx;
+			this.cy = cy;
+			this.cz = cz;
+		}
+		
+	}
+	
 	// The hashing function
 	private final HashInt3D hashfn;
+	// The ratio of entries to buckets at which the table grows
+	private final float loadFactor;
+	// The number of buckets migrated per modification while rehashing
+	private final int rehashStep;
 	// The hashtable array
-	private final Node[] hashtable;
+	private Node[] hashtable;
 	// Modulus value for hash computation
-	private final int hashmod;
+	private int hashmod;
 	// If a "fast" hash modulus can be done by bitmasking
-	private final boolean fasthash;
+	private boolean fasthash;
+	// The entry count at which the table will next grow
+	private int threshold;
+	
+	// The hashtable being migrated from during an incremental rehash, or null
+	private Node[] oldtable = null;
+	// Modulus value for the old hashtable
+	private int oldhashmod;
+	// If the old hashtable can use a "fast" hash modulus
+	private boolean oldfasthash;
+	// The index of the next bucket to migrate from the old hashtable
+	private int rehashIndex;
+	
+	// The spatial index mapping cell coordinates to cells, or null if disabled
+	private Map3D<Cell> spatialIndex = null;
+	// The base 2 logarithm of the spatial index cell size
+	private int cellShift;
+	
+	// The maximum number of entries before entries are evicted
+	private int maxSize = UNBOUNDED;
+	// Listener notified of evicted entries, or null
+	private IntTriObjConsumer<? super V> evictionListener = null;
+	// The bucket index of the eviction clock hand
+	private int clockIndex = 0;
+	// The next node the eviction clock hand will visit, or null to start at the head of the bucket
+	private Node clockNode = null;
 	
 	// Modification count
 	private volatile int modcount = 0;
@@ -137,13 +283,14 @@ public class Map3D<V> implements Map<Vector3ic, V> {
 		else return Math.abs(hashi % hashmod);
 	}
 	
-	/** Creates a new 3D map with the given number of buckets and hashing function.
-	 * 
-	 * @param nbuckets Number of hash buckets
-	 * @param hashfn Hashing function
-	 */
-	public Map3D(int nbuckets, HashInt3D hashfn) {
-		this.hashfn = hashfn;
+	private int getOldBucketIndex(int x, int y, int z) {
+		int hashi = hashfn.hash(x, y, z);
+		if (oldfasthash) return hashi & oldhashmod;
+		else return Math.abs(hashi % oldhashmod);
+	}
+	
+	// Allocates a new hashtable with the given number of buckets, replacing the current one
+	private void allocateTable(int nbuckets) {
 		hashtable = TypeUtils.createGenericArray(nbuckets, Node.class);
 		if (Integer.bitCount(nbuckets) == 1) {
 			hashmod = nbuckets - 1;
@@ -152,6 +299,34 @@ public class Map3D<V> implements Map<Vector3ic, V> {
 			hashmod = nbuckets;
 			fasthash = false;
 		}
+		threshold = (int)Math.min(nbuckets * (double)loadFactor, Integer.MAX_VALUE);
+		clockIndex = 0;
+		clockNode = null;
+	}
+	
+	/** Creates a new 3D map with the given number of buckets, hashing function, and load factor.
+	 * 
+	 * @param nbuckets Initial number of hash buckets
+	 * @param hashfn Hashing function
+	 * @param loadFactor Ratio of entries to buckets at which the table grows, or {@link #NO_RESIZE}
+	 */
+	public Map3D(int nbuckets, HashInt3D hashfn, float loadFactor) {
+		if (nbuckets <= 0) throw new IllegalArgumentException("Bucket count must be positive");
+		if (!(loadFactor > 0)) throw new IllegalArgumentException("Load factor must be positive");
+		this.hashfn = hashfn;
+		this.loadFactor = loadFactor;
+		// Migrate enough buckets per modification that a rehash always finishes before the next one is due
+		rehashStep = Math.max(MIN_REHASH_STEP, (int)Math.ceil(1.0 / loadFactor) + 1);
+		allocateTable(nbuckets);
+	}
+	
+	/** Creates a new 3D map with the given number of buckets and hashing function.
+	 * 
+	 * @param nbuckets Number of hash buckets
+	 * @param hashfn Hashing function
+	 */
+	public Map3D(int nbuckets, HashInt3D hashfn) {
+		this(nbuckets, hashfn, DEFAULT_LOAD_FACTOR);
 	}
 	
 	/** Creates a new 3D map with the given number of buckets.
@@ -169,13 +344,123 @@ public class Map3D<V> implements Map<Vector3ic, V> {
 		this(100);
 	}
 	
-	/** Creates a new map with the 'align-16' hash and 4096 buckets.
+	/** Creates a new map with the 'align-16' hash and 4096 buckets. The align-16 hash only produces
+	 * 4096 distinct values, so the map is created with {@link #NO_RESIZE}.
 	 * 
 	 * @param <V> Map value type
 	 * @return New align-16 map
 	 */
 	public static <@NonNull V> Map3D<V> newAlign16() {
-		return new Map3D<V>(4096, ALIGN16_HASH);
+		return new Map3D<V>(4096, ALIGN16_HASH, NO_RESIZE);
+	}
+	
+	/** Creates a new 3D map with enough buckets to hold the given number of entries without growing.
+	 * 
+	 * @param <V> Map value type
+	 * @param expectedSize Expected number of entries
+	 * @param hashfn Hashing function
+	 * @return New pre-sized map
+	 */
+	public static <@NonNull V> Map3D<V> withExpectedSize(int expectedSize, HashInt3D hashfn) {
+		return new Map3D<V>(bucketsFor(expectedSize, DEFAULT_LOAD_FACTOR), hashfn);
+	}
+	
+	// Computes the number of buckets needed to hold the given number of entries under a load factor
+	private static int bucketsFor(int expectedSize, float loadFactor) {
+		double nbuckets = Math.ceil(Math.max(expectedSize, 1) / (double)loadFactor);
+		if (nbuckets >= MAX_BUCKETS) return MAX_BUCKETS;
+		// Round up to a power of two so the fast hash modulus can be used
+		return Integer.highestOneBit(Math.max((int)nbuckets - 1, 1)) << 1;
+	}
+	
+	/** Ensures the map has enough buckets to hold the given number of entries without growing. Unlike
+	 * automatic growth, any required rehash is done immediately, so this is best called before the
+	 * map is populated.
+	 * 
+	 * @param expectedSize Expected number of entries
+	 */
+	public void ensureCapacity(int expectedSize) {
+		if (loadFactor == NO_RESIZE) return;
+		int nbuckets = bucketsFor(expectedSize, loadFactor);
+		if (nbuckets > hashtable.length) {
+			beginRehash(nbuckets);
+			finishRehash();
+		}
+	}
+	
+	/** Gets the load factor of this map.
+	 * 
+	 * @return Load factor
+	 */
+	public float getLoadFactor() {
+		return loadFactor;
+	}
+	
+	/** Gets the number of buckets currently allocated by this map.
+	 * 
+	 * @return Bucket count
+	 */
+	public int getBucketCount() {
+		return hashtable.length;
+	}
+	
+	//===========//
+	// Rehashing //
+	//===========//
+	
+	// Starts an incremental rehash into a new table of the given size
+	private void beginRehash(int nbuckets) {
+		// Complete any rehash still in progress so at most two tables exist
+		if (oldtable != null) finishRehash();
+		oldtable = hashtable;
+		oldhashmod = hashmod;
+		oldfasthash = fasthash;
+		rehashIndex = 0;
+		allocateTable(nbuckets);
+	}
+	
+	// Migrates up to the given number of buckets from the old table to the current table
+	private void rehashBuckets(int count) {
+		Node[] old = oldtable;
+		int end = Math.min(rehashIndex + count, old.length);
+		for(int i = rehashIndex; i < end; i++) {
+			Node n = old[i];
+			old[i] = null;
+			while(n != null) {
+				Node next = n.next;
+				n.insertInto(hashtable, getBucketIndex(n.key.x, n.key.y, n.key.z));
+				n = next;
+			}
+		}
+		rehashIndex = end;
+		if (end >= old.length) oldtable = null;
+	}
+	
+	// Migrates all remaining buckets from the old table
+	private void finishRehash() {
+		if (oldtable != null) rehashBuckets(oldtable.length - rehashIndex);
+	}
+	
+	// Performs an amortized step of rehashing after a modification, growing the table if needed
+	private void stepRehash() {
+		if (oldtable != null) rehashBuckets(rehashStep);
+		else if (entrycount > threshold && hashtable.length < MAX_BUCKETS)
+			beginRehash((int)Math.min((long)hashtable.length << 1, MAX_BUCKETS));
+	}
+	
+	//=================//
+	// Core Operations //
+	//=================//
+	
+	// Finds the node with the given coordinates, or null
+	private @Nullable Node findNode(int x, int y, int z) {
+		Node n = hashtable[getBucketIndex(x, y, z)];
+		while(n != null && (n.key.x != x || n.key.y != y || n.key.z != z)) n = n.next;
+		if (n == null && oldtable != null) {
+			n = oldtable[getOldBucketIndex(x, y, z)];
+			while(n != null && (n.key.x != x || n.key.y != y || n.key.z != z)) n = n.next;
+		}
+		return n;
 	}
 	
 	/** Gets a value from this 3D map, or <b>null</b> if no such element exists.
@@ -186,9 +471,9 @@ public class Map3D<V> implements Map<Vector3ic, V> {
 	 * @return Value at these coordinates, or <b>null</b>
 	 */
 	public @Nullable V get(int x, int y, int z) {
-		Node n = hashtable[getBucketIndex(x, y, z)];
-		while(n != null && (n.key.x != x || n.key.y != y || n.key.z != z)) n = n.next;
+		Node n = findNode(x, y, z);
 		if (n == null) return null;
+		if (maxSize != UNBOUNDED) n.referenced = true;
 		return n.value;
 	}
 	
@@ -211,27 +496,48 @@ public class Map3D<V> implements Map<Vector3ic, V> {
 	 */
 	public @Nullable V put(int x, int y, int z, @NonNull V value) {
 		modcount++;
-		int i = getBucketIndex(x, y, z);
-		Node n = hashtable[i];
+		Node n = findNode(x, y, z);
 		if (n == null) {
-			n = new Node(x, y, z, value);
-			entrycount++;
-			hashtable[i] = n;
+			insertNode(x, y, z, value);
 			return null;
 		} else {
-			Node n2 = n;
-			while(n2 != null && (n2.key.x != x || n2.key.y != y || n2.key.z != z)) n2 = n2.next;
-			if (n2 == null) {
-				n2 = new Node(x, y, z, value);
-				entrycount++;
-				n.append(n2);
-				return null;
-			} else {
-				V old = n2.value;
-				n2.value = value;
-				return old;
-			}
+			V old = n.value;
+			n.value = value;
+			if (maxSize != UNBOUNDED) n.referenced = true;
+			return old;
+		}
+	}
+	
+	// Inserts a new node for coordinates known not to be in the map
+	private void insertNode(int x, int y, int z, @NonNull V value) {
+		Node n = new Node(x, y, z, value);
+		n.insertInto(hashtable, getBucketIndex(x, y, z));
+		if (spatialIndex != null) indexNode(n);
+		entrycount++;
+		if (entrycount > maxSize) evict(n);
+		stepRehash();
+	}
+	
+	/** Gets the value at the given coordinates, computing and inserting it if there is no such value.
+	 * If the function returns <b>null</b> nothing is inserted.
+	 * 
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @param z Z coordinate
+	 * @param func Function computing the value to insert
+	 * @return The existing or computed value at these coordinates, or <b>null</b>
+	 */
+	public @Nullable V computeIfAbsent(int x, int y, int z, IntTriFunction<? extends V> func) {
+		Node n = findNode(x, y, z);
+		if (n != null) {
+			if (maxSize != UNBOUNDED) n.referenced = true;
+			return n.value;
 		}
+		V value = func.apply(x, y, z);
+		if (value == null) return null;
+		modcount++;
+		insertNode(x, y, z, value);
+		return value;
 	}
 	
 	/** Removes a value from the 3D map.
@@ -243,12 +549,12 @@ public class Map3D<V> implements Map<Vector3ic, V> {
 	 */
 	public @Nullable V remove(int x, int y, int z) {
 		modcount++;
-		Node n = hashtable[getBucketIndex(x, y, z)];
-		while(n != null && (n.key.x != x || n.key.y != y || n.key.z != z)) n = n.next;
+		Node n = findNode(x, y, z);
 		if (n != null) {
 			V val = n.value;
 			n.remove();
 			entrycount--;
+			stepRehash();
 			return val;
 		} else return null;
 	}
@@ -262,10 +568,393 @@ public class Map3D<V> implements Map<Vector3ic, V> {
 		return remove(v.x(), v.y(), v.z());
 	}
 	
+	/** Gets the values of the neighbors of a cell. The value of each neighbor is stored in the
+	 * output array in the order defined by the neighbor mask, or <b>null</b> if the neighbor is not
+	 * present. The cell itself is not included. For maps using the {@link #ALIGN16_HASH} the cell is
+	 * hashed once and the bucket of each neighbor is derived from it with inline arithmetic, otherwise
+	 * each neighbor is looked up the same way as {@link #get(int, int, int)}. Lookups are dominated by
+	 * walking the bucket chains, so this costs about the same as separate calls to <tt>get</tt>.
+	 * 
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @param z Z coordinate
+	 * @param out Array to store neighbor values in, at least {@link NeighborMask#size()} long
+	 * @param mask The neighborhood to get
+	 * @return The number of neighbors present
+	 */
+	public int getNeighbors(int x, int y, int z, @Nullable V[] out, NeighborMask mask) {
+		int count = mask.size();
+		if (out.length < count) throw new IllegalArgumentException("Output array is too small for the neighbor mask");
+		int found = 0;
+		// The align-16 hash can be derived from the cell's hash while no rehash is in progress
+		if (hashfn == ALIGN16_HASH && fasthash && oldtable == null) {
+			Node[] table = hashtable;
+			int hash = ALIGN16_HASH.hash(x, y, z);
+			for(int i = 0; i < count; i++) {
+				int dx = mask.getX(i), dy = mask.getY(i), dz = mask.getZ(i);
+				// Offsetting each nibble of the hash wraps within the nibble, like the coordinates do
+				int nhash = ((hash + dx) & 0xF) | ((hash + (dy << 4)) & 0xF0) | ((hash + (dz << 8)) & 0xF00);
+				int nx = x + dx, ny = y + dy, nz = z + dz;
+				Node n = table[nhash & hashmod];
+				while(n != null && (n.key.x != nx || n.key.y != ny || n.key.z != nz)) n = n.next;
+				if (n != null) {
+					out[i] = n.value;
+					found++;
+				} else out[i] = null;
+			}
+		} else {
+			for(int i = 0; i < count; i++) {
+				Node n = findNode(x + mask.getX(i), y + mask.getY(i), z + mask.getZ(i));
+				if (n != null) {
+					out[i] = n.value;
+					found++;
+				} else out[i] = null;
+			}
+		}
+		return found;
+	}
+	
+	//==========//
+	// Eviction //
+	//==========//
+	
+	/** <p>Limits the number of entries in this map, making it usable as a bounded cache. Once the
+	 * limit is exceeded by an insertion an entry is evicted using the CLOCK algorithm, which
+	 * approximates least-recently-used eviction: each access marks an entry as referenced, and a
+	 * clock hand sweeping the buckets clears the mark of referenced entries and evicts the first
+	 * unreferenced entry it finds. The entry being inserted is never evicted.</p>
+	 * 
+	 * <p>The map is sized so it will not need to grow before reaching the limit. If the map already
+	 * holds more entries than the new limit they are evicted immediately. The eviction listener is
+	 * called after an entry is removed, and may be used to release resources held by the value, but
+	 * must not modify this map.</p>
+	 * 
+	 * @param maxSize Maximum number of entries, or {@link #UNBOUNDED}
+	 * @param evictionListener Listener notified of evicted entries, or <b>null</b>
+	 */
+	public void setMaxSize(int maxSize, @Nullable IntTriObjConsumer<? super V> evictionListener) {
+		if (maxSize <= 0) throw new IllegalArgumentException("Maximum size must be positive");
+		this.maxSize = maxSize;
+		this.evictionListener = evictionListener;
+		if (maxSize != UNBOUNDED) {
+			ensureCapacity(maxSize + 1);
+			while(entrycount > maxSize) evict(null);
+		}
+	}
+	
+	/** Gets the maximum number of entries in this map.
+	 * 
+	 * @return Maximum size, or {@link #UNBOUNDED}
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+	
+	// Evicts a single entry, never choosing the given node
+	private void evict(@Nullable Node keep) {
+		// The clock hand only sweeps the current table
+		finishRehash();
+		Node[] table = hashtable;
+		for(;;) {
+			Node n = clockNode;
+			if (n == null) {
+				if (clockIndex >= table.length) clockIndex = 0;
+				n = table[clockIndex];
+				if (n == null) {
+					clockIndex++;
+					continue;
+				}
+			}
+			// Advance the hand past the node before possibly removing it
+			if (n.next != null) clockNode = n.next;
+			else {
+				clockNode = null;
+				clockIndex++;
+			}
+			if (n == keep) continue;
+			if (n.referenced) {
+				n.referenced = false;
+				continue;
+			}
+			int x = n.key.x, y = n.key.y, z = n.key.z;
+			V value = n.value;
+			n.remove();
+			entrycount--;
+			if (evictionListener != null) evictionListener.accept(x, y, z, value);
+			return;
+		}
+	}
+	
+	//=====================//
+	// Primitive Iteration //
+	//=====================//
+	
+	/** Passes every entry of this map to a consumer. Unlike iterating the collection views, this
+	 * walks the hashtable directly and does not allocate any objects. The consumer must not modify
+	 * this map.
+	 * 
+	 * @param consumer Entry consumer
+	 * @throws ConcurrentModificationException If the map is modified by the consumer
+	 */
+	public void forEach(IntTriObjConsumer<? super V> consumer) {
+		int modid = modcount;
+		if (oldtable != null) forEachInTable(oldtable, consumer, modid);
+		forEachInTable(hashtable, consumer, modid);
+	}
+	
+	private void forEachInTable(Node[] table, IntTriObjConsumer<? super V> consumer, int modid) {
+		for(Node n : table) {
+			for(; n != null; n = n.next) {
+				consumer.accept(n.key.x, n.key.y, n.key.z, n.value);
+				if (modid != modcount) throw new ConcurrentModificationException();
+			}
+		}
+	}
+	
+	/** Removes every entry of this map matching a predicate. Like {@link #forEach(IntTriObjConsumer)}
+	 * this does not allocate any objects. The predicate must not modify this map.
+	 * 
+	 * @param predicate Predicate selecting entries to remove
+	 * @return If any entries were removed
+	 * @throws ConcurrentModificationException If the map is modified by the predicate
+	 */
+	public boolean removeIf(IntTriPredicate<? super V> predicate) {
+		int oldcount = entrycount;
+		if (oldtable != null) removeIfInTable(oldtable, predicate);
+		removeIfInTable(hashtable, predicate);
+		return entrycount != oldcount;
+	}
+	
+	private void removeIfInTable(Node[] table, IntTriPredicate<? super V> predicate) {
+		for(Node n : table) {
+			while(n != null) {
+				Node next = n.next;
+				int modid = modcount;
+				boolean remove = predicate.test(n.key.x, n.key.y, n.key.z, n.value);
+				if (modid != modcount) throw new ConcurrentModificationException();
+				if (remove) {
+					n.remove();
+					entrycount--;
+				}
+				n = next;
+			}
+		}
+	}
+	
+	//===============//
+	// Spatial Index //
+	//===============//
+	
+	/** Enables a spatial index over the entries of this map, which speeds up region queries such as
+	 * {@link #forEachInBox(int, int, int, int, int, int, IntTriObjConsumer)} at the cost of extra
+	 * work on every insertion and removal. Entries are grouped into cubic cells, and queries only
+	 * visit the cells overlapping the queried region. If an index is already enabled it is rebuilt
+	 * with the new cell size.
+	 * 
+	 * @param cellSizeLog2 The base 2 logarithm of the cell size (eg. 4 for 16x16x16 cells)
+	 */
+	public void enableSpatialIndex(int cellSizeLog2) {
+		if (cellSizeLog2 < 0 || cellSizeLog2 > 30) throw new IllegalArgumentException("Cell size must be between 2^0 and 2^30");
+		disableSpatialIndex();
+		cellShift = cellSizeLog2;
+		spatialIndex = new Map3D<>(Math.max(entrycount >> (2 * cellSizeLog2), 16), DEFAULT_HASH);
+		if (oldtable != null) for(Node n : oldtable) for(; n != null; n = n.next) indexNode(n);
+		for(Node n : hashtable) for(; n != null; n = n.next) indexNode(n);
+	}
+	
+	/** Disables the spatial index of this map, if enabled.
+	 * 
+	 */
+	public void disableSpatialIndex() {
+		if (spatialIndex == null) return;
+		for(Cell c : spatialIndex.values()) {
+			Node n = c.head;
+			while(n != null) {
+				Node next = n.cellNext;
+				n.cell = null;
+				n.cellPrev = null;
+				n.cellNext = null;
+				n = next;
+			}
+		}
+		spatialIndex = null;
+	}
+	
+	/** Gets if this map maintains a spatial index.
+	 * 
+	 * @return If a spatial index is enabled
+	 */
+	public boolean hasSpatialIndex() {
+		return spatialIndex != null;
+	}
+	
+	// Adds a node to the spatial index cell containing it
+	private void indexNode(Node n) {
+		int cx = n.key.x >> cellShift, cy = n.key.y >> cellShift, cz = n.key.z >> cellShift;
+		Cell c = spatialIndex.get(cx, cy, cz);
+		if (c == null) {
+			c = new Cell(cx, cy, cz);
+			spatialIndex.put(cx, cy, cz, c);
+		}
+		n.cell = c;
+		n.cellPrev = null;
+		n.cellNext = c.head;
+		if (c.head != null) c.head.cellPrev = n;
+		c.head = n;
+		c.count++;
+	}
+	
+	// Removes a node from its spatial index cell, dropping the cell if it becomes empty
+	private void unindexNode(Node n) {
+		Cell c = n.cell;
+		if (n.cellPrev != null) n.cellPrev.cellNext = n.cellNext;
+		else c.head = n.cellNext;
+		if (n.cellNext != null) n.cellNext.cellPrev = n.cellPrev;
+		n.cell = null;
+		n.cellPrev = null;
+		n.cellNext = null;
+		if (--c.count == 0) spatialIndex.remove(c.cx, c.cy, c.cz);
+	}
+	
+	//===============//
+	// Range Queries //
+	//===============//
+	
+	/** Passes every entry within an axis-aligned box to a consumer. The bounds are inclusive. If a
+	 * spatial index is enabled only the index cells overlapping the box are visited, otherwise either
+	 * each coordinate in the box is probed or every entry is tested, whichever is cheaper. The
+	 * consumer must not modify this map.
+	 * 
+	 * @param minX Minimum X coordinate
+	 * @param minY Minimum Y coordinate
+	 * @param minZ Minimum Z coordinate
+	 * @param maxX Maximum X coordinate
+	 * @param maxY Maximum Y coordinate
+	 * @param maxZ Maximum Z coordinate
+	 * @param consumer Entry consumer
+	 */
+	public void forEachInBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, IntTriObjConsumer<? super V> consumer) {
+		query(minX, minY, minZ, maxX, maxY, maxZ, 0, 0, 0, -1, consumer);
+	}
+	
+	/** Passes every entry within a sphere to a consumer. Entries are included if their squared distance
+	 * from the center is no greater than the squared radius. The consumer must not modify this map.
+	 * 
+	 * @param x Center X coordinate
+	 * @param y Center Y coordinate
+	 * @param z Center Z coordinate
+	 * @param radius Sphere radius
+	 * @param consumer Entry consumer
+	 */
+	public void forEachInSphere(int x, int y, int z, int radius, IntTriObjConsumer<? super V> consumer) {
+		if (radius < 0) return;
+		query(
+			(int)Math.max((long)x - radius, Integer.MIN_VALUE),
+			(int)Math.max((long)y - radius, Integer.MIN_VALUE),
+			(int)Math.max((long)z - radius, Integer.MIN_VALUE),
+			(int)Math.min((long)x + radius, Integer.MAX_VALUE),
+			(int)Math.min((long)y + radius, Integer.MAX_VALUE),
+			(int)Math.min((long)z + radius, Integer.MAX_VALUE),
+			x, y, z, (long)radius * radius,
+			consumer
+		);
+	}
+	
+	// Squared distance from a value to a range along one axis
+	private static long distanceSquared(long v, long min, long max) {
+		long d = v < min ? min - v : (v > max ? v - max : 0);
+		return d * d;
+	}
+	
+	// Visits entries within a box, and also within a sphere if the squared radius is non-negative
+	private void query(int minX, int minY, int minZ, int maxX, int maxY, int maxZ,
+			int sx, int sy, int sz, long r2, IntTriObjConsumer<? super V> consumer) {
+		if (minX > maxX || minY > maxY || minZ > maxZ) return;
+		if (spatialIndex != null) {
+			int s = cellShift;
+			int cx0 = minX >> s, cy0 = minY >> s, cz0 = minZ >> s;
+			int cx1 = maxX >> s, cy1 = maxY >> s, cz1 = maxZ >> s;
+			double ncells = (cx1 - (double)cx0 + 1) * (cy1 - (double)cy0 + 1) * (cz1 - (double)cz0 + 1);
+			if (ncells <= spatialIndex.size()) {
+				// Probe each cell overlapping the region
+				for(long cz = cz0; cz <= cz1; cz++) {
+					for(long cy = cy0; cy <= cy1; cy++) {
+						for(long cx = cx0; cx <= cx1; cx++) {
+							Cell c = spatialIndex.get((int)cx, (int)cy, (int)cz);
+							if (c != null) queryCell(c, minX, minY, minZ, maxX, maxY, maxZ, sx, sy, sz, r2, consumer);
+						}
+					}
+				}
+			} else {
+				// Fewer cells exist than overlap the region, so test every cell
+				for(Cell c : spatialIndex.values()) {
+					if (c.cx < cx0 || c.cx > cx1 || c.cy < cy0 || c.cy > cy1 || c.cz < cz0 || c.cz > cz1) continue;
+					queryCell(c, minX, minY, minZ, maxX, maxY, maxZ, sx, sy, sz, r2, consumer);
+				}
+			}
+		} else {
+			double volume = (maxX - (double)minX + 1) * (maxY - (double)minY + 1) * (maxZ - (double)minZ + 1);
+			if (volume <= entrycount) {
+				// Probe each coordinate in the region
+				for(long z = minZ; z <= maxZ; z++) {
+					for(long y = minY; y <= maxY; y++) {
+						for(long x = minX; x <= maxX; x++) {
+							Node n = findNode((int)x, (int)y, (int)z);
+							if (n != null && inQuery(n, sx, sy, sz, r2)) consumer.accept((int)x, (int)y, (int)z, n.value);
+						}
+					}
+				}
+			} else {
+				// Test every entry in the map
+				if (oldtable != null) queryTable(oldtable, minX, minY, minZ, maxX, maxY, maxZ, sx, sy, sz, r2, consumer);
+				queryTable(hashtable, minX, minY, minZ, maxX, maxY, maxZ, sx, sy, sz, r2, consumer);
+			}
+		}
+	}
+	
+	// Tests if a node is within the query sphere, if any
+	private boolean inQuery(Node n, int sx, int sy, int sz, long r2) {
+		if (r2 < 0) return true;
+		long dx = n.key.x - (long)sx, dy = n.key.y - (long)sy, dz = n.key.z - (long)sz;
+		return dx * dx + dy * dy + dz * dz <= r2;
+	}
+	
+	// Tests if a node is within the query box and sphere
+	private boolean inQuery(Node n, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, int sx, int sy, int sz, long r2) {
+		Vector3i k = n.key;
+		return k.x >= minX && k.x <= maxX && k.y >= minY && k.y <= maxY && k.z >= minZ && k.z <= maxZ && inQuery(n, sx, sy, sz, r2);
+	}
+	
+	// Visits the entries of a spatial index cell within a query
+	private void queryCell(Cell c, int minX, int minY, int minZ, int maxX, int maxY, int maxZ,
+			int sx, int sy, int sz, long r2, IntTriObjConsumer<? super V> consumer) {
+		if (r2 >= 0) {
+			// Skip cells that don't touch the sphere at all
+			long x0 = (long)c.cx << cellShift, y0 = (long)c.cy << cellShift, z0 = (long)c.cz << cellShift;
+			long size = (1L << cellShift) - 1;
+			if (distanceSquared(sx, x0, x0 + size) + distanceSquared(sy, y0, y0 + size) + distanceSquared(sz, z0, z0 + size) > r2) return;
+		}
+		for(Node n = c.head; n != null; n = n.cellNext)
+			if (inQuery(n, minX, minY, minZ, maxX, maxY, maxZ, sx, sy, sz, r2)) consumer.accept(n.key.x, n.key.y, n.key.z, n.value);
+	}
+	
+	// Visits the entries of a hashtable within a query
+	private void queryTable(Node[] table, int minX, int minY, int minZ, int maxX, int maxY, int maxZ,
+			int sx, int sy, int sz, long r2, IntTriObjConsumer<? super V> consumer) {
+		for(Node n : table)
+			for(; n != null; n = n.next)
+				if (inQuery(n, minX, minY, minZ, maxX, maxY, maxZ, sx, sy, sz, r2)) consumer.accept(n.key.x, n.key.y, n.key.z, n.value);
+	}
+	
 	@Override
 	public void clear() {
 		modcount++;
 		Arrays.fill(hashtable, null);
+		oldtable = null;
+		entrycount = 0;
+		clockIndex = 0;
+		clockNode = null;
+		if (spatialIndex != null) spatialIndex.clear();
 	}
 
 	@Override
@@ -315,44 +1004,55 @@ public class Map3D<V> implements Map<Vector3ic, V> {
 	
 	private class NodeIterator implements Iterator<Entry<Vector3ic, V>> {
 
+		// The table currently being iterated, starting with the old table if a rehash is in progress
+		private Node[] table = oldtable != null ? oldtable : hashtable;
 		private int hashtableIndex = 0;
 		private Node currentNode = null;
 		private int modid = modcount;
 		private Node lastNode = null;
 		
+		public NodeIterator() {
+			seekToNode();
+		}
+		
 		private void checkComodified() {
 			if (modid != modcount) throw new ConcurrentModificationException();
 		}
 		
 		private void seekToNode() {
-			if (currentNode == null) {
-				do {
-					currentNode = hashtable[hashtableIndex++];
-				} while(currentNode != null && hashtableIndex < hashtable.length);
+			while(currentNode == null) {
+				if (hashtableIndex < table.length) currentNode = table[hashtableIndex++];
+				else if (table != hashtable) {
+					// Move on from the old table to the current table
+					table = hashtable;
+					hashtableIndex = 0;
+				} else break;
 			}
 		}
 		
 		@Override
 		public boolean hasNext() {
 			checkComodified();
-			seekToNode();
-			return hashtableIndex < hashtable.length || currentNode != null;
+			return currentNode != null;
 		}
 
 		@Override
 		public Map3D<V>.Node next() {
 			checkComodified();
-			seekToNode();
-			Node n = currentNode;
+			if (currentNode == null) throw new NoSuchElementException();
+			lastNode = currentNode;
 			currentNode = currentNode.next;
-			return n;
+			seekToNode();
+			return lastNode;
 		}
 
 		@Override
 		public void remove() {
 			if (lastNode == null) throw new IllegalStateException();
+			checkComodified();
 			lastNode.remove();
-			modcount++;
+			lastNode = null;
+			entrycount--;
 			modid = modcount;
 		}
 		
@@ -0,0 +1,420 @@
+package com.zekrom_64.renderium.util.collections;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.zekrom_64.renderium.util.collections.Map3D.HashInt3D;
+
+/** <p>Micro-benchmarks comparing the 3D map implementations. Each benchmark runs a warm-up pass
+ * followed by several timed passes and reports the best pass, which is a rough but repeatable
+ * measure without depending on an external benchmarking harness.</p>
+ * 
+ * <p>This class may also be run directly, taking the name of the benchmark to run and optionally
+ * the number of keys to use. Running without a benchmark name runs every benchmark.</p>
+ * 
+ * @author Zekrom_64
+ * 
+ */
+public class Map3DBenchmark {
+	
+	/** The timing of a single benchmarked operation.
+	 * 
+	 * @author Zekrom_64
+	 * 
+	 * @param name The name of the operation
+	 * @param operations The number of operations in each pass
+	 * @param nanoseconds The time of the fastest pass in nanoseconds
+	 */
+	public static record Result(@NonNull String name, long operations, long nanoseconds) {
+		
+		/** Gets the average time of a single operation.
+		 * 
+		 * @return Nanoseconds per operation
+		 */
+		public double nanosPerOperation() {
+			return operations > 0 ? (double)nanoseconds / operations : 0;
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("%-32s ops=%d best=%.3fms ns/op=%.2f", name, operations, nanoseconds / 1e6, nanosPerOperation());
+		}
+		
+	}
+	
+	/** The default number of keys used by benchmarks. */
+	public static final int DEFAULT_KEYS = 1 << 18;
+	
+	// The number of timed passes
+	private static final int TIMED_PASSES = 5;
+	// Sink for results so timed work is not optimized away
+	private static volatile long blackhole;
+	
+	// Runs a pass of a benchmark, returning a value to sink
+	@FunctionalInterface
+	private static interface Pass {
+		
+		public long run();
+		
+	}
+	
+	// Times a benchmark pass after a warm-up pass, returning the fastest time
+	private static @NonNull Result time(@NonNull String name, long operations, Pass pass) {
+		long sink = 0, best = Long.MAX_VALUE;
+		for(int i = 0; i <= TIMED_PASSES; i++) {
+			long start = System.nanoTime();
+			sink += pass.run();
+			long time = System.nanoTime() - start;
+			if (i > 0) best = Math.min(best, time);
+		}
+		blackhole = sink;
+		return new Result(name, operations, best);
+	}
+	
+	/** Generates distinct coordinates clustered in a cube, similar to the loaded cells of a world.
+	 * 
+	 * @param count The number of coordinates
+	 * @param seed Random seed
+	 * @return Packed array of X, Y, and Z coordinates
+	 */
+	public static int[] generateCoords(int count, long seed) {
+		Random rand = new Random(seed);
+		int side = Math.max(1, (int)Math.ceil(Math.cbrt(count * 2.0)));
+		int[] coords = new int[count * 3];
+		OpenMap3D<Boolean> seen = new OpenMap3D<>(count);
+		for(int i = 0; i < count;) {
+			int x = rand.nextInt(side) - side / 2, y = rand.nextInt(side) - side / 2, z = rand.nextInt(side) - side / 2;
+			if (seen.put(x, y, z, Boolean.TRUE) != null) continue;
+			coords[i * 3] = x;
+			coords[i * 3 + 1] = y;
+			coords[i * 3 + 2] = z;
+			i++;
+		}
+		return coords;
+	}
+	
+	//===================//
+	// Open vs. Chaining //
+	//===================//
+	
+	/** Compares the put, get, and remove performance of {@link OpenMap3D} against {@link Map3D}
+	 * using the same hash function.
+	 * 
+	 * @param coords Packed array of X, Y, and Z coordinates
+	 * @param hashfn Hash function used by both maps
+	 * @return Benchmark results
+	 */
+	public static Result[] compareOpenMap(int[] coords, @NonNull HashInt3D hashfn) {
+		int n = coords.length / 3;
+		Integer value = 1;
+		return new Result[] {
+			time("Map3D put", n, () -> {
+				Map3D<Integer> map = Map3D.withExpectedSize(n, hashfn);
+				for(int i = 0; i < coords.length; i += 3) map.put(coords[i], coords[i + 1], coords[i + 2], value);
+				return map.size();
+			}),
+			time("OpenMap3D put", n, () -> {
+				OpenMap3D<Integer> map = new OpenMap3D<>(n, hashfn);
+				for(int i = 0; i < coords.length; i += 3) map.put(coords[i], coords[i + 1], coords[i + 2], value);
+				return map.size();
+			}),
+			timeLookups("Map3D get", coords, fill(Map3D.withExpectedSize(n, hashfn), coords)::get),
+			timeLookups("OpenMap3D get", coords, fill(new OpenMap3D<>(n, hashfn), coords)::get),
+			time("Map3D put/remove", 2L * n, () -> {
+				Map3D<Integer> map = fill(Map3D.withExpectedSize(n, hashfn), coords);
+				for(int i = 0; i < coords.length; i += 3) map.remove(coords[i], coords[i + 1], coords[i + 2]);
+				return map.size();
+			}),
+			time("OpenMap3D put/remove", 2L * n, () -> {
+				OpenMap3D<Integer> map = fill(new OpenMap3D<>(n, hashfn), coords);
+				for(int i = 0; i < coords.length; i += 3) map.remove(coords[i], coords[i + 1], coords[i + 2]);
+				return map.size();
+			})
+		};
+	}
+	
+	// Fills a map with the given coordinates
+	private static Map3D<Integer> fill(Map3D<Integer> map, int[] coords) {
+		for(int i = 0; i < coords.length; i += 3) map.put(coords[i], coords[i + 1], coords[i + 2], i);
+		return map;
+	}
+	
+	// Fills an open map with the given coordinates
+	private static OpenMap3D<Integer> fill(OpenMap3D<Integer> map, int[] coords) {
+		for(int i = 0; i < coords.length; i += 3) map.put(coords[i], coords[i + 1], coords[i + 2], i);
+		return map;
+	}
+	
+	// Looks up a value by coordinates
+	@FunctionalInterface
+	private static interface Lookup {
+		
+		public Integer get(int x, int y, int z);
+		
+	}
+	
+	// Times lookups of every coordinate
+	private static @NonNull Result timeLookups(@NonNull String name, int[] coords, Lookup lookup) {
+		return time(name, coords.length / 3, () -> {
+			long sink = 0;
+			for(int i = 0; i < coords.length; i += 3) sink += lookup.get(coords[i], coords[i + 1], coords[i + 2]);
+			return sink;
+		});
+	}
+	
+	//===========//
+	// Neighbors //
+	//===========//
+	
+	/** Compares getting every neighbor of each cell with {@link Map3D#getNeighbors} against
+	 * getting each neighbor individually.
+	 * 
+	 * @param coords Packed array of X, Y, and Z coordinates
+	 * @param hashfn Hash function used by the map
+	 * @param mask The neighborhood to get
+	 * @return Benchmark results
+	 */
+	public static Result[] compareNeighbors(int[] coords, @NonNull HashInt3D hashfn, @NonNull NeighborMask mask) {
+		int n = coords.length / 3, count = mask.size();
+		Map3D<Integer> map = fill(Map3D.withExpectedSize(n, hashfn), coords);
+		Integer[] out = new Integer[count];
+		long ops = (long)n * count;
+		return new Result[] {
+			time("get x" + count, ops, () -> {
+				long sink = 0;
+				for(int i = 0; i < coords.length; i += 3) {
+					int x = coords[i], y = coords[i + 1], z = coords[i + 2];
+					for(int j = 0; j < count; j++) {
+						Integer v = map.get(x + mask.getX(j), y + mask.getY(j), z + mask.getZ(j));
+						if (v != null) sink += v;
+					}
+				}
+				return sink;
+			}),
+			time("getNeighbors " + mask, ops, () -> {
+				long sink = 0;
+				for(int i = 0; i < coords.length; i += 3) {
+					map.getNeighbors(coords[i], coords[i + 1], coords[i + 2], out, mask);
+					for(int j = 0; j < count; j++) {
+						Integer v = out[j];
+						if (v != null) sink += v;
+					}
+				}
+				return sink;
+			})
+		};
+	}
+	
+	//============//
+	// Contention //
+	//============//
+	
+	// Runs a task on the given number of threads, starting them together and waiting for all of them to finish
+	private static long runThreads(int nthreads, Pass[] tasks) {
+		Thread[] threads = new Thread[nthreads];
+		long[] sinks = new long[nthreads];
+		CountDownLatch start = new CountDownLatch(1);
+		for(int t = 0; t < nthreads; t++) {
+			int id = t;
+			threads[t] = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				sinks[id] = tasks[id].run();
+			});
+			threads[t].start();
+		}
+		start.countDown();
+		long sink = 0;
+		for(int t = 0; t < nthreads; t++) {
+			try {
+				threads[t].join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			sink += sinks[t];
+		}
+		return sink;
+	}
+	
+	/** Measures the contention of {@link ConcurrentMap3D} against a {@link Map3D} guarded by a single
+	 * lock, with several threads calling <tt>computeIfAbsent</tt> over a shared set of coordinates.
+	 * The warm-up pass inserts the values and the timed passes mostly find existing values, which is
+	 * the common case for a cache of loaded cells. Each thread performs the same number of operations,
+	 * so ideal scaling keeps the time per pass constant as threads are added.
+	 * 
+	 * @param coords Packed array of X, Y, and Z coordinates
+	 * @param nthreads The number of threads
+	 * @param opsPerThread The number of operations each thread performs in a pass
+	 * @return Benchmark results
+	 */
+	public static Result[] compareContention(int[] coords, int nthreads, int opsPerThread) {
+		int n = coords.length / 3;
+		Integer value = 1;
+		Map3D.IntTriFunction<Integer> compute = (x, y, z) -> value;
+		long ops = (long)nthreads * opsPerThread;
+		
+		Pass[] locked = new Pass[nthreads], striped = new Pass[nthreads];
+		Map3D<Integer> lockedMap = Map3D.withExpectedSize(n, Map3D.XXHASH_HASH);
+		ConcurrentMap3D<Integer> stripedMap = new ConcurrentMap3D<>(Map3D.XXHASH_HASH);
+		for(int t = 0; t < nthreads; t++) {
+			// Each thread walks the coordinates from a different starting point
+			int first = (int)((long)n * t / nthreads);
+			locked[t] = () -> {
+				long sink = 0;
+				for(int i = 0, k = first; i < opsPerThread; i++, k = k + 1 == n ? 0 : k + 1) {
+					int p = k * 3;
+					synchronized(lockedMap) {
+						sink += lockedMap.computeIfAbsent(coords[p], coords[p + 1], coords[p + 2], compute);
+					}
+				}
+				return sink;
+			};
+			striped[t] = () -> {
+				long sink = 0;
+				for(int i = 0, k = first; i < opsPerThread; i++, k = k + 1 == n ? 0 : k + 1) {
+					int p = k * 3;
+					sink += stripedMap.computeIfAbsent(coords[p], coords[p + 1], coords[p + 2], compute);
+				}
+				return sink;
+			};
+		}
+		return new Result[] {
+			time("Map3D+lock x" + nthreads, ops, () -> runThreads(nthreads, locked)),
+			time("ConcurrentMap3D x" + nthreads, ops, () -> runThreads(nthreads, striped))
+		};
+	}
+	
+	//============//
+	// Allocation //
+	//============//
+	
+	/** Measures the number of bytes allocated by the current thread while running a task, after
+	 * running it once to warm up. The bytes allocated by the measurement itself are subtracted. This
+	 * requires the <tt>jdk.management</tt> module, which is optional for this library.
+	 * 
+	 * @param task The task to measure
+	 * @param iterations The number of times to run the task
+	 * @return The average number of bytes allocated by each run, or -1 if allocations cannot be measured
+	 */
+	public static long measureAllocation(@NonNull Runnable task, int iterations) {
+		if (ModuleLayer.boot().findModule("jdk.management").isEmpty() && Map3DBenchmark.class.getModule().isNamed()) return -1;
+		if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean) || !bean.isThreadAllocatedMemorySupported()) return -1;
+		if (!bean.isThreadAllocatedMemoryEnabled()) bean.setThreadAllocatedMemoryEnabled(true);
+		long thread = Thread.currentThread().getId();
+		task.run();
+		long base = bean.getThreadAllocatedBytes(thread);
+		long overhead = bean.getThreadAllocatedBytes(thread) - base;
+		long start = bean.getThreadAllocatedBytes(thread);
+		for(int i = 0; i < iterations; i++) task.run();
+		long bytes = bean.getThreadAllocatedBytes(thread) - start - overhead;
+		return Math.max(0, bytes) / iterations;
+	}
+	
+	/** Checks that {@link Map3D} and {@link OpenMap3D} iterate and remove entries through
+	 * <tt>forEach</tt> and <tt>removeIf</tt> without allocating, printing the bytes allocated by
+	 * each sweep.
+	 * 
+	 * @param coords Packed array of X, Y, and Z coordinates
+	 * @return If no sweep allocated, or null if allocations cannot be measured
+	 */
+	public static @Nullable Boolean checkAllocation(int[] coords) {
+		int n = coords.length / 3;
+		Map3D<Integer> map = fill(Map3D.withExpectedSize(n, Map3D.XXHASH_HASH), coords);
+		OpenMap3D<Integer> open = fill(new OpenMap3D<>(n, Map3D.XXHASH_HASH), coords);
+		// Sweep callbacks are created up front so creating them is not counted
+		long[] sink = new long[1];
+		Map3D.IntTriObjConsumer<Integer> sum = (x, y, z, v) -> sink[0] += x ^ y ^ z ^ v;
+		Map3D.IntTriPredicate<Integer> keep = (x, y, z, v) -> v < 0;
+		Map3D.IntTriPredicate<Integer> odd = (x, y, z, v) -> (x & 1) != 0;
+		Map3D.IntTriPredicate<Integer> all = (x, y, z, v) -> true;
+		
+		String[] names = { "Map3D forEach", "Map3D removeIf (none)", "OpenMap3D forEach", "OpenMap3D removeIf (none)" };
+		Runnable[] sweeps = {
+			() -> map.forEach(sum),
+			() -> map.removeIf(keep),
+			() -> open.forEach(sum),
+			() -> open.removeIf(keep)
+		};
+		boolean ok = true;
+		for(int i = 0; i < sweeps.length; i++) {
+			long bytes = measureAllocation(sweeps[i], 10);
+			if (bytes < 0) return null;
+			System.out.println(String.format("%-32s bytes/sweep=%d", names[i], bytes));
+			if (bytes != 0) ok = false;
+		}
+		
+		// Sweeps that remove entries are measured once, on a different map than the warm-up removed from
+		String[] removeNames = { "Map3D removeIf (odd)", "Map3D removeIf (all)", "OpenMap3D removeIf (odd)", "OpenMap3D removeIf (all)" };
+		for(int i = 0; i < removeNames.length; i++) {
+			Map3D.IntTriPredicate<Integer> predicate = (i & 1) == 0 ? odd : all;
+			Runnable sweep;
+			if (i < 2) {
+				Map3D<Integer> warm = fill(Map3D.withExpectedSize(n, Map3D.XXHASH_HASH), coords);
+				Map3D<Integer> target = fill(Map3D.withExpectedSize(n, Map3D.XXHASH_HASH), coords);
+				int[] turn = { 0 };
+				sweep = () -> (turn[0]++ == 0 ? warm : target).removeIf(predicate);
+			} else {
+				OpenMap3D<Integer> warm = fill(new OpenMap3D<>(n, Map3D.XXHASH_HASH), coords);
+				OpenMap3D<Integer> target = fill(new OpenMap3D<>(n, Map3D.XXHASH_HASH), coords);
+				int[] turn = { 0 };
+				sweep = () -> (turn[0]++ == 0 ? warm : target).removeIf(predicate);
+			}
+			long bytes = measureAllocation(sweep, 1);
+			if (bytes < 0) return null;
+			System.out.println(String.format("%-32s bytes/sweep=%d", removeNames[i], bytes));
+			if (bytes != 0) ok = false;
+		}
+		blackhole = sink[0];
+		return ok;
+	}
+	
+	//======//
+	// Main //
+	//======//
+	
+	public static void main(String[] args) {
+		String bench = args.length > 0 ? args[0] : "all";
+		int nkeys = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_KEYS;
+		int[] coords = generateCoords(nkeys, 0);
+		boolean all = bench.equals("all");
+		boolean any = false;
+		if (all || bench.equals("open")) {
+			any = true;
+			for(Result r : compareOpenMap(coords, Map3D.XXHASH_HASH)) System.out.println(r);
+		}
+		if (all || bench.equals("neighbors")) {
+			any = true;
+			for(Result r : compareNeighbors(coords, Map3D.XXHASH_HASH, NeighborMask.ALL)) System.out.println("xxhash " + r);
+			for(Result r : compareNeighbors(coords, Map3D.ALIGN16_HASH, NeighborMask.ALL)) System.out.println("align16 " + r);
+		}
+		if (all || bench.equals("contention")) {
+			any = true;
+			int maxThreads = Runtime.getRuntime().availableProcessors();
+			for(int t = 1; t <= maxThreads; t <<= 1) {
+				for(Result r : compareContention(coords, t, 1 << 20)) System.out.println(r);
+			}
+		}
+		if (all || bench.equals("alloc")) {
+			any = true;
+			Boolean ok = checkAllocation(coords);
+			if (ok == null) {
+				System.err.println("Thread allocation counters are not available");
+			} else if (!ok) {
+				System.err.println("forEach/removeIf allocated while sweeping");
+				System.exit(1);
+			}
+		}
+		if (!any) {
+			System.err.println("Usage: Map3DBenchmark [all|open|neighbors|contention|alloc] [key count]");
+			System.exit(1);
+		}
+	}
+	
+}
@@ -1,13 +1,18 @@
 package com.zekrom_64.renderium.util.collections;
 
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.util.function.Consumer;
 
 import org.eclipse.jdt.annotation.NonNull;
+import org.joml.Matrix3f;
 import org.joml.Matrix4f;
 import org.joml.Matrix4fc;
 import org.joml.Quaternionfc;
 import org.joml.Vector3fc;
+import org.lwjgl.system.MemoryUtil;
 
 import com.zekrom_64.renderium.util.IStructAccessor;
 import com.zekrom_64.renderium.util.MatrixUtil;
@@ -53,6 +58,9 @@ public class MatrixStack extends StructStack<@NonNull Matrix4f> {
 	 */
 	public static final @NonNull Matrix4fAccessor ACCESSOR = new Matrix4fAccessor();
 	
+	// Temporary normal matrix for bulk normal transformations
+	private final Matrix3f normalMatrix = new Matrix3f();
+	
 	//==============//
 	// Constructors //
 	//==============//
@@ -65,6 +73,15 @@ public class MatrixStack extends StructStack<@NonNull Matrix4f> {
 		super(size, ACCESSOR);
 	}
 	
+	/** Create a new matrix stack, which may grow on demand.
+	 * 
+	 * @param size The maximum number of matrices the stack will store, or segment size if growable
+	 * @param growable If the stack grows on demand
+	 */
+	public MatrixStack(int size, boolean growable) {
+		super(size, ACCESSOR, growable);
+	}
+	
 	
 	//==================//
 	// Stack Operations //
@@ -76,9 +93,9 @@ public class MatrixStack extends StructStack<@NonNull Matrix4f> {
 	 * @return This matrix stack
 	 */
 	public MatrixStack push(Matrix4fc m) {
-		checkNotFull();
-		stackPointer--;
-		m.get(stackPointer * accessor.getSizeOf(), stackBuffer);
+		pushSlot();
+		cacheDirty = true;
+		m.get(topOffset, topBuffer);
 		return this;
 	}
 	
@@ -97,7 +114,8 @@ public class MatrixStack extends StructStack<@NonNull Matrix4f> {
 	 */
 	public MatrixStack peek(Matrix4f m) {
 		checkNotEmpty();
-		m.set(stackPointer * accessor.getSizeOf(), stackBuffer);
+		flushCache();
+		m.set(topOffset, topBuffer);
 		return this;
 	}
 	
@@ -123,7 +141,7 @@ public class MatrixStack extends StructStack<@NonNull Matrix4f> {
 	public MatrixStack setIdentity() {
 		checkNotEmpty();
 		topCache.identity();
-		writebackCache();
+		updateCache();
 		return this;
 	}
 	
@@ -138,7 +156,7 @@ public class MatrixStack extends StructStack<@NonNull Matrix4f> {
 		checkNotEmpty();
 		checkTopCache();
 		topCache.translate(x, y, z);
-		writebackCache();
+		updateCache();
 		return this;
 	}
 	
@@ -162,7 +180,7 @@ public class MatrixStack extends StructStack<@NonNull Matrix4f> {
 		checkNotEmpty();
 		checkTopCache();
 		topCache.scale(x, y, z);
-		writebackCache();
+		updateCache();
 		return this;
 	}
 	
@@ -187,7 +205,7 @@ public class MatrixStack extends StructStack<@NonNull Matrix4f> {
 		checkNotEmpty();
 		checkTopCache();
 		topCache.rotate(angle, x, y, z);
-		writebackCache();
+		updateCache();
 		return this;
 	}
 	
@@ -211,7 +229,7 @@ public class MatrixStack extends StructStack<@NonNull Matrix4f> {
 		checkNotEmpty();
 		checkTopCache();
 		topCache.rotate(q);
-		writebackCache();
+		updateCache();
 		return this;
 	}
 	
@@ -229,7 +247,120 @@ public class MatrixStack extends StructStack<@NonNull Matrix4f> {
 		checkNotEmpty();
 		checkTopCache();
 		topCache.ortho(left, right, bottom, top, near, far);
-		writebackCache();
+		updateCache();
+		return this;
+	}
+	
+	//======================//
+	// Bulk Transformations //
+	//======================//
+	
+	// Checks if a buffer can be accessed directly through its memory address
+	private static boolean isNativeAccessible(FloatBuffer buf) {
+		return buf.isDirect() && buf.order() == ByteOrder.nativeOrder();
+	}
+	
+	// Checks that a buffer holds enough vertices for a bulk transformation
+	private static void checkVertices(FloatBuffer buf, int count, int stride) {
+		if (count > 0 && buf.remaining() < (long)(count - 1) * stride + 3) throw new BufferUnderflowException();
+	}
+	
+	/** Transforms positions by the topmost matrix, treating them as points with a W component of 1.
+	 * Each position is 3 consecutive floats, and positions are read from the source buffer and written
+	 * to the destination buffer starting at their current positions. The source and destination may be
+	 * the same buffer, and any components between positions are left unmodified. This is equivalent to
+	 * calling {@link Matrix4f#transformPosition(org.joml.Vector3f)} for each position, but works
+	 * directly on the buffer memory without allocating any objects.
+	 * 
+	 * @param src Source buffer
+	 * @param dst Destination buffer
+	 * @param count Number of positions to transform
+	 * @param stride Number of floats between the start of each position
+	 * @return This matrix stack
+	 * @throws BufferUnderflowException If either buffer is too small or the stack is empty
+	 */
+	public MatrixStack transformPositions(FloatBuffer src, FloatBuffer dst, int count, int stride) {
+		checkNotEmpty();
+		if (stride < 3) throw new IllegalArgumentException("Stride must be at least 3 floats");
+		checkVertices(src, count, stride);
+		checkVertices(dst, count, stride);
+		checkTopCache();
+		Matrix4f m = topCache;
+		float m00 = m.m00(), m01 = m.m01(), m02 = m.m02();
+		float m10 = m.m10(), m11 = m.m11(), m12 = m.m12();
+		float m20 = m.m20(), m21 = m.m21(), m22 = m.m22();
+		float m30 = m.m30(), m31 = m.m31(), m32 = m.m32();
+		if (isNativeAccessible(src) && isNativeAccessible(dst)) {
+			long psrc = MemoryUtil.memAddress(src), pdst = MemoryUtil.memAddress(dst);
+			long step = (long)stride * Float.BYTES;
+			for(int i = 0; i < count; i++, psrc += step, pdst += step) {
+				float x = MemoryUtil.memGetFloat(psrc), y = MemoryUtil.memGetFloat(psrc + 4), z = MemoryUtil.memGetFloat(psrc + 8);
+				MemoryUtil.memPutFloat(pdst, m00 * x + m10 * y + m20 * z + m30);
+				MemoryUtil.memPutFloat(pdst + 4, m01 * x + m11 * y + m21 * z + m31);
+				MemoryUtil.memPutFloat(pdst + 8, m02 * x + m12 * y + m22 * z + m32);
+			}
+		} else {
+			int isrc = src.position(), idst = dst.position();
+			for(int i = 0; i < count; i++, isrc += stride, idst += stride) {
+				float x = src.get(isrc), y = src.get(isrc + 1), z = src.get(isrc + 2);
+				dst.put(idst, m00 * x + m10 * y + m20 * z + m30);
+				dst.put(idst + 1, m01 * x + m11 * y + m21 * z + m31);
+				dst.put(idst + 2, m02 * x + m12 * y + m22 * z + m32);
+			}
+		}
+		return this;
+	}
+	
+	/** Transforms normals by the normal matrix of the topmost matrix (the inverse transpose of its
+	 * upper 3x3 portion) and normalizes them. Normals are laid out the same way as for
+	 * {@link #transformPositions(FloatBuffer, FloatBuffer, int, int)}. Zero-length normals are
+	 * written as zero.
+	 * 
+	 * @param src Source buffer
+	 * @param dst Destination buffer
+	 * @param count Number of normals to transform
+	 * @param stride Number of floats between the start of each normal
+	 * @return This matrix stack
+	 * @throws BufferUnderflowException If either buffer is too small or the stack is empty
+	 */
+	public MatrixStack transformNormals(FloatBuffer src, FloatBuffer dst, int count, int stride) {
+		checkNotEmpty();
+		if (stride < 3) throw new IllegalArgumentException("Stride must be at least 3 floats");
+		checkVertices(src, count, stride);
+		checkVertices(dst, count, stride);
+		checkTopCache();
+		Matrix3f n = topCache.normal(normalMatrix);
+		float m00 = n.m00, m01 = n.m01, m02 = n.m02;
+		float m10 = n.m10, m11 = n.m11, m12 = n.m12;
+		float m20 = n.m20, m21 = n.m21, m22 = n.m22;
+		if (isNativeAccessible(src) && isNativeAccessible(dst)) {
+			long psrc = MemoryUtil.memAddress(src), pdst = MemoryUtil.memAddress(dst);
+			long step = (long)stride * Float.BYTES;
+			for(int i = 0; i < count; i++, psrc += step, pdst += step) {
+				float x = MemoryUtil.memGetFloat(psrc), y = MemoryUtil.memGetFloat(psrc + 4), z = MemoryUtil.memGetFloat(psrc + 8);
+				float nx = m00 * x + m10 * y + m20 * z;
+				float ny = m01 * x + m11 * y + m21 * z;
+				float nz = m02 * x + m12 * y + m22 * z;
+				float len2 = nx * nx + ny * ny + nz * nz;
+				float invlen = len2 > 0 ? (float)(1.0 / Math.sqrt(len2)) : 0;
+				MemoryUtil.memPutFloat(pdst, nx * invlen);
+				MemoryUtil.memPutFloat(pdst + 4, ny * invlen);
+				MemoryUtil.memPutFloat(pdst + 8, nz * invlen);
+			}
+		} else {
+			int isrc = src.position(), idst = dst.position();
+			for(int i = 0; i < count; i++, isrc += stride, idst += stride) {
+				float x = src.get(isrc), y = src.get(isrc + 1), z = src.get(isrc + 2);
+				float nx = m00 * x + m10 * y + m20 * z;
+				float ny = m01 * x + m11 * y + m21 * z;
+				float nz = m02 * x + m12 * y + m22 * z;
+				float len2 = nx * nx + ny * ny + nz * nz;
+				float invlen = len2 > 0 ? (float)(1.0 / Math.sqrt(len2)) : 0;
+				dst.put(idst, nx * invlen);
+				dst.put(idst + 1, ny * invlen);
+				dst.put(idst + 2, nz * invlen);
+			}
+		}
 		return this;
 	}
 	
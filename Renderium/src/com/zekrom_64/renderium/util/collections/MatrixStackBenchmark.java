@@ -0,0 +1,124 @@
+package com.zekrom_64.renderium.util.collections;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.joml.Matrix4f;
+
+/** <p>Micro-benchmark measuring the effect of deferred writeback on a {@link MatrixStack}. Each
+ * pass pushes a matrix, applies a chain of transformations to it, reads it back, and pops it,
+ * which is the usual pattern when rendering a scene graph. The benchmark runs a warm-up pass
+ * followed by several timed passes and reports the best pass.</p>
+ * 
+ * <p>This class may also be run directly, optionally taking the lengths of the transformation
+ * chains to measure.</p>
+ * 
+ * @author Zekrom_64
+ * 
+ */
+public class MatrixStackBenchmark {
+	
+	/** The timing of a transformation chain with writeback either deferred or not.
+	 * 
+	 * @author Zekrom_64
+	 * 
+	 * @param chainLength The number of transformations applied to each pushed matrix
+	 * @param deferred If writeback was deferred
+	 * @param operations The number of transformations in each pass
+	 * @param nanoseconds The time of the fastest pass in nanoseconds
+	 */
+	public static record Result(int chainLength, boolean deferred, long operations, long nanoseconds) {
+		
+		/** Gets the average time of a single transformation.
+		 * 
+		 * @return Nanoseconds per transformation
+		 */
+		public double nanosPerOperation() {
+			return operations > 0 ? (double)nanoseconds / operations : 0;
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("chain=%-3d deferred=%-5b ops=%d best=%.3fms ns/op=%.2f", chainLength, deferred, operations, nanoseconds / 1e6, nanosPerOperation());
+		}
+		
+	}
+	
+	/** The default number of matrices pushed in each pass. */
+	public static final int DEFAULT_PUSHES = 1 << 16;
+	
+	// The number of timed passes
+	private static final int TIMED_PASSES = 5;
+	// Sink for results so timed work is not optimized away
+	private static volatile float blackhole;
+	
+	// Runs a pass pushing matrices and applying a chain of transformations to each
+	private static float runPass(MatrixStack stack, Matrix4f out, int pushes, int chainLength) {
+		float sink = 0;
+		for(int i = 0; i < pushes; i++) {
+			stack.pushIdentity();
+			for(int j = 0; j < chainLength; j++) {
+				switch(j % 3) {
+				case 0:
+					stack.translate(1, 2, 3);
+					break;
+				case 1:
+					stack.rotate(0.1f, 0, 1, 0);
+					break;
+				default:
+					stack.scale(1.01f, 1.01f, 1.01f);
+					break;
+				}
+			}
+			stack.peek(out);
+			sink += out.m30();
+			stack.pop();
+		}
+		return sink;
+	}
+	
+	/** Times a chain of transformations on a matrix stack with writeback either deferred or not.
+	 * 
+	 * @param chainLength The number of transformations applied to each pushed matrix
+	 * @param deferred If writeback is deferred
+	 * @param pushes The number of matrices pushed in each pass
+	 * @return Benchmark result
+	 */
+	public static @NonNull Result measure(int chainLength, boolean deferred, int pushes) {
+		Matrix4f out = new Matrix4f();
+		try (MatrixStack stack = new MatrixStack(16)) {
+			stack.setDeferredWriteback(deferred);
+			// Keep a base matrix on the stack like a scene root
+			stack.pushIdentity();
+			float sink = 0;
+			long best = Long.MAX_VALUE;
+			for(int i = 0; i <= TIMED_PASSES; i++) {
+				long start = System.nanoTime();
+				sink += runPass(stack, out, pushes, chainLength);
+				long time = System.nanoTime() - start;
+				if (i > 0) best = Math.min(best, time);
+			}
+			blackhole = sink;
+			return new Result(chainLength, deferred, (long)pushes * chainLength, best);
+		}
+	}
+	
+	public static void main(String[] args) {
+		int[] chains = { 1, 4, 16, 64 };
+		try {
+			if (args.length > 0) {
+				chains = new int[args.length];
+				for(int i = 0; i < args.length; i++) {
+					chains[i] = Integer.parseInt(args[i]);
+					if (chains[i] <= 0) throw new NumberFormatException();
+				}
+			}
+		} catch (NumberFormatException e) {
+			System.err.println("Usage: MatrixStackBenchmark [chain length...]");
+			System.exit(1);
+		}
+		for(int chain : chains) {
+			System.out.println(measure(chain, false, DEFAULT_PUSHES));
+			System.out.println(measure(chain, true, DEFAULT_PUSHES));
+		}
+	}
+	
+}
@@ -0,0 +1,90 @@
+package com.zekrom_64.renderium.util.collections;
+
+/** Enumeration of neighborhoods of a cell in a 3D grid. Neighbors are always ordered with the 6
+ * face neighbors first, then the 12 edge neighbors, then the 8 corner neighbors, so the first
+ * neighbors of a larger neighborhood are the same as those of a smaller one. The face neighbors
+ * are ordered -X, +X, -Y, +Y, -Z, +Z.
+ * 
+ * @author Zekrom_64
+ * 
+ */
+public enum NeighborMask {
+	/** The 6 neighbors sharing a face with the cell. */
+	FACES(6),
+	/** The 18 neighbors sharing a face or an edge with the cell. */
+	FACES_EDGES(18),
+	/** All 26 neighbors surrounding the cell. */
+	ALL(26);
+	
+	// Table of neighbor offsets, ordered by the number of non-zero components
+	private static class Offsets {
+		
+		public static final int[] X = new int[26], Y = new int[26], Z = new int[26];
+		
+		static {
+			// Face neighbors
+			X[0] = -1; X[1] = 1;
+			Y[2] = -1; Y[3] = 1;
+			Z[4] = -1; Z[5] = 1;
+			// Edge neighbors followed by corner neighbors
+			int n = 6;
+			for(int nonzero = 2; nonzero <= 3; nonzero++) {
+				for(int dz = -1; dz <= 1; dz++) {
+					for(int dy = -1; dy <= 1; dy++) {
+						for(int dx = -1; dx <= 1; dx++) {
+							if ((dx & 1) + (dy & 1) + (dz & 1) != nonzero) continue;
+							X[n] = dx;
+							Y[n] = dy;
+							Z[n] = dz;
+							n++;
+						}
+					}
+				}
+			}
+		}
+		
+	}
+	
+	// The number of neighbors
+	private final int count;
+	
+	private NeighborMask(int count) {
+		this.count = count;
+	}
+	
+	/** Gets the number of neighbors in this neighborhood.
+	 * 
+	 * @return Neighbor count
+	 */
+	public int size() {
+		return count;
+	}
+	
+	/** Gets the X offset of a neighbor.
+	 * 
+	 * @param i Neighbor index
+	 * @return X offset
+	 */
+	public int getX(int i) {
+		return Offsets.X[i];
+	}
+	
+	/** Gets the Y offset of a neighbor.
+	 * 
+	 * @param i Neighbor index
+	 * @return Y offset
+	 */
+	public int getY(int i) {
+		return Offsets.Y[i];
+	}
+	
+	/** Gets the Z offset of a neighbor.
+	 * 
+	 * @param i Neighbor index
+	 * @return Z offset
+	 */
+	public int getZ(int i) {
+		return Offsets.Z[i];
+	}
+	
+}
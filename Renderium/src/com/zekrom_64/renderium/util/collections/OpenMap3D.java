@@ -0,0 +1,391 @@
+package com.zekrom_64.renderium.util.collections;
+
+import java.util.Arrays;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import org.joml.Vector3ic;
+
+import com.zekrom_64.renderium.util.TypeUtils;
+import com.zekrom_64.renderium.util.collections.Map3D.HashInt3D;
+import com.zekrom_64.renderium.util.collections.Map3D.IntTriObjConsumer;
+import com.zekrom_64.renderium.util.collections.Map3D.IntTriPredicate;
+
+/** <p>An open-addressing variant of {@link Map3D}. Keys are packed into a single <b>long</b> and
+ * stored in a primitive array alongside a parallel value array, so inserting an entry does not
+ * allocate any objects and lookups probe linearly through contiguous memory instead of walking
+ * linked chains.</p>
+ * 
+ * <p>Because keys are packed into 64 bits each coordinate is limited to a signed 21-bit range
+ * ({@link #MIN_COORD} to {@link #MAX_COORD}). The table grows automatically once the number of
+ * entries exceeds the load factor, and removal uses backward-shift deletion so no tombstones
+ * are left behind.</p>
+ * 
+ * @author Zekrom_64
+ * 
+ * @param <V> The mapped value type
+ */
+public class OpenMap3D<V> {
+	
+	/** The number of bits used to store each coordinate of a packed key. */
+	public static final int COORD_BITS = 21;
+	/** The minimum value of a coordinate that can be stored in the map. */
+	public static final int MIN_COORD = -(1 << (COORD_BITS - 1));
+	/** The maximum value of a coordinate that can be stored in the map. */
+	public static final int MAX_COORD = (1 << (COORD_BITS - 1)) - 1;
+	
+	/** The default load factor of the map. */
+	public static final float DEFAULT_LOAD_FACTOR = 0.5f;
+	
+	// Bitmask for a single coordinate in a packed key
+	private static final long COORD_MASK = (1L << COORD_BITS) - 1;
+	// Multiplier used to spread hash values over the table (2^32 / golden ratio)
+	private static final int HASH_SPREAD = 0x9E3779B9;
+	// The maximum capacity of the table
+	private static final int MAX_CAPACITY = 1 << 30;
+	
+	/** Packs a coordinate into a single long key.
+	 * 
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @param z Z coordinate
+	 * @return Packed key
+	 * @throws IllegalArgumentException If any coordinate is out of range
+	 */
+	public static long packKey(int x, int y, int z) {
+		if (x < MIN_COORD || x > MAX_COORD || y < MIN_COORD || y > MAX_COORD || z < MIN_COORD || z > MAX_COORD)
+			throw new IllegalArgumentException("Coordinate (" + x + ", " + y + ", " + z + ") is out of range for a packed key");
+		return (x & COORD_MASK) | ((y & COORD_MASK) << COORD_BITS) | ((z & COORD_MASK) << (2 * COORD_BITS));
+	}
+	
+	/** Unpacks the X coordinate from a packed key.
+	 * 
+	 * @param key Packed key
+	 * @return X coordinate
+	 */
+	public static int unpackX(long key) {
+		return (int)(key << (64 - COORD_BITS) >> (64 - COORD_BITS));
+	}
+	
+	/** Unpacks the Y coordinate from a packed key.
+	 * 
+	 * @param key Packed key
+	 * @return Y coordinate
+	 */
+	public static int unpackY(long key) {
+		return (int)(key << (64 - 2 * COORD_BITS) >> (64 - COORD_BITS));
+	}
+	
+	/** Unpacks the Z coordinate from a packed key.
+	 * 
+	 * @param key Packed key
+	 * @return Z coordinate
+	 */
+	public static int unpackZ(long key) {
+		return (int)(key << (64 - 3 * COORD_BITS) >> (64 - COORD_BITS));
+	}
+	
+	// The hashing function
+	private final HashInt3D hashfn;
+	// The maximum ratio of entries to table slots before the table grows
+	private final float loadFactor;
+	
+	// The packed keys of each slot
+	private long[] keys;
+	// The values of each slot, or null if the slot is empty
+	private @Nullable V[] values;
+	// Bitmask for slot indices
+	private int mask;
+	// The number of bits to shift spread hashes by to get a slot index
+	private int shift;
+	// The number of entries at which the table will grow
+	private int threshold;
+	
+	// Entry count
+	private int entrycount = 0;
+	
+	/** Creates a new open-addressed 3D map.
+	 * 
+	 * @param expectedSize The number of entries the map is expected to hold without growing
+	 * @param hashfn Hashing function
+	 * @param loadFactor The maximum fraction of slots that may be occupied before the table grows
+	 */
+	public OpenMap3D(int expectedSize, @NonNull HashInt3D hashfn, float loadFactor) {
+		if (!(loadFactor > 0 && loadFactor < 1)) throw new IllegalArgumentException("Load factor must be between 0 and 1 exclusive");
+		this.hashfn = hashfn;
+		this.loadFactor = loadFactor;
+		allocate(capacityFor(expectedSize));
+	}
+	
+	/** Creates a new open-addressed 3D map with the default load factor.
+	 * 
+	 * @param expectedSize The number of entries the map is expected to hold without growing
+	 * @param hashfn Hashing function
+	 */
+	public OpenMap3D(int expectedSize, @NonNull HashInt3D hashfn) {
+		this(expectedSize, hashfn, DEFAULT_LOAD_FACTOR);
+	}
+	
+	/** Creates a new open-addressed 3D map using the default hashing function.
+	 * 
+	 * @param expectedSize The number of entries the map is expected to hold without growing
+	 */
+	public OpenMap3D(int expectedSize) {
+		this(expectedSize, Map3D.DEFAULT_HASH);
+	}
+	
+	/** Creates a new open-addressed 3D map with space for 64 entries.
+	 * 
+	 */
+	public OpenMap3D() {
+		this(64);
+	}
+	
+	// Computes the table capacity required to hold the given number of entries
+	private int capacityFor(int expectedSize) {
+		long needed = (long)Math.ceil(Math.max(expectedSize, 1) / (double)loadFactor) + 1;
+		if (needed > MAX_CAPACITY) return MAX_CAPACITY;
+		return Math.max(Integer.highestOneBit((int)needed - 1) << 1, 2);
+	}
+	
+	// Allocates the table arrays for the given power-of-two capacity
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = TypeUtils.createGenericArray(capacity, Object.class);
+		mask = capacity - 1;
+		shift = 32 - Integer.numberOfTrailingZeros(capacity);
+		threshold = Math.min((int)(capacity * (double)loadFactor), capacity - 1);
+	}
+	
+	// Gets the ideal slot for a coordinate
+	private int getSlotIndex(int x, int y, int z) {
+		// Fibonacci hashing takes the high bits of the product, so weak low bits from the hash function still spread
+		return (hashfn.hash(x, y, z) * HASH_SPREAD) >>> shift;
+	}
+	
+	// Finds the slot holding the given key, or -1 if not present
+	private int findSlot(long key, int x, int y, int z) {
+		final long[] keys = this.keys;
+		final V[] values = this.values;
+		int i = getSlotIndex(x, y, z);
+		while(values[i] != null) {
+			if (keys[i] == key) return i;
+			i = (i + 1) & mask;
+		}
+		return -1;
+	}
+	
+	// Doubles the size of the table and reinserts all entries
+	private void grow() {
+		long[] oldkeys = keys;
+		V[] oldvalues = values;
+		if (oldkeys.length >= MAX_CAPACITY) throw new IllegalStateException("Map has reached its maximum capacity");
+		allocate(oldkeys.length << 1);
+		for(int i = 0; i < oldkeys.length; i++) {
+			V v = oldvalues[i];
+			if (v != null) {
+				long key = oldkeys[i];
+				int j = getSlotIndex(unpackX(key), unpackY(key), unpackZ(key));
+				while(values[j] != null) j = (j + 1) & mask;
+				keys[j] = key;
+				values[j] = v;
+			}
+		}
+	}
+	
+	/** Gets a value from this 3D map, or <b>null</b> if no such element exists.
+	 * 
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @param z Z coordinate
+	 * @return Value at these coordinates, or <b>null</b>
+	 */
+	public @Nullable V get(int x, int y, int z) {
+		if (x < MIN_COORD || x > MAX_COORD || y < MIN_COORD || y > MAX_COORD || z < MIN_COORD || z > MAX_COORD) return null;
+		int i = findSlot(packKey(x, y, z), x, y, z);
+		return i < 0 ? null : values[i];
+	}
+	
+	/** Gets a value from this 3D map, or <b>null</b> if no such element exists.
+	 * 
+	 * @param v Vector coordinate
+	 * @return Value at these coordinates, or <b>null</b>
+	 */
+	public @Nullable V get(Vector3ic v) {
+		return get(v.x(), v.y(), v.z());
+	}
+	
+	/** Tests if this map contains a value at the given coordinates.
+	 * 
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @param z Z coordinate
+	 * @return If a value is mapped at these coordinates
+	 */
+	public boolean containsKey(int x, int y, int z) {
+		return get(x, y, z) != null;
+	}
+	
+	/** Sets a value in the 3D map.
+	 * 
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @param z Z coordinate
+	 * @param value Value to set
+	 * @return The existing value at these coordinates, or <b>null</b>
+	 * @throws IllegalArgumentException If any coordinate is out of range
+	 */
+	public @Nullable V put(int x, int y, int z, @NonNull V value) {
+		long key = packKey(x, y, z);
+		int i = getSlotIndex(x, y, z);
+		V v;
+		while((v = values[i]) != null) {
+			if (keys[i] == key) {
+				values[i] = value;
+				return v;
+			}
+			i = (i + 1) & mask;
+		}
+		if (entrycount >= threshold) {
+			grow();
+			return put(x, y, z, value);
+		}
+		keys[i] = key;
+		values[i] = value;
+		entrycount++;
+		return null;
+	}
+	
+	/** Sets a value in the 3D map.
+	 * 
+	 * @param v Vector coordinates
+	 * @param value Value to set
+	 * @return The existing value at these coordinates, or <b>null</b>
+	 * @throws IllegalArgumentException If any coordinate is out of range
+	 */
+	public @Nullable V put(Vector3ic v, @NonNull V value) {
+		return put(v.x(), v.y(), v.z(), value);
+	}
+	
+	/** Removes a value from the 3D map.
+	 * 
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @param z Z coordinate
+	 * @return Removed value at these coordinates, or <b>null</b>
+	 */
+	public @Nullable V remove(int x, int y, int z) {
+		if (x < MIN_COORD || x > MAX_COORD || y < MIN_COORD || y > MAX_COORD || z < MIN_COORD || z > MAX_COORD) return null;
+		int i = findSlot(packKey(x, y, z), x, y, z);
+		if (i < 0) return null;
+		V old = values[i];
+		removeSlot(i);
+		return old;
+	}
+	
+	/** Removes a value from the 3D map.
+	 * 
+	 * @param v Vector coordinates
+	 * @return Removed value at these coordinates, or <b>null</b>
+	 */
+	public @Nullable V remove(Vector3ic v) {
+		return remove(v.x(), v.y(), v.z());
+	}
+	
+	// Empties a slot, shifting back any following entries that would become unreachable
+	private void removeSlot(int i) {
+		final long[] keys = this.keys;
+		final V[] values = this.values;
+		int j = i;
+		while(true) {
+			j = (j + 1) & mask;
+			if (values[j] == null) break;
+			long key = keys[j];
+			int ideal = getSlotIndex(unpackX(key), unpackY(key), unpackZ(key));
+			// Entry at j may fill the hole at i only if its ideal slot is not cyclically within (i, j]
+			if (((j - ideal) & mask) >= ((j - i) & mask)) {
+				keys[i] = key;
+				values[i] = values[j];
+				i = j;
+			}
+		}
+		values[i] = null;
+		entrycount--;
+	}
+	
+	/** Removes all entries from the map.
+	 * 
+	 */
+	public void clear() {
+		Arrays.fill(values, null);
+		entrycount = 0;
+	}
+	
+	/** Passes every entry of this map to a consumer without allocating any objects. The consumer
+	 * must not modify this map.
+	 * 
+	 * @param consumer Entry consumer
+	 */
+	public void forEach(IntTriObjConsumer<? super V> consumer) {
+		final long[] keys = this.keys;
+		final V[] values = this.values;
+		for(int i = 0; i < values.length; i++) {
+			V v = values[i];
+			if (v != null) {
+				long key = keys[i];
+				consumer.accept(unpackX(key), unpackY(key), unpackZ(key), v);
+			}
+		}
+	}
+	
+	/** Removes every entry of this map matching a predicate without allocating any objects. The
+	 * predicate must not modify this map.
+	 * 
+	 * @param predicate Predicate selecting entries to remove
+	 * @return If any entries were removed
+	 */
+	public boolean removeIf(IntTriPredicate<? super V> predicate) {
+		if (entrycount == 0) return false;
+		int oldcount = entrycount;
+		// Start just after an empty slot so no probe run wraps past the starting point, otherwise
+		// backward-shifting could move an already visited entry ahead of the scan
+		int start = 0;
+		while(values[start] != null) start++;
+		for(int n = 0; n < values.length; n++) {
+			int i = (start + 1 + n) & mask;
+			V v;
+			// Removal may shift another entry into this slot, so retest it before moving on
+			while((v = values[i]) != null) {
+				long key = keys[i];
+				if (!predicate.test(unpackX(key), unpackY(key), unpackZ(key), v)) break;
+				removeSlot(i);
+			}
+		}
+		return entrycount != oldcount;
+	}
+	
+	/** Gets the number of entries in the map.
+	 * 
+	 * @return Entry count
+	 */
+	public int size() {
+		return entrycount;
+	}
+	
+	/** Gets if the map is empty.
+	 * 
+	 * @return If the map is empty
+	 */
+	public boolean isEmpty() {
+		return entrycount == 0;
+	}
+	
+	/** Gets the number of slots currently allocated by the map.
+	 * 
+	 * @return Table capacity
+	 */
+	public int capacity() {
+		return keys.length;
+	}
+	
+}
@@ -0,0 +1,312 @@
+package com.zekrom_64.renderium.util.collections;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.zekrom_64.renderium.util.collections.Map3D.IntTriObjConsumer;
+
+/** <p>A paletted chunk densely stores a 16x16x16 cube of values. Each distinct value is stored once
+ * in a palette and every cell stores an index into the palette, bit-packed into an array of longs.
+ * The number of bits per cell grows on demand through 1, 2, 4, 8, and 16 bits as more distinct
+ * values are stored, so cells never span two longs and may be addressed with shifts alone. A
+ * chunk holding a single value uses no cell storage at all.</p>
+ * 
+ * <p>Cells are indexed in the same order as {@link Map3D#ALIGN16_HASH}, ie. X varies fastest and
+ * Z slowest. <b>null</b> is a valid cell value and indicates an empty cell.</p>
+ * 
+ * @author Zekrom_64
+ * 
+ * @param <V> The cell value type
+ */
+public class PalettedChunk<V> {
+	
+	/** The base 2 logarithm of the size of the chunk along each axis. */
+	public static final int SIZE_LOG2 = 4;
+	/** The size of the chunk along each axis. */
+	public static final int SIZE = 1 << SIZE_LOG2;
+	/** The total number of cells in the chunk. */
+	public static final int VOLUME = SIZE * SIZE * SIZE;
+	/** The maximum number of distinct values a chunk can store. */
+	public static final int MAX_PALETTE_SIZE = 1 << 16;
+	
+	// The palette size above which a hash map is used to look up palette indices
+	private static final int LINEAR_SEARCH_LIMIT = 16;
+	
+	// The palette of distinct values
+	private Object[] palette;
+	// The number of palette entries in use
+	private int paletteSize;
+	// Map of values to palette indices, or null if the palette is searched linearly
+	private Map<Object, Integer> paletteIndices = null;
+	
+	// The number of bits per cell, or 0 if every cell is the first palette entry
+	private int bits;
+	// The base 2 logarithm of the number of cells per long
+	private int cellsPerLongLog2;
+	// The packed cell array
+	private long[] data;
+	
+	// The number of cells holding non-null values
+	private int nonNullCount;
+	
+	/** Creates a new chunk with every cell set to the given value.
+	 * 
+	 * @param value Initial cell value
+	 */
+	public PalettedChunk(@Nullable V value) {
+		fill(value);
+	}
+	
+	/** Creates a new empty chunk.
+	 * 
+	 */
+	public PalettedChunk() {
+		this(null);
+	}
+	
+	/** Computes the index of a cell from local coordinates. Only the lowest 4 bits of each
+	 * coordinate are used.
+	 * 
+	 * @param x Local X coordinate
+	 * @param y Local Y coordinate
+	 * @param z Local Z coordinate
+	 * @return Cell index
+	 */
+	public static int cellIndex(int x, int y, int z) {
+		return (x & (SIZE - 1)) | ((y & (SIZE - 1)) << SIZE_LOG2) | ((z & (SIZE - 1)) << (2 * SIZE_LOG2));
+	}
+	
+	//=============//
+	// Cell Access //
+	//=============//
+	
+	// Reads the palette index stored in a cell
+	private int getIndex(int i) {
+		if (bits == 0) return 0;
+		long word = data[i >>> cellsPerLongLog2];
+		int shift = (i & ((1 << cellsPerLongLog2) - 1)) * bits;
+		return (int)(word >>> shift) & ((1 << bits) - 1);
+	}
+	
+	// Writes a palette index to a cell
+	private void setIndex(int i, int index) {
+		int w = i >>> cellsPerLongLog2;
+		int shift = (i & ((1 << cellsPerLongLog2) - 1)) * bits;
+		long mask = ((1L << bits) - 1) << shift;
+		data[w] = (data[w] & ~mask) | (((long)index << shift) & mask);
+	}
+	
+	/** Gets the value of a cell.
+	 * 
+	 * @param i Cell index
+	 * @return Cell value
+	 */
+	@SuppressWarnings("unchecked")
+	public @Nullable V get(int i) {
+		return (V)palette[getIndex(i)];
+	}
+	
+	/** Gets the value of a cell. Only the lowest 4 bits of each coordinate are used.
+	 * 
+	 * @param x Local X coordinate
+	 * @param y Local Y coordinate
+	 * @param z Local Z coordinate
+	 * @return Cell value
+	 */
+	public @Nullable V get(int x, int y, int z) {
+		return get(cellIndex(x, y, z));
+	}
+	
+	/** Sets the value of a cell, adding it to the palette if it is not already present.
+	 * 
+	 * @param i Cell index
+	 * @param value New cell value
+	 * @return The previous cell value
+	 * @throws IllegalStateException If the palette is full even after removing unused values
+	 */
+	@SuppressWarnings("unchecked")
+	public @Nullable V set(int i, @Nullable V value) {
+		Objects.checkIndex(i, VOLUME);
+		int oldIndex = getIndex(i);
+		V old = (V)palette[oldIndex];
+		if (Objects.equals(old, value)) return old;
+		int index = findOrAddPalette(value);
+		setIndex(i, index);
+		if (old == null) nonNullCount++;
+		if (value == null) nonNullCount--;
+		return old;
+	}
+	
+	/** Sets the value of a cell. Only the lowest 4 bits of each coordinate are used.
+	 * 
+	 * @param x Local X coordinate
+	 * @param y Local Y coordinate
+	 * @param z Local Z coordinate
+	 * @param value New cell value
+	 * @return The previous cell value
+	 * @throws IllegalStateException If the palette is full even after removing unused values
+	 */
+	public @Nullable V set(int x, int y, int z, @Nullable V value) {
+		return set(cellIndex(x, y, z), value);
+	}
+	
+	/** Sets every cell of the chunk to a single value, releasing all cell storage.
+	 * 
+	 * @param value Cell value
+	 */
+	public void fill(@Nullable V value) {
+		palette = new Object[] { value };
+		paletteSize = 1;
+		paletteIndices = null;
+		bits = 0;
+		cellsPerLongLog2 = 0;
+		data = null;
+		nonNullCount = value != null ? VOLUME : 0;
+	}
+	
+	/** Passes every non-null cell to a consumer, using local coordinates.
+	 * 
+	 * @param consumer Cell consumer
+	 */
+	@SuppressWarnings("unchecked")
+	public void forEach(IntTriObjConsumer<? super V> consumer) {
+		if (nonNullCount == 0) return;
+		for(int i = 0; i < VOLUME; i++) {
+			V v = (V)palette[getIndex(i)];
+			if (v != null) consumer.accept(i & (SIZE - 1), (i >>> SIZE_LOG2) & (SIZE - 1), i >>> (2 * SIZE_LOG2), v);
+		}
+	}
+	
+	//=========//
+	// Palette //
+	//=========//
+	
+	// Finds the palette index of a value, adding it to the palette if not present
+	private int findOrAddPalette(@Nullable Object value) {
+		if (paletteIndices != null) {
+			Integer index = paletteIndices.get(value);
+			if (index != null) return index;
+		} else {
+			for(int i = 0; i < paletteSize; i++) if (Objects.equals(palette[i], value)) return i;
+		}
+		
+		if (paletteSize >= MAX_PALETTE_SIZE) {
+			// Values that were overwritten are still in the palette, so drop them before giving up
+			compact();
+			if (paletteSize >= MAX_PALETTE_SIZE) throw new IllegalStateException("Chunk palette is full");
+		}
+		int index = paletteSize++;
+		if (index >= palette.length) palette = Arrays.copyOf(palette, Math.min(palette.length * 2, MAX_PALETTE_SIZE));
+		palette[index] = value;
+		if (paletteIndices != null) paletteIndices.put(value, index);
+		else if (paletteSize > LINEAR_SEARCH_LIMIT) {
+			paletteIndices = new HashMap<>();
+			for(int i = 0; i < paletteSize; i++) paletteIndices.put(palette[i], i);
+		}
+		if (paletteSize > (1 << bits)) resize(bitsFor(paletteSize));
+		return index;
+	}
+	
+	// Gets the number of bits per cell needed to index a palette of the given size
+	private static int bitsFor(int paletteSize) {
+		if (paletteSize <= 1) return 0;
+		int bits = 32 - Integer.numberOfLeadingZeros(paletteSize - 1);
+		// Round up to a power of two so cells never span two longs
+		return bits == 1 ? 1 : Integer.highestOneBit(bits - 1) << 1;
+	}
+	
+	// Repacks cells with a new number of bits per cell
+	private void resize(int newBits) {
+		if (newBits == bits) return;
+		int oldBits = bits, oldLog2 = cellsPerLongLog2;
+		long[] oldData = data;
+		
+		bits = newBits;
+		cellsPerLongLog2 = newBits > 0 ? Integer.numberOfTrailingZeros(64 / newBits) : 0;
+		data = newBits > 0 ? new long[VOLUME >>> cellsPerLongLog2] : null;
+		if (newBits > 0 && oldBits > 0) {
+			int oldMask = (1 << oldBits) - 1, oldPerLong = 1 << oldLog2;
+			for(int i = 0; i < VOLUME; i++) {
+				int index = (int)(oldData[i >>> oldLog2] >>> ((i & (oldPerLong - 1)) * oldBits)) & oldMask;
+				if (index != 0) setIndex(i, index);
+			}
+		}
+	}
+	
+	/** Rebuilds the palette so it only holds values that are currently stored in cells, shrinking
+	 * the number of bits per cell if possible.
+	 * 
+	 */
+	public void compact() {
+		if (bits == 0) return;
+		// Count the uses of each palette entry
+		int[] uses = new int[paletteSize];
+		for(int i = 0; i < VOLUME; i++) uses[getIndex(i)]++;
+		int[] remap = new int[paletteSize];
+		Object[] newPalette = new Object[paletteSize];
+		int newSize = 0;
+		for(int i = 0; i < paletteSize; i++) {
+			if (uses[i] > 0) {
+				remap[i] = newSize;
+				newPalette[newSize++] = palette[i];
+			}
+		}
+		if (newSize == paletteSize) return;
+		
+		// Repack the cells with the remapped indices
+		int[] indices = new int[VOLUME];
+		for(int i = 0; i < VOLUME; i++) indices[i] = remap[getIndex(i)];
+		palette = Arrays.copyOf(newPalette, Math.max(newSize, 1));
+		paletteSize = newSize;
+		paletteIndices = null;
+		if (newSize > LINEAR_SEARCH_LIMIT) {
+			paletteIndices = new HashMap<>();
+			for(int i = 0; i < newSize; i++) paletteIndices.put(palette[i], i);
+		}
+		bits = 0;
+		data = null;
+		resize(bitsFor(newSize));
+		if (bits > 0) for(int i = 0; i < VOLUME; i++) if (indices[i] != 0) setIndex(i, indices[i]);
+	}
+	
+	//=========//
+	// Getters //
+	//=========//
+	
+	/** Gets the number of entries in the palette, including any that are no longer used.
+	 * 
+	 * @return Palette size
+	 */
+	public int getPaletteSize() {
+		return paletteSize;
+	}
+	
+	/** Gets the number of bits used to store each cell.
+	 * 
+	 * @return Bits per cell
+	 */
+	public int getBitsPerCell() {
+		return bits;
+	}
+	
+	/** Gets the number of cells holding non-null values.
+	 * 
+	 * @return Non-null cell count
+	 */
+	public int getNonNullCount() {
+		return nonNullCount;
+	}
+	
+	/** Gets if every cell of this chunk is <b>null</b>.
+	 * 
+	 * @return If the chunk is empty
+	 */
+	public boolean isEmpty() {
+		return nonNullCount == 0;
+	}
+	
+}
@@ -0,0 +1,194 @@
+package com.zekrom_64.renderium.util.collections;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.zekrom_64.renderium.util.collections.Map3D.IntTriObjConsumer;
+
+/** <p>A paletted 3D map stores voxel data as a sparse set of dense {@link PalettedChunk}s. Each
+ * 16x16x16 aligned region holding any values is stored as a single chunk, and a {@link Map3D}
+ * only indexes the chunks by their chunk coordinates. Values within a chunk are located using
+ * the same layout as {@link Map3D#ALIGN16_HASH}.</p>
+ * 
+ * <p>Reads and writes of individual cells are constant time. Chunks are created when a non-null
+ * value is first written to them and are released once they become empty.</p>
+ * 
+ * @author Zekrom_64
+ * 
+ * @param <V> The value type
+ */
+public class PalettedMap3D<V> {
+	
+	// Map of chunk coordinates to chunks
+	private final Map3D<PalettedChunk<V>> chunks;
+	
+	// The most recently accessed chunk and its coordinates
+	private @Nullable PalettedChunk<V> lastChunk = null;
+	private int lastCX, lastCY, lastCZ;
+	
+	/** Creates a new paletted map with the given initial number of chunk buckets.
+	 * 
+	 * @param nbuckets Initial number of chunk buckets
+	 */
+	public PalettedMap3D(int nbuckets) {
+		chunks = new Map3D<>(nbuckets);
+	}
+	
+	/** Creates a new paletted map.
+	 * 
+	 */
+	public PalettedMap3D() {
+		chunks = new Map3D<>();
+	}
+	
+	// Gets the chunk containing the given chunk coordinates, or null if not present
+	private @Nullable PalettedChunk<V> findChunk(int cx, int cy, int cz) {
+		PalettedChunk<V> chunk = lastChunk;
+		if (chunk != null && cx == lastCX && cy == lastCY && cz == lastCZ) return chunk;
+		chunk = chunks.get(cx, cy, cz);
+		if (chunk != null) {
+			lastChunk = chunk;
+			lastCX = cx;
+			lastCY = cy;
+			lastCZ = cz;
+		}
+		return chunk;
+	}
+	
+	/** Gets the value stored at a position.
+	 * 
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @param z Z coordinate
+	 * @return The stored value, or <b>null</b> if the position is empty
+	 */
+	public @Nullable V get(int x, int y, int z) {
+		PalettedChunk<V> chunk = findChunk(x >> PalettedChunk.SIZE_LOG2, y >> PalettedChunk.SIZE_LOG2, z >> PalettedChunk.SIZE_LOG2);
+		return chunk != null ? chunk.get(PalettedChunk.cellIndex(x, y, z)) : null;
+	}
+	
+	/** Sets the value stored at a position. Setting a value to <b>null</b> clears it.
+	 * 
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @param z Z coordinate
+	 * @param value The value to store
+	 * @return The previously stored value
+	 * @throws IllegalStateException If the palette of the chunk is full
+	 */
+	public @Nullable V set(int x, int y, int z, @Nullable V value) {
+		int cx = x >> PalettedChunk.SIZE_LOG2, cy = y >> PalettedChunk.SIZE_LOG2, cz = z >> PalettedChunk.SIZE_LOG2;
+		PalettedChunk<V> chunk = findChunk(cx, cy, cz);
+		if (chunk == null) {
+			if (value == null) return null;
+			chunk = new PalettedChunk<>();
+			chunks.put(cx, cy, cz, chunk);
+			lastChunk = chunk;
+			lastCX = cx;
+			lastCY = cy;
+			lastCZ = cz;
+		}
+		V old = chunk.set(PalettedChunk.cellIndex(x, y, z), value);
+		if (chunk.isEmpty()) removeChunk(cx, cy, cz);
+		return old;
+	}
+	
+	/** Gets the chunk at the given chunk coordinates.
+	 * 
+	 * @param cx Chunk X coordinate
+	 * @param cy Chunk Y coordinate
+	 * @param cz Chunk Z coordinate
+	 * @return The chunk, or <b>null</b> if it is empty
+	 */
+	public @Nullable PalettedChunk<V> getChunk(int cx, int cy, int cz) {
+		return findChunk(cx, cy, cz);
+	}
+	
+	/** Sets the chunk at the given chunk coordinates. An empty or <b>null</b> chunk removes any
+	 * existing chunk.
+	 * 
+	 * @param cx Chunk X coordinate
+	 * @param cy Chunk Y coordinate
+	 * @param cz Chunk Z coordinate
+	 * @param chunk The new chunk
+	 * @return The previous chunk
+	 */
+	public @Nullable PalettedChunk<V> setChunk(int cx, int cy, int cz, @Nullable PalettedChunk<V> chunk) {
+		if (chunk == null || chunk.isEmpty()) return removeChunk(cx, cy, cz);
+		lastChunk = null;
+		return chunks.put(cx, cy, cz, chunk);
+	}
+	
+	/** Removes the chunk at the given chunk coordinates.
+	 * 
+	 * @param cx Chunk X coordinate
+	 * @param cy Chunk Y coordinate
+	 * @param cz Chunk Z coordinate
+	 * @return The removed chunk
+	 */
+	public @Nullable PalettedChunk<V> removeChunk(int cx, int cy, int cz) {
+		lastChunk = null;
+		return chunks.remove(cx, cy, cz);
+	}
+	
+	/** Sets every cell of a chunk to a single value. The chunk will not use any cell storage
+	 * until a different value is written to it.
+	 * 
+	 * @param cx Chunk X coordinate
+	 * @param cy Chunk Y coordinate
+	 * @param cz Chunk Z coordinate
+	 * @param value The value to fill with
+	 */
+	public void fillChunk(int cx, int cy, int cz, @Nullable V value) {
+		if (value == null) removeChunk(cx, cy, cz);
+		else {
+			PalettedChunk<V> chunk = findChunk(cx, cy, cz);
+			if (chunk != null) chunk.fill(value);
+			else setChunk(cx, cy, cz, new PalettedChunk<>(value));
+		}
+	}
+	
+	/** Passes every chunk to a consumer, using chunk coordinates.
+	 * 
+	 * @param consumer Chunk consumer
+	 */
+	public void forEachChunk(IntTriObjConsumer<? super @NonNull PalettedChunk<V>> consumer) {
+		chunks.forEach(consumer);
+	}
+	
+	/** Passes every non-null value to a consumer.
+	 * 
+	 * @param consumer Value consumer
+	 */
+	public void forEach(IntTriObjConsumer<? super V> consumer) {
+		chunks.forEach((int cx, int cy, int cz, PalettedChunk<V> chunk) -> {
+			int bx = cx << PalettedChunk.SIZE_LOG2, by = cy << PalettedChunk.SIZE_LOG2, bz = cz << PalettedChunk.SIZE_LOG2;
+			chunk.forEach((int x, int y, int z, V value) -> consumer.accept(bx + x, by + y, bz + z, value));
+		});
+	}
+	
+	/** Compacts the palettes of every chunk, releasing any palette entries that are no longer
+	 * used and shrinking cell storage where possible.
+	 * 
+	 */
+	public void compact() {
+		chunks.forEach((int cx, int cy, int cz, PalettedChunk<V> chunk) -> chunk.compact());
+	}
+	
+	/** Gets the number of non-empty chunks stored in the map.
+	 * 
+	 * @return Chunk count
+	 */
+	public int getChunkCount() {
+		return chunks.size();
+	}
+	
+	/** Removes every chunk from the map.
+	 * 
+	 */
+	public void clear() {
+		lastChunk = null;
+		chunks.clear();
+	}
+	
+}
@@ -1,11 +1,15 @@
 package com.zekrom_64.renderium.util.collections;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Objects;
 import java.util.function.Consumer;
 
 import org.eclipse.jdt.annotation.NonNull;
+import org.joml.Vector2ic;
+import org.lwjgl.system.MemoryUtil;
 
 import com.zekrom_64.renderium.util.IStructAccessor;
-import com.zekrom_64.renderium.util.IStructAccessor.DefaultStructAccessor;
 import com.zekrom_64.renderium.util.geometry.IRectangle;
 import com.zekrom_64.renderium.util.geometry.Rectangle;
 
@@ -16,12 +20,83 @@ import com.zekrom_64.renderium.util.geometry.Rectangle;
  */
 public class RectStack extends StructStack<@NonNull Rectangle> {
 
-	public static final @NonNull IStructAccessor<@NonNull Rectangle> ACCESSOR = new DefaultStructAccessor<@NonNull Rectangle>(Rectangle.class);
+	/** Struct accessor for the {@link Rectangle} class, reading and writing rectangle
+	 * coordinates directly in memory. Heap buffers and buffers which are not in native byte order
+	 * are accessed through their indexed get and put methods instead.
+	 * 
+	 * @author Zekrom_64
+	 * 
+	 */
+	public static class RectangleAccessor implements IStructAccessor<@NonNull Rectangle> {
+		
+		// Tests if a buffer's memory can be accessed directly by address
+		private static boolean isRawAccessible(ByteBuffer buffer) {
+			return buffer.isDirect() && buffer.order() == ByteOrder.nativeOrder();
+		}
+		
+		@Override
+		public @NonNull Rectangle create() {
+			return new Rectangle();
+		}
+		
+		@Override
+		public int getSizeOf() {
+			return Rectangle.SIZEOF;
+		}
+		
+		@Override
+		public void read(int position, @NonNull ByteBuffer buffer, @NonNull Rectangle struct) {
+			Objects.checkFromIndexSize(position, Rectangle.SIZEOF, buffer.limit());
+			if (isRawAccessible(buffer)) {
+				long addr = MemoryUtil.memAddress0(buffer) + position;
+				struct.set(MemoryUtil.memGetInt(addr), MemoryUtil.memGetInt(addr + 4), MemoryUtil.memGetInt(addr + 8), MemoryUtil.memGetInt(addr + 12));
+			} else {
+				struct.set(buffer.getInt(position), buffer.getInt(position + 4), buffer.getInt(position + 8), buffer.getInt(position + 12));
+			}
+		}
+		
+		@Override
+		public void write(int position, @NonNull ByteBuffer buffer, @NonNull Rectangle struct) {
+			Objects.checkFromIndexSize(position, Rectangle.SIZEOF, buffer.limit());
+			Vector2ic min = struct.getMin(), max = struct.getMax();
+			if (isRawAccessible(buffer)) {
+				long addr = MemoryUtil.memAddress0(buffer) + position;
+				MemoryUtil.memPutInt(addr, min.x());
+				MemoryUtil.memPutInt(addr + 4, min.y());
+				MemoryUtil.memPutInt(addr + 8, max.x());
+				MemoryUtil.memPutInt(addr + 12, max.y());
+			} else {
+				buffer.putInt(position, min.x());
+				buffer.putInt(position + 4, min.y());
+				buffer.putInt(position + 8, max.x());
+				buffer.putInt(position + 12, max.y());
+			}
+		}
+		
+	}
+	
+	/** The accessor used by the rectangle stack.
+	 * 
+	 */
+	public static final @NonNull IStructAccessor<@NonNull Rectangle> ACCESSOR = new RectangleAccessor();
 	
+	/** Creates a new fixed-size rectangle stack.
+	 * 
+	 * @param size The maximum number of rectangles the stack will store
+	 */
 	public RectStack(int size) {
 		super(size, ACCESSOR);
 	}
 	
+	/** Creates a new rectangle stack, which may grow on demand.
+	 * 
+	 * @param size Stack size, or segment size if growable
+	 * @param growable If the stack grows on demand
+	 */
+	public RectStack(int size, boolean growable) {
+		super(size, ACCESSOR, growable);
+	}
+	
 	/** Pushes a rectangle to the stack.
 	 * 
 	 * @param r Rectangle to push
@@ -53,7 +128,7 @@ public class RectStack extends StructStack<@NonNull Rectangle> {
 	 * @return This rectangle stack
 	 */
 	public @NonNull RectStack push(int x0, int y0, int x1, int y1) {
-		dup();
+		pushSlot();
 		topCache.set(x0, y0, x1, y1);
 		writebackCache();
 		return this;
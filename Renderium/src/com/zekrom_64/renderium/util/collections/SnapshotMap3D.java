@@ -0,0 +1,432 @@
+package com.zekrom_64.renderium.util.collections;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import org.joml.Vector3ic;
+
+import com.zekrom_64.renderium.util.collections.Map3D.IntTriObjConsumer;
+
+/** <p>A 3D map supporting cheap immutable snapshots. Entries are stored in a persistent hash
+ * array mapped trie keyed by packed coordinates (see {@link OpenMap3D#packKey(int, int, int)}).
+ * Taking a {@link Snapshot} is constant time, and the snapshot remains unchanged no matter how
+ * the map is modified afterwards.</p>
+ * 
+ * <p>Trie nodes created since the last snapshot are owned by the map and modified in place.
+ * Once a snapshot is taken those nodes become shared, and any later modification copies only
+ * the path from the root to the modified entry. The cost of keeping a snapshot per frame is
+ * therefore proportional to the number of changes made during the frame rather than the size
+ * of the map.</p>
+ * 
+ * <p>The map itself is not thread-safe and should only be modified by a single thread, but
+ * snapshots are immutable and may be read by any number of threads without locking once they
+ * have been published.</p>
+ * 
+ * @author Zekrom_64
+ * 
+ * @param <V> The mapped value type
+ */
+public class SnapshotMap3D<V> {
+	
+	// The number of hash bits consumed by each level of the trie
+	private static final int BITS_PER_LEVEL = 6;
+	// Mask for the hash bits of a single level
+	private static final int LEVEL_MASK = (1 << BITS_PER_LEVEL) - 1;
+	
+	// An entry in the trie
+	private static final class Leaf {
+		
+		public final long key;
+		public final Object value;
+		
+		public Leaf(long key, Object value) {
+			this.key = key;
+			this.value = value;
+		}
+		
+	}
+	
+	// An interior node of the trie
+	private static final class Node {
+		
+		// The edit token of the map that may modify this node in place
+		public final Object edit;
+		// Bitmap of occupied child slots
+		public long bitmap;
+		// Compressed array of children, either leaves or nodes
+		public Object[] children;
+		
+		public Node(Object edit, long bitmap, Object[] children) {
+			this.edit = edit;
+			this.bitmap = bitmap;
+			this.children = children;
+		}
+		
+	}
+	
+	/** <p>An immutable snapshot of a {@link SnapshotMap3D}.</p>
+	 * 
+	 * @author Zekrom_64
+	 * 
+	 * @param <V> The mapped value type
+	 */
+	public static final class Snapshot<V> {
+		
+		// The root node of the trie
+		private final @Nullable Node root;
+		// The number of entries in the snapshot
+		private final int size;
+		
+		private Snapshot(@Nullable Node root, int size) {
+			this.root = root;
+			this.size = size;
+		}
+		
+		/** Gets a value from this snapshot, or <b>null</b> if no such element exists.
+		 * 
+		 * @param x X coordinate
+		 * @param y Y coordinate
+		 * @param z Z coordinate
+		 * @return Element at coordinate, or <b>null</b>
+		 */
+		@SuppressWarnings("unchecked")
+		public @Nullable V get(int x, int y, int z) {
+			return (V)find(root, x, y, z);
+		}
+		
+		/** Gets a value from this snapshot, or <b>null</b> if no such element exists.
+		 * 
+		 * @param v Vector coordinate
+		 * @return Element at coordinate, or <b>null</b>
+		 */
+		public @Nullable V get(Vector3ic v) {
+			return get(v.x(), v.y(), v.z());
+		}
+		
+		/** Tests if this snapshot contains a value at the given coordinates.
+		 * 
+		 * @param x X coordinate
+		 * @param y Y coordinate
+		 * @param z Z coordinate
+		 * @return If a value exists at the coordinates
+		 */
+		public boolean containsKey(int x, int y, int z) {
+			return find(root, x, y, z) != null;
+		}
+		
+		/** Passes every entry in this snapshot to a consumer.
+		 * 
+		 * @param consumer Entry consumer
+		 */
+		public void forEach(IntTriObjConsumer<? super V> consumer) {
+			SnapshotMap3D.forEach(root, consumer);
+		}
+		
+		/** Gets the number of entries in this snapshot.
+		 * 
+		 * @return Entry count
+		 */
+		public int size() {
+			return size;
+		}
+		
+		/** Gets if this snapshot is empty.
+		 * 
+		 * @return If the snapshot is empty
+		 */
+		public boolean isEmpty() {
+			return size == 0;
+		}
+		
+	}
+	
+	// The current edit token, replaced whenever a snapshot is taken
+	private Object edit = new Object();
+	// The root node of the trie, or null if the map is empty
+	private @Nullable Node root = null;
+	// The number of entries in the map
+	private int size = 0;
+	// The value displaced by the last modification
+	private @Nullable Object displaced;
+	
+	/** Creates a new empty snapshot map.
+	 * 
+	 */
+	public SnapshotMap3D() { }
+	
+	//================//
+	// Trie Internals //
+	//================//
+	
+	// Spreads a packed key over all 64 bits, this is a bijection so distinct keys never collide
+	private static long hash(long key) {
+		key ^= key >>> 33;
+		key *= 0xFF51AFD7ED558CCDL;
+		key ^= key >>> 33;
+		key *= 0xC4CEB9FE1A85EC53L;
+		key ^= key >>> 33;
+		return key;
+	}
+	
+	// Finds the value stored for a key in the trie rooted at the given node
+	private static @Nullable Object find(@Nullable Node node, int x, int y, int z) {
+		if (node == null) return null;
+		if (x < OpenMap3D.MIN_COORD || x > OpenMap3D.MAX_COORD || y < OpenMap3D.MIN_COORD || y > OpenMap3D.MAX_COORD ||
+				z < OpenMap3D.MIN_COORD || z > OpenMap3D.MAX_COORD) return null;
+		long key = OpenMap3D.packKey(x, y, z);
+		long h = hash(key);
+		for(int shift = 0;; shift += BITS_PER_LEVEL) {
+			long bit = 1L << ((h >>> shift) & LEVEL_MASK);
+			if ((node.bitmap & bit) == 0) return null;
+			Object child = node.children[Long.bitCount(node.bitmap & (bit - 1))];
+			if (child instanceof Leaf) {
+				Leaf leaf = (Leaf)child;
+				return leaf.key == key ? leaf.value : null;
+			}
+			node = (Node)child;
+		}
+	}
+	
+	// Passes every entry in the trie rooted at the given node to a consumer
+	@SuppressWarnings("unchecked")
+	private static <V> void forEach(@Nullable Node node, IntTriObjConsumer<? super V> consumer) {
+		if (node == null) return;
+		for(Object child : node.children) {
+			if (child instanceof Leaf) {
+				Leaf leaf = (Leaf)child;
+				consumer.accept(OpenMap3D.unpackX(leaf.key), OpenMap3D.unpackY(leaf.key), OpenMap3D.unpackZ(leaf.key), (V)leaf.value);
+			} else forEach((Node)child, consumer);
+		}
+	}
+	
+	// Gets a version of a node that may be modified in place
+	private Node editable(Node node) {
+		if (node.edit == edit) return node;
+		return new Node(edit, node.bitmap, node.children.clone());
+	}
+	
+	// Creates a node holding two leaves whose hashes are equal below the given shift
+	private Node createNode(Leaf l1, long h1, Leaf l2, long h2, int shift) {
+		int f1 = (int)(h1 >>> shift) & LEVEL_MASK, f2 = (int)(h2 >>> shift) & LEVEL_MASK;
+		if (f1 == f2) return new Node(edit, 1L << f1, new Object[] { createNode(l1, h1, l2, h2, shift + BITS_PER_LEVEL) });
+		return new Node(edit, (1L << f1) | (1L << f2), f1 < f2 ? new Object[] { l1, l2 } : new Object[] { l2, l1 });
+	}
+	
+	// Inserts an entry into the trie rooted at the given node, returning the new root
+	private Node insert(Node node, long key, long h, int shift, Object value) {
+		long bit = 1L << ((h >>> shift) & LEVEL_MASK);
+		int idx = Long.bitCount(node.bitmap & (bit - 1));
+		if ((node.bitmap & bit) == 0) {
+			Object[] children = new Object[node.children.length + 1];
+			System.arraycopy(node.children, 0, children, 0, idx);
+			children[idx] = new Leaf(key, value);
+			System.arraycopy(node.children, idx, children, idx + 1, node.children.length - idx);
+			size++;
+			if (node.edit != edit) return new Node(edit, node.bitmap | bit, children);
+			node.bitmap |= bit;
+			node.children = children;
+			return node;
+		}
+		
+		Object child = node.children[idx], newChild;
+		if (child instanceof Leaf) {
+			Leaf leaf = (Leaf)child;
+			if (leaf.key == key) {
+				displaced = leaf.value;
+				if (leaf.value == value) return node;
+				newChild = new Leaf(key, value);
+			} else {
+				newChild = createNode(leaf, hash(leaf.key), new Leaf(key, value), h, shift + BITS_PER_LEVEL);
+				size++;
+			}
+		} else {
+			newChild = insert((Node)child, key, h, shift + BITS_PER_LEVEL, value);
+			if (newChild == child) return node;
+		}
+		node = editable(node);
+		node.children[idx] = newChild;
+		return node;
+	}
+	
+	// Removes an entry from the trie rooted at the given node, returning the replacement for the node
+	private @Nullable Object delete(Node node, long key, long h, int shift) {
+		long bit = 1L << ((h >>> shift) & LEVEL_MASK);
+		if ((node.bitmap & bit) == 0) return node;
+		int idx = Long.bitCount(node.bitmap & (bit - 1));
+		
+		Object child = node.children[idx], newChild;
+		if (child instanceof Leaf) {
+			Leaf leaf = (Leaf)child;
+			if (leaf.key != key) return node;
+			displaced = leaf.value;
+			size--;
+			newChild = null;
+		} else {
+			newChild = delete((Node)child, key, h, shift + BITS_PER_LEVEL);
+			if (newChild == child) return node;
+		}
+		
+		int count = node.children.length;
+		if (newChild == null) {
+			if (count == 1) return null;
+			// Collapse a node left holding a single leaf into its parent
+			if (count == 2 && shift > 0 && node.children[idx ^ 1] instanceof Leaf) return node.children[idx ^ 1];
+			Object[] children = new Object[count - 1];
+			System.arraycopy(node.children, 0, children, 0, idx);
+			System.arraycopy(node.children, idx + 1, children, idx, count - idx - 1);
+			if (node.edit != edit) return new Node(edit, node.bitmap & ~bit, children);
+			node.bitmap &= ~bit;
+			node.children = children;
+			return node;
+		}
+		if (count == 1 && shift > 0 && newChild instanceof Leaf) return newChild;
+		node = editable(node);
+		node.children[idx] = newChild;
+		return node;
+	}
+	
+	//================//
+	// Map Operations //
+	//================//
+	
+	/** Gets a value from this map, or <b>null</b> if no such element exists.
+	 * 
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @param z Z coordinate
+	 * @return Element at coordinate, or <b>null</b>
+	 */
+	@SuppressWarnings("unchecked")
+	public @Nullable V get(int x, int y, int z) {
+		return (V)find(root, x, y, z);
+	}
+	
+	/** Gets a value from this map, or <b>null</b> if no such element exists.
+	 * 
+	 * @param v Vector coordinate
+	 * @return Element at coordinate, or <b>null</b>
+	 */
+	public @Nullable V get(Vector3ic v) {
+		return get(v.x(), v.y(), v.z());
+	}
+	
+	/** Tests if this map contains a value at the given coordinates.
+	 * 
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @param z Z coordinate
+	 * @return If a value exists at the coordinates
+	 */
+	public boolean containsKey(int x, int y, int z) {
+		return find(root, x, y, z) != null;
+	}
+	
+	/** Puts a value into this map.
+	 * 
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @param z Z coordinate
+	 * @param value Value to put
+	 * @return The previous value, or <b>null</b>
+	 * @throws IllegalArgumentException If any coordinate is out of range
+	 */
+	@SuppressWarnings("unchecked")
+	public @Nullable V put(int x, int y, int z, @NonNull V value) {
+		long key = OpenMap3D.packKey(x, y, z);
+		displaced = null;
+		Node r = root;
+		if (r == null) {
+			long bit = 1L << (hash(key) & LEVEL_MASK);
+			root = new Node(edit, bit, new Object[] { new Leaf(key, value) });
+			size = 1;
+			return null;
+		}
+		root = insert(r, key, hash(key), 0, value);
+		V old = (V)displaced;
+		displaced = null;
+		return old;
+	}
+	
+	/** Puts a value into this map.
+	 * 
+	 * @param v Vector coordinate
+	 * @param value Value to put
+	 * @return The previous value, or <b>null</b>
+	 * @throws IllegalArgumentException If any coordinate is out of range
+	 */
+	public @Nullable V put(Vector3ic v, @NonNull V value) {
+		return put(v.x(), v.y(), v.z(), value);
+	}
+	
+	/** Removes a value from this map.
+	 * 
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @param z Z coordinate
+	 * @return The removed value, or <b>null</b>
+	 */
+	@SuppressWarnings("unchecked")
+	public @Nullable V remove(int x, int y, int z) {
+		Node r = root;
+		if (r == null || find(r, x, y, z) == null) return null;
+		long key = OpenMap3D.packKey(x, y, z);
+		displaced = null;
+		root = (Node)delete(r, key, hash(key), 0);
+		V old = (V)displaced;
+		displaced = null;
+		return old;
+	}
+	
+	/** Removes a value from this map.
+	 * 
+	 * @param v Vector coordinate
+	 * @return The removed value, or <b>null</b>
+	 */
+	public @Nullable V remove(Vector3ic v) {
+		return remove(v.x(), v.y(), v.z());
+	}
+	
+	/** Passes every entry in this map to a consumer. The map must not be modified by the consumer.
+	 * 
+	 * @param consumer Entry consumer
+	 */
+	public void forEach(IntTriObjConsumer<? super V> consumer) {
+		forEach(root, consumer);
+	}
+	
+	/** Removes every entry from this map. Existing snapshots are unaffected.
+	 * 
+	 */
+	public void clear() {
+		root = null;
+		size = 0;
+	}
+	
+	/** Gets the number of entries in this map.
+	 * 
+	 * @return Entry count
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/** Gets if this map is empty.
+	 * 
+	 * @return If the map is empty
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	/** Takes an immutable snapshot of the current contents of this map. This is a constant time
+	 * operation, after which the first modification of each part of the map copies only the
+	 * affected path through the trie.
+	 * 
+	 * @return Snapshot of the map
+	 */
+	public Snapshot<V> snapshot() {
+		// Nodes owned by the old token are now shared with the snapshot
+		edit = new Object();
+		return new Snapshot<>(root, size);
+	}
+	
+}
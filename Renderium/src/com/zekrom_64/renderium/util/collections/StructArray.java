@@ -0,0 +1,520 @@
+package com.zekrom_64.renderium.util.collections;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.Objects;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.lwjgl.system.MemoryUtil;
+
+import com.zekrom_64.renderium.util.ISafeCloseable;
+import com.zekrom_64.renderium.util.IStructAccessor;
+import com.zekrom_64.renderium.util.TypeUtils;
+
+/** <p>A struct array stores a growable array of structures contiguously in native memory. Values
+ * are either copied in and out using an {@link IStructAccessor}, or accessed in place through a
+ * {@link Cursor}, which acts as a flyweight for any element so no per-element objects are needed.</p>
+ * 
+ * <p>The array may be stored as an array of structures, where each element is stored contiguously,
+ * or as a structure of arrays, where each 4-byte word of the structure is stored in its own plane
+ * of <tt>capacity</tt> words. The planes of a structure of arrays move when the array grows.</p>
+ * 
+ * <p>Modified elements are tracked, so that only the spans of memory which have changed need to be
+ * copied elsewhere (such as uploading to a buffer object). Any modification through the array or a
+ * cursor marks the element as dirty until {@link #clearDirty()} is called.</p>
+ * 
+ * @author Zekrom_64
+ * 
+ * @param <S> Struct type
+ */
+public class StructArray<@NonNull S> implements ISafeCloseable {
+	
+	/** Enumeration of the ways struct array elements may be stored in memory.
+	 * 
+	 * @author Zekrom_64
+	 * 
+	 */
+	public static enum Layout {
+		/** Each element is stored contiguously, one after another. */
+		ARRAY_OF_STRUCTS,
+		/** Each 4-byte word of the structure is stored in its own contiguous plane. */
+		STRUCT_OF_ARRAYS
+	}
+	
+	/** A consumer which accepts a range of integers.
+	 * 
+	 * @author Zekrom_64
+	 * 
+	 */
+	@FunctionalInterface
+	public static interface RangeConsumer {
+		
+		public void accept(int start, int length);
+		
+	}
+	
+	// The accessor of struct values
+	private final @NonNull IStructAccessor<S> accessor;
+	// The layout of the array
+	private final @NonNull Layout layout;
+	// The size of each struct in bytes
+	private final int structSize;
+	// The number of words in each struct
+	private final int structWords;
+	// Scratch memory used to transpose a struct of arrays element
+	private ByteBuffer scratch;
+	// The memory storing elements
+	private ByteBuffer memory;
+	// The number of elements the memory can store
+	private int capacity;
+	// The number of elements in the array
+	private int size = 0;
+	// Set of dirty element indices
+	private final BitSet dirty = new BitSet();
+	
+	/** Creates a new struct array.
+	 * 
+	 * @param accessor Accessor for struct values
+	 * @param capacity Initial capacity
+	 * @param layout Memory layout of the array
+	 * @throws IllegalArgumentException If a struct of arrays is requested for a struct whose size is not a multiple of 4 bytes
+	 */
+	public StructArray(@NonNull IStructAccessor<S> accessor, int capacity, @NonNull Layout layout) {
+		if (capacity < 0) throw new IllegalArgumentException("Capacity cannot be negative");
+		this.accessor = accessor;
+		this.layout = layout;
+		structSize = accessor.getSizeOf();
+		structWords = structSize / 4;
+		if (layout == Layout.STRUCT_OF_ARRAYS) {
+			if ((structSize & 3) != 0) throw new IllegalArgumentException("Struct size must be a multiple of 4 bytes");
+			scratch = MemoryUtil.memAlloc(structSize);
+		} else scratch = null;
+		this.capacity = Math.max(capacity, 1);
+		memory = MemoryUtil.memAlloc(this.capacity * structSize);
+	}
+	
+	/** Creates a new struct array stored as an array of structures.
+	 * 
+	 * @param accessor Accessor for struct values
+	 * @param capacity Initial capacity
+	 */
+	public StructArray(@NonNull IStructAccessor<S> accessor, int capacity) {
+		this(accessor, capacity, Layout.ARRAY_OF_STRUCTS);
+	}
+	
+	@Override
+	public void close() {
+		if (memory != null) {
+			MemoryUtil.memFree(memory);
+			memory = null;
+		}
+		if (scratch != null) {
+			MemoryUtil.memFree(scratch);
+			scratch = null;
+		}
+	}
+	
+	
+	//=========//
+	// Getters //
+	//=========//
+	
+	/** Gets the number of elements in the array.
+	 * 
+	 * @return Array size
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/** Gets the number of elements the array can store without reallocating memory.
+	 * 
+	 * @return Array capacity
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+	
+	/** Gets the memory layout of the array.
+	 * 
+	 * @return Array layout
+	 */
+	public @NonNull Layout getLayout() {
+		return layout;
+	}
+	
+	/** Gets the size of each struct in bytes.
+	 * 
+	 * @return Struct size
+	 */
+	public int getStructSize() {
+		return structSize;
+	}
+	
+	/** Gets the address of the memory storing elements. This may change when the array grows.
+	 * 
+	 * @return Memory address
+	 */
+	public long getAddress() {
+		return MemoryUtil.memAddress(memory);
+	}
+	
+	/** Gets the memory storing elements, which holds the full capacity of the array. This may
+	 * change when the array grows.
+	 * 
+	 * @return Element memory
+	 */
+	public @NonNull ByteBuffer getMemory() {
+		return TypeUtils.nonNull(memory);
+	}
+	
+	/** Gets the byte offset of part of an element in the array's memory.
+	 * 
+	 * @param index Element index
+	 * @param offset Byte offset within the struct, which must be a multiple of 4 for a struct of arrays
+	 * @return Byte offset in memory
+	 */
+	public int getByteOffset(int index, int offset) {
+		if (layout == Layout.ARRAY_OF_STRUCTS) return index * structSize + offset;
+		else return ((offset >> 2) * capacity + index) * 4;
+	}
+	
+	
+	//==========//
+	// Capacity //
+	//==========//
+	
+	/** Ensures the array can store at least the given number of elements.
+	 * 
+	 * @param mincapacity Minimum capacity
+	 */
+	public void ensureCapacity(int mincapacity) {
+		if (mincapacity <= capacity) return;
+		int newcapacity = (int)Math.min(Math.max((long)capacity * 2, mincapacity), Integer.MAX_VALUE / structSize);
+		if (newcapacity < mincapacity) throw new OutOfMemoryError("Struct array capacity exceeds maximum size");
+		if (layout == Layout.ARRAY_OF_STRUCTS) {
+			memory = MemoryUtil.memRealloc(memory, newcapacity * structSize);
+		} else {
+			// Planes are moved, so copy each plane into its new position
+			ByteBuffer newmemory = MemoryUtil.memAlloc(newcapacity * structSize);
+			long src = MemoryUtil.memAddress(memory), dst = MemoryUtil.memAddress(newmemory);
+			for(int i = 0; i < structWords; i++) MemoryUtil.memCopy(src + (long)i * capacity * 4, dst + (long)i * newcapacity * 4, (long)size * 4);
+			MemoryUtil.memFree(memory);
+			memory = newmemory;
+			// Every element has moved
+			dirty.set(0, size);
+		}
+		capacity = newcapacity;
+	}
+	
+	/** Resizes the array. New elements have undefined contents and are marked as dirty.
+	 * 
+	 * @param newsize New array size
+	 */
+	public void resize(int newsize) {
+		if (newsize < 0) throw new IllegalArgumentException("Size cannot be negative");
+		ensureCapacity(newsize);
+		if (newsize > size) dirty.set(size, newsize);
+		else dirty.clear(newsize, size);
+		size = newsize;
+	}
+	
+	
+	//==================//
+	// Array Operations //
+	//==================//
+	
+	// Checks that an index is within the array
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+	}
+	
+	// Writes a value to an element without checking the index
+	private void write(int index, S value) {
+		if (layout == Layout.ARRAY_OF_STRUCTS) accessor.write(index * structSize, TypeUtils.nonNull(memory), value);
+		else {
+			accessor.write(0, TypeUtils.nonNull(scratch), value);
+			long src = MemoryUtil.memAddress(scratch), dst = MemoryUtil.memAddress(memory) + (long)index * 4;
+			for(int i = 0; i < structWords; i++) MemoryUtil.memPutInt(dst + (long)i * capacity * 4, MemoryUtil.memGetInt(src + i * 4));
+		}
+		dirty.set(index);
+	}
+	
+	/** Gets an element of the array.
+	 * 
+	 * @param index Element index
+	 * @param value Struct to read the element into
+	 * @return The struct read into
+	 */
+	public S get(int index, S value) {
+		checkIndex(index);
+		if (layout == Layout.ARRAY_OF_STRUCTS) accessor.read(index * structSize, TypeUtils.nonNull(memory), value);
+		else {
+			long src = MemoryUtil.memAddress(memory) + (long)index * 4, dst = MemoryUtil.memAddress(scratch);
+			for(int i = 0; i < structWords; i++) MemoryUtil.memPutInt(dst + i * 4, MemoryUtil.memGetInt(src + (long)i * capacity * 4));
+			accessor.read(0, TypeUtils.nonNull(scratch), value);
+		}
+		return value;
+	}
+	
+	/** Sets an element of the array.
+	 * 
+	 * @param index Element index
+	 * @param value New element value
+	 * @return This struct array
+	 */
+	public StructArray<S> set(int index, S value) {
+		checkIndex(index);
+		write(index, value);
+		return this;
+	}
+	
+	/** Adds an element to the end of the array.
+	 * 
+	 * @param value Element value
+	 * @return The index of the new element
+	 */
+	public int add(S value) {
+		ensureCapacity(size + 1);
+		int index = size++;
+		write(index, value);
+		return index;
+	}
+	
+	/** Removes an element from the array by moving the last element into its place. This does not
+	 * preserve the order of elements, but only modifies a single element.
+	 * 
+	 * @param index Element index
+	 * @return This struct array
+	 */
+	public StructArray<S> removeSwap(int index) {
+		checkIndex(index);
+		int last = --size;
+		if (index != last) {
+			long base = MemoryUtil.memAddress(memory);
+			if (layout == Layout.ARRAY_OF_STRUCTS) MemoryUtil.memCopy(base + (long)last * structSize, base + (long)index * structSize, structSize);
+			else for(int i = 0; i < structWords; i++) {
+				long plane = base + (long)i * capacity * 4;
+				MemoryUtil.memPutInt(plane + (long)index * 4, MemoryUtil.memGetInt(plane + (long)last * 4));
+			}
+			dirty.set(index);
+		}
+		dirty.clear(last);
+		return this;
+	}
+	
+	/** Removes all elements from the array.
+	 * 
+	 */
+	public void clear() {
+		size = 0;
+		dirty.clear();
+	}
+	
+	
+	//================//
+	// Dirty Tracking //
+	//================//
+	
+	/** Marks an element as dirty.
+	 * 
+	 * @param index Element index
+	 */
+	public void markDirty(int index) {
+		checkIndex(index);
+		dirty.set(index);
+	}
+	
+	/** Marks a range of elements as dirty.
+	 * 
+	 * @param start First element index
+	 * @param length Number of elements
+	 */
+	public void markDirty(int start, int length) {
+		if (length == 0) return;
+		checkIndex(start);
+		checkIndex(start + length - 1);
+		dirty.set(start, start + length);
+	}
+	
+	/** Gets if any elements are dirty.
+	 * 
+	 * @return If the array is dirty
+	 */
+	public boolean isDirty() {
+		return !dirty.isEmpty();
+	}
+	
+	/** Marks all elements as clean.
+	 * 
+	 */
+	public void clearDirty() {
+		dirty.clear();
+	}
+	
+	/** Calls a consumer for each maximal range of consecutive dirty elements, in order.
+	 * 
+	 * @param consumer Range consumer, accepting the first element index and number of elements
+	 */
+	public void forEachDirtyRange(RangeConsumer consumer) {
+		for(int start = dirty.nextSetBit(0); start >= 0 && start < size; ) {
+			int end = Math.min(dirty.nextClearBit(start), size);
+			consumer.accept(start, end - start);
+			start = dirty.nextSetBit(end);
+		}
+	}
+	
+	/** Calls a consumer for each span of memory holding dirty elements, in order of increasing
+	 * byte offset. For an array of structures there is one span for each dirty range, and for a
+	 * structure of arrays there is one span for each dirty range in each plane.
+	 * 
+	 * @param consumer Span consumer, accepting the byte offset and length of the span in memory
+	 */
+	public void forEachDirtySpan(RangeConsumer consumer) {
+		if (layout == Layout.ARRAY_OF_STRUCTS) forEachDirtyRange((start, length) -> consumer.accept(start * structSize, length * structSize));
+		else for(int i = 0; i < structWords; i++) {
+			int plane = i * capacity * 4;
+			forEachDirtyRange((start, length) -> consumer.accept(plane + start * 4, length * 4));
+		}
+	}
+	
+	
+	//=========//
+	// Cursors //
+	//=========//
+	
+	/** A cursor is a flyweight view of a single element of a struct array, which can read and write
+	 * the element in place. Writes through a cursor mark the element as dirty. A cursor remains
+	 * valid if the array grows, but its index is not updated if elements are removed. Accessing the
+	 * element of a cursor which is not at an element of the array, or at an offset outside of the
+	 * struct, throws an {@link IndexOutOfBoundsException}.
+	 * 
+	 * @author Zekrom_64
+	 * 
+	 */
+	public final class Cursor {
+		
+		// The index of the current element
+		private int index = -1;
+		
+		private Cursor() { }
+		
+		// Gets the address of a 4-byte value in the current element, checking the cursor is at an
+		// element and the value lies within the struct first
+		private long address(int offset) {
+			checkIndex(index);
+			Objects.checkFromIndexSize(offset, 4, structSize);
+			if (layout == Layout.STRUCT_OF_ARRAYS && (offset & 3) != 0) throw new IllegalArgumentException("Offset must be a multiple of 4 bytes in a struct of arrays");
+			return MemoryUtil.memAddress(memory) + getByteOffset(index, offset);
+		}
+		
+		/** Gets the index of the element the cursor is at.
+		 * 
+		 * @return Element index
+		 */
+		public int getIndex() {
+			return index;
+		}
+		
+		/** Moves the cursor to an element.
+		 * 
+		 * @param index Element index
+		 * @return This cursor
+		 */
+		public Cursor seek(int index) {
+			checkIndex(index);
+			this.index = index;
+			return this;
+		}
+		
+		/** Moves the cursor to the next element, if there is one.
+		 * 
+		 * @return If the cursor was moved
+		 */
+		public boolean next() {
+			if (index + 1 >= size) return false;
+			index++;
+			return true;
+		}
+		
+		/** Reads a float from the current element.
+		 * 
+		 * @param offset Byte offset within the struct
+		 * @return Float value
+		 */
+		public float getFloat(int offset) {
+			return MemoryUtil.memGetFloat(address(offset));
+		}
+		
+		/** Reads an integer from the current element.
+		 * 
+		 * @param offset Byte offset within the struct
+		 * @return Integer value
+		 */
+		public int getInt(int offset) {
+			return MemoryUtil.memGetInt(address(offset));
+		}
+		
+		/** Writes a float to the current element.
+		 * 
+		 * @param offset Byte offset within the struct
+		 * @param value Float value
+		 * @return This cursor
+		 */
+		public Cursor putFloat(int offset, float value) {
+			MemoryUtil.memPutFloat(address(offset), value);
+			dirty.set(index);
+			return this;
+		}
+		
+		/** Writes an integer to the current element.
+		 * 
+		 * @param offset Byte offset within the struct
+		 * @param value Integer value
+		 * @return This cursor
+		 */
+		public Cursor putInt(int offset, int value) {
+			MemoryUtil.memPutInt(address(offset), value);
+			dirty.set(index);
+			return this;
+		}
+		
+		/** Reads the current element.
+		 * 
+		 * @param value Struct to read the element into
+		 * @return The struct read into
+		 */
+		public S get(S value) {
+			return StructArray.this.get(index, value);
+		}
+		
+		/** Writes the current element.
+		 * 
+		 * @param value New element value
+		 * @return This cursor
+		 */
+		public Cursor set(S value) {
+			StructArray.this.set(index, value);
+			return this;
+		}
+		
+	}
+	
+	/** Creates a new cursor for the array, which must be moved to an element before use.
+	 * 
+	 * @return New cursor
+	 */
+	public @NonNull Cursor cursor() {
+		return new Cursor();
+	}
+	
+	/** Creates a new cursor for the array at the given element.
+	 * 
+	 * @param index Element index
+	 * @return New cursor
+	 */
+	public @NonNull Cursor cursor(int index) {
+		return new Cursor().seek(index);
+	}
+	
+}
@@ -3,6 +3,7 @@ package com.zekrom_64.renderium.util.collections;
 import java.nio.BufferOverflowException;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import org.eclipse.jdt.annotation.NonNull;
 import org.lwjgl.system.MemoryUtil;
@@ -11,7 +12,18 @@ import com.zekrom_64.renderium.util.ISafeCloseable;
 import com.zekrom_64.renderium.util.IStructAccessor;
 import com.zekrom_64.renderium.util.TypeUtils;
 
-/** A struct stack implements a fixed-size stack of structures.
+/** <p>A struct stack implements a stack of structures stored in native memory.</p>
+ * 
+ * <p>By default the stack has a fixed size. A growable stack instead stores values in fixed-size
+ * segments which are allocated as the stack grows and freed as it shrinks, keeping one spare
+ * segment to avoid repeatedly allocating at a segment boundary. Existing values are never copied
+ * or moved when the stack grows, so all operations remain constant time.</p>
+ * 
+ * <p>Modifications of the topmost value are made to a cached copy. By default the cache is
+ * written back to memory after every modification, but in deferred writeback mode it is only
+ * written back when a value is pushed or duplicated, when the top value is read from memory, or
+ * when the stack is explicitly flushed. This avoids repeatedly copying the value to and from
+ * memory during long chains of modifications.</p>
  * 
  * @author Zekrom_64
  *
@@ -21,34 +33,104 @@ public class StructStack<@NonNull S> implements ISafeCloseable {
 
 	// The accessor of struct value
 	protected final @NonNull IStructAccessor<S> accessor;
-	// The buffer storing stack values
-	protected final @NonNull ByteBuffer stackBuffer;
 	// The maximum number of values the stack can hold
 	protected final int maxSize;
-	// The descending stack pointer
-	protected int stackPointer;
+	// If the stack allocates new segments as it grows
+	protected final boolean growable;
+	// The number of values stored in each segment
+	private final int segmentSize;
+	// The segments storing stack values
+	private ByteBuffer[] segments;
+	// The number of allocated segments
+	private int segmentCount;
+	// The number of values on the stack
+	private int size = 0;
+	
+	/** The buffer holding the topmost value. */
+	protected @NonNull ByteBuffer topBuffer;
+	/** The offset of the topmost value in {@link #topBuffer}. */
+	protected int topOffset = 0;
 	
 	/** Cache of the topmost value. */
 	protected final S topCache;
 	/** If the top cache value is dirty (modified but not written back). */
 	protected boolean cacheDirty = false;
+	/** If the top cache holds modifications that have not been written back to memory. */
+	protected boolean cacheModified = false;
+	// If writing back the top cache is deferred
+	private boolean deferredWriteback = false;
 	
-	/** Creates a new struct stack of the given size, using an accessor.
+	/** Creates a new struct stack using an accessor. If the stack is growable the size is the
+	 * number of values stored in each segment, otherwise it is the maximum size of the stack.
 	 * 
-	 * @param size Stack size
+	 * @param size Stack size, or segment size if growable
 	 * @param accessor Accessor for struct values
+	 * @param growable If the stack grows on demand
 	 */
-	public StructStack(int size, @NonNull IStructAccessor<S> accessor) {
+	public StructStack(int size, @NonNull IStructAccessor<S> accessor, boolean growable) {
+		if (size <= 0) throw new IllegalArgumentException("Stack size must be positive");
 		this.accessor = accessor;
-		stackBuffer = TypeUtils.nonNull(MemoryUtil.memAlloc(accessor.getSizeOf() * size));
-		maxSize = size;
-		stackPointer = size;
+		this.growable = growable;
+		segmentSize = size;
+		maxSize = growable ? Integer.MAX_VALUE : size;
+		segments = new ByteBuffer[growable ? 4 : 1];
+		topBuffer = allocateSegment();
 		topCache = accessor.create();
 	}
 	
+	/** Creates a new fixed-size struct stack of the given size, using an accessor.
+	 * 
+	 * @param size Stack size
+	 * @param accessor Accessor for struct values
+	 */
+	public StructStack(int size, @NonNull IStructAccessor<S> accessor) {
+		this(size, accessor, false);
+	}
+	
 	@Override
 	public void close() {
-		MemoryUtil.memFree(stackBuffer);
+		for(int i = 0; i < segmentCount; i++) {
+			MemoryUtil.memFree(segments[i]);
+			segments[i] = null;
+		}
+		segmentCount = 0;
+	}
+	
+	
+	//==========//
+	// Segments //
+	//==========//
+	
+	// Allocates a new segment at the end of the segment list
+	private @NonNull ByteBuffer allocateSegment() {
+		if (segmentCount == segments.length) segments = Arrays.copyOf(segments, segmentCount * 2);
+		ByteBuffer segment = TypeUtils.nonNull(MemoryUtil.memAlloc(accessor.getSizeOf() * segmentSize));
+		segments[segmentCount++] = segment;
+		return segment;
+	}
+	
+	// Frees segments beyond those needed for the current size, keeping one spare segment
+	private void trimSegments() {
+		int keep = Math.max(1, (size + segmentSize - 1) / segmentSize) + 1;
+		while(segmentCount > keep) {
+			MemoryUtil.memFree(segments[--segmentCount]);
+			segments[segmentCount] = null;
+		}
+	}
+	
+	// Updates the top buffer and offset for the current size
+	private void updateTop() {
+		int index = Math.max(size - 1, 0);
+		topBuffer = TypeUtils.nonNull(segments[index / segmentSize]);
+		topOffset = (index % segmentSize) * accessor.getSizeOf();
+	}
+	
+	/** Gets the number of values the stack can hold without allocating more memory.
+	 * 
+	 * @return Allocated stack capacity
+	 */
+	public int getCapacity() {
+		return (int)Math.min((long)segmentCount * segmentSize, maxSize);
 	}
 	
 	
@@ -60,10 +142,15 @@ public class StructStack<@NonNull S> implements ISafeCloseable {
 	 * 
 	 */
 	public void clear() {
-		stackPointer = maxSize;
+		size = 0;
+		updateTop();
+		cacheDirty = true;
+		cacheModified = false;
+		if (growable) trimSegments();
 	}
 	
-	/** Gets the maximum number of values the stack can hold.
+	/** Gets the maximum number of values the stack can hold. This is {@link Integer#MAX_VALUE}
+	 * for growable stacks.
 	 * 
 	 * @return Maximum stack size
 	 */
@@ -76,7 +163,7 @@ public class StructStack<@NonNull S> implements ISafeCloseable {
 	 * @return Current stack size
 	 */
 	public int getSize() {
-		return maxSize - stackPointer;
+		return size;
 	}
 	
 	/** Gets if the stack is empty.
@@ -84,7 +171,7 @@ public class StructStack<@NonNull S> implements ISafeCloseable {
 	 * @return If the stack is empty
 	 */
 	public boolean isEmpty() {
-		return stackPointer >= maxSize;
+		return size <= 0;
 	}
 	
 	/** Gets if the stack is full.
@@ -92,7 +179,33 @@ public class StructStack<@NonNull S> implements ISafeCloseable {
 	 * @return If the stack is full
 	 */
 	public boolean isFull() {
-		return stackPointer <= 0;
+		return size >= maxSize;
+	}
+	
+	/** Sets if writing back modifications of the topmost value is deferred. Disabling deferred
+	 * writeback flushes any pending modifications.
+	 * 
+	 * @param deferred If writeback should be deferred
+	 */
+	public void setDeferredWriteback(boolean deferred) {
+		if (!deferred) flushCache();
+		deferredWriteback = deferred;
+	}
+	
+	/** Gets if writing back modifications of the topmost value is deferred.
+	 * 
+	 * @return If writeback is deferred
+	 */
+	public boolean isDeferredWriteback() {
+		return deferredWriteback;
+	}
+	
+	/** Gets if the stack grows on demand.
+	 * 
+	 * @return If the stack is growable
+	 */
+	public boolean isGrowable() {
+		return growable;
 	}
 	
 	
@@ -113,15 +226,49 @@ public class StructStack<@NonNull S> implements ISafeCloseable {
 	// Check that the top cache is up-to-date
 	protected void checkTopCache() {
 		if (cacheDirty) {
-			accessor.read(stackPointer * accessor.getSizeOf(), stackBuffer, topCache);
+			accessor.read(topOffset, topBuffer, topCache);
 			cacheDirty = false;
 		}
 	}
 	
 	// Write-back the top cache to memory
 	protected void writebackCache() {
-		accessor.write(stackPointer * accessor.getSizeOf(), stackBuffer, topCache);
+		accessor.write(topOffset, topBuffer, topCache);
 		cacheDirty = false; // It cannot be dirty if it has been written back
+		cacheModified = false;
+	}
+	
+	// Notes that the top cache has been modified, writing it back unless writeback is deferred
+	protected void updateCache() {
+		if (deferredWriteback) {
+			cacheDirty = false;
+			cacheModified = true;
+		} else writebackCache();
+	}
+	
+	// Writes back the top cache if it holds pending modifications
+	protected void flushCache() {
+		if (cacheModified) writebackCache();
+	}
+	
+	/** Writes any pending modifications of the topmost value back to memory.
+	 * 
+	 */
+	public void flush() {
+		flushCache();
+	}
+	
+	/** Adds a new slot to the top of the stack, allocating a new segment if needed. The contents
+	 * of the new slot are undefined.
+	 * 
+	 * @throws BufferOverflowException If the stack is full
+	 */
+	protected void pushSlot() {
+		checkNotFull();
+		flushCache();
+		if (size == segmentCount * segmentSize) allocateSegment();
+		size++;
+		updateTop();
 	}
 	
 	/** Pops a value from this matrix stack.
@@ -130,10 +277,7 @@ public class StructStack<@NonNull S> implements ISafeCloseable {
 	 * @throws BufferUnderflowException If the stack is empty
 	 */
 	public StructStack<S> pop() {
-		checkNotEmpty();
-		stackPointer++;
-		cacheDirty = true;
-		return this;
+		return pop(1);
 	}
 	
 	/** Pops zero or more values from the stack.
@@ -146,8 +290,14 @@ public class StructStack<@NonNull S> implements ISafeCloseable {
 	public StructStack<S> pop(int n) {
 		if (n < 0) throw new IllegalArgumentException("Cannot pop a negative number of values");
 		if (n > getSize()) throw new BufferUnderflowException();
-		stackPointer += n;
+		// Popping nothing must keep any pending modifications of the top value
+		if (n == 0) return this;
+		size -= n;
+		updateTop();
 		cacheDirty = true;
+		// Pending modifications are discarded with the popped value
+		cacheModified = false;
+		if (growable && segmentCount * segmentSize - size > 2 * segmentSize) trimSegments();
 		return this;
 	}
 	
@@ -157,8 +307,9 @@ public class StructStack<@NonNull S> implements ISafeCloseable {
 	 */
 	public S peek() {
 		checkNotEmpty();
+		flushCache();
 		S s = accessor.create();
-		accessor.read(stackPointer * accessor.getSizeOf(), stackBuffer, s);
+		accessor.read(topOffset, topBuffer, s);
 		return s;
 	}
 	
@@ -169,10 +320,9 @@ public class StructStack<@NonNull S> implements ISafeCloseable {
 	 * @throws BufferOverflowException If the stack is full
 	 */
 	public StructStack<S> push(S s) {
-		checkNotFull();
+		pushSlot();
 		cacheDirty = true;
-		stackPointer--;
-		accessor.write(stackPointer * accessor.getSizeOf(), stackBuffer, s);
+		accessor.write(topOffset, topBuffer, s);
 		return this;
 	}
 	
@@ -181,12 +331,11 @@ public class StructStack<@NonNull S> implements ISafeCloseable {
 	 * @return This matrix stack
 	 */
 	public StructStack<S> dup() {
-		checkNotFull();
-		long pbuf = MemoryUtil.memAddress(stackBuffer);
-		long psrc = pbuf + (stackPointer * accessor.getSizeOf());
-		long pdst = psrc - accessor.getSizeOf();
+		checkNotEmpty();
+		long psrc = MemoryUtil.memAddress(topBuffer) + topOffset;
+		pushSlot();
+		long pdst = MemoryUtil.memAddress(topBuffer) + topOffset;
 		MemoryUtil.memCopy(psrc, pdst, accessor.getSizeOf());
-		stackPointer--;
 		// Don't neet to dirty cache, topmost value will be the same so dirtiness is unchanged
 		return this;
 	}
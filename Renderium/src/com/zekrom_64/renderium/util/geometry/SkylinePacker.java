@@ -0,0 +1,211 @@
+package com.zekrom_64.renderium.util.geometry;
+
+import java.util.Arrays;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+/** <p>A skyline packer incrementally packs rectangles into a fixed size area. The packer tracks
+ * the "skyline" formed by the top edges of the rectangles packed so far as a list of horizontal
+ * segments, and places each new rectangle where its top edge would be lowest (the bottom-left
+ * heuristic), preferring narrower segments when there is a tie.</p>
+ * 
+ * <p>Rectangles can be inserted at any time without repacking, which makes the packer suitable
+ * for atlases that are filled at runtime. Space below the skyline that no rectangle can reach is
+ * wasted, but in practice this packs sprites and glyphs tightly.</p>
+ * 
+ * @author Zekrom_64
+ * 
+ */
+public class SkylinePacker {
+	
+	// The size of the packing area
+	private final int width, height;
+	// The skyline segments, ordered from left to right
+	private int[] segX = new int[16], segY = new int[16], segWidth = new int[16];
+	// The number of skyline segments
+	private int segCount;
+	// The total area of packed rectangles
+	private long usedArea;
+	// The number of packed rectangles
+	private int count;
+	
+	/** Creates a new skyline packer.
+	 * 
+	 * @param width The width of the packing area
+	 * @param height The height of the packing area
+	 */
+	public SkylinePacker(int width, int height) {
+		if (width <= 0 || height <= 0) throw new IllegalArgumentException("Packing area must not be empty");
+		this.width = width;
+		this.height = height;
+		clear();
+	}
+	
+	/** Removes all packed rectangles, resetting the skyline to the bottom of the area.
+	 * 
+	 * @return This packer
+	 */
+	public @NonNull SkylinePacker clear() {
+		segCount = 1;
+		segX[0] = 0;
+		segY[0] = 0;
+		segWidth[0] = width;
+		usedArea = 0;
+		count = 0;
+		return this;
+	}
+	
+	//=========//
+	// Getters //
+	//=========//
+	
+	/** Gets the width of the packing area.
+	 * 
+	 * @return Width
+	 */
+	public int getWidth() {
+		return width;
+	}
+	
+	/** Gets the height of the packing area.
+	 * 
+	 * @return Height
+	 */
+	public int getHeight() {
+		return height;
+	}
+	
+	/** Gets the number of rectangles packed.
+	 * 
+	 * @return Rectangle count
+	 */
+	public int getCount() {
+		return count;
+	}
+	
+	/** Gets the fraction of the packing area covered by packed rectangles.
+	 * 
+	 * @return Occupancy, between 0 and 1
+	 */
+	public double getOccupancy() {
+		return (double)usedArea / ((long)width * height);
+	}
+	
+	//===========//
+	// Insertion //
+	//===========//
+	
+	// Gets the lowest Y coordinate a rectangle of the given width can be placed at with its left
+	// edge at the start of a segment, or -1 if it does not fit
+	private int fit(int segment, int w, int h) {
+		int x = segX[segment];
+		if (x + w > width) return -1;
+		int y = 0;
+		for(int i = segment, remaining = w; remaining > 0; i++) {
+			y = Math.max(y, segY[i]);
+			if (y + h > height) return -1;
+			remaining -= segWidth[i];
+		}
+		return y;
+	}
+	
+	/** Inserts a rectangle, storing its position in the given rectangle if it fits.
+	 * 
+	 * @param w Rectangle width
+	 * @param h Rectangle height
+	 * @param dst Rectangle to store the packed position in
+	 * @return If the rectangle fit
+	 */
+	public boolean insert(int w, int h, @NonNull Rectangle dst) {
+		if (w <= 0 || h <= 0) throw new IllegalArgumentException("Cannot pack an empty rectangle");
+		if (w > width || h > height) return false;
+		
+		// Find the segment where the top of the rectangle is lowest, then where the segment is narrowest
+		int best = -1, bestTop = Integer.MAX_VALUE, bestWidth = Integer.MAX_VALUE, bestY = 0;
+		for(int i = 0; i < segCount; i++) {
+			int y = fit(i, w, h);
+			if (y < 0) continue;
+			int top = y + h;
+			if (top < bestTop || (top == bestTop && segWidth[i] < bestWidth)) {
+				best = i;
+				bestTop = top;
+				bestWidth = segWidth[i];
+				bestY = y;
+			}
+		}
+		if (best < 0) return false;
+		
+		int x = segX[best];
+		addSegment(best, x, bestTop, w);
+		dst.set(x, bestY, x + w, bestTop);
+		usedArea += (long)w * h;
+		count++;
+		return true;
+	}
+	
+	/** Inserts a rectangle, returning its packed position.
+	 * 
+	 * @param w Rectangle width
+	 * @param h Rectangle height
+	 * @return The packed position of the rectangle, or null if it does not fit
+	 */
+	public @Nullable Rectangle insert(int w, int h) {
+		Rectangle r = new Rectangle();
+		return insert(w, h, r) ? r : null;
+	}
+	
+	// Inserts a new segment at the given index, trimming the segments it covers and merging it
+	// with neighbors at the same height
+	private void addSegment(int index, int x, int y, int w) {
+		if (segCount == segX.length) {
+			int newLength = segCount * 2;
+			segX = Arrays.copyOf(segX, newLength);
+			segY = Arrays.copyOf(segY, newLength);
+			segWidth = Arrays.copyOf(segWidth, newLength);
+		}
+		System.arraycopy(segX, index, segX, index + 1, segCount - index);
+		System.arraycopy(segY, index, segY, index + 1, segCount - index);
+		System.arraycopy(segWidth, index, segWidth, index + 1, segCount - index);
+		segX[index] = x;
+		segY[index] = y;
+		segWidth[index] = w;
+		segCount++;
+		
+		// Trim or remove following segments covered by the new segment
+		int end = x + w, remove = 0;
+		for(int i = index + 1; i < segCount; i++) {
+			if (segX[i] >= end) break;
+			int segEnd = segX[i] + segWidth[i];
+			if (segEnd <= end) {
+				remove++;
+			} else {
+				segWidth[i] = segEnd - end;
+				segX[i] = end;
+				break;
+			}
+		}
+		removeSegments(index + 1, remove);
+		
+		// Merge with neighboring segments at the same height
+		if (index + 1 < segCount && segY[index + 1] == y) {
+			segWidth[index] += segWidth[index + 1];
+			removeSegments(index + 1, 1);
+		}
+		if (index > 0 && segY[index - 1] == y) {
+			segWidth[index - 1] += segWidth[index];
+			removeSegments(index, 1);
+		}
+	}
+	
+	// Removes a range of segments
+	private void removeSegments(int index, int n) {
+		if (n == 0) return;
+		int tail = segCount - index - n;
+		System.arraycopy(segX, index + n, segX, index, tail);
+		System.arraycopy(segY, index + n, segY, index, tail);
+		System.arraycopy(segWidth, index + n, segWidth, index, tail);
+		segCount -= n;
+	}
+	
+}
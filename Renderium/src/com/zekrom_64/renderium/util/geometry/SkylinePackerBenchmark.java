@@ -0,0 +1,99 @@
+package com.zekrom_64.renderium.util.geometry;
+
+import java.util.Random;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+/** <p>Micro-benchmark measuring how quickly and tightly a {@link SkylinePacker} packs many random
+ * rectangles, similar to the sprites packed into a texture atlas. Each measurement runs a warm-up
+ * pass followed by several timed passes and reports the best pass.</p>
+ * 
+ * <p>This class may also be run directly, optionally taking the number of rectangles, the size of
+ * the packing area, and the minimum and maximum rectangle size.</p>
+ * 
+ * @author Zekrom_64
+ * 
+ */
+public class SkylinePackerBenchmark {
+	
+	/** The result of packing a set of rectangles.
+	 * 
+	 * @author Zekrom_64
+	 * 
+	 * @param attempted The number of rectangles inserted
+	 * @param packed The number of rectangles which fit
+	 * @param occupancy The fraction of the packing area covered by packed rectangles
+	 * @param nanoseconds The time of the fastest pass in nanoseconds
+	 */
+	public static record Result(int attempted, int packed, double occupancy, long nanoseconds) {
+		
+		/** Gets the average time of a single insertion.
+		 * 
+		 * @return Nanoseconds per insertion
+		 */
+		public double nanosPerInsert() {
+			return attempted > 0 ? (double)nanoseconds / attempted : 0;
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("attempted=%d packed=%d occupancy=%.2f%% best=%.3fms ns/insert=%.1f", attempted, packed, occupancy * 100, nanoseconds / 1e6, nanosPerInsert());
+		}
+		
+	}
+	
+	// The number of timed passes
+	private static final int TIMED_PASSES = 5;
+	
+	/** Generates random rectangle sizes.
+	 * 
+	 * @param count The number of rectangles
+	 * @param minSize The minimum width and height
+	 * @param maxSize The maximum width and height
+	 * @param seed Random seed
+	 * @return Packed array of widths and heights
+	 */
+	public static int[] generateSizes(int count, int minSize, int maxSize, long seed) {
+		Random rand = new Random(seed);
+		int[] sizes = new int[count * 2];
+		for(int i = 0; i < sizes.length; i++) sizes[i] = minSize + rand.nextInt(maxSize - minSize + 1);
+		return sizes;
+	}
+	
+	/** Measures packing rectangles into an empty packer, in the order given.
+	 * 
+	 * @param sizes Packed array of widths and heights
+	 * @param width The width of the packing area
+	 * @param height The height of the packing area
+	 * @return Benchmark result
+	 */
+	public static @NonNull Result measure(int[] sizes, int width, int height) {
+		SkylinePacker packer = new SkylinePacker(width, height);
+		Rectangle dst = new Rectangle();
+		long best = Long.MAX_VALUE;
+		for(int i = 0; i <= TIMED_PASSES; i++) {
+			packer.clear();
+			long start = System.nanoTime();
+			for(int j = 0; j < sizes.length; j += 2) packer.insert(sizes[j], sizes[j + 1], dst);
+			long time = System.nanoTime() - start;
+			if (i > 0) best = Math.min(best, time);
+		}
+		return new Result(sizes.length / 2, packer.getCount(), packer.getOccupancy(), best);
+	}
+	
+	public static void main(String[] args) {
+		int count = 10000, size = 4096, minSize = 8, maxSize = 64;
+		try {
+			if (args.length > 0) count = Integer.parseInt(args[0]);
+			if (args.length > 1) size = Integer.parseInt(args[1]);
+			if (args.length > 2) minSize = Integer.parseInt(args[2]);
+			if (args.length > 3) maxSize = Integer.parseInt(args[3]);
+			if (count <= 0 || size <= 0 || minSize <= 0 || maxSize < minSize) throw new NumberFormatException();
+		} catch (NumberFormatException e) {
+			System.err.println("Usage: SkylinePackerBenchmark [rectangle count] [area size] [min size] [max size]");
+			System.exit(1);
+		}
+		System.out.println(measure(generateSizes(count, minSize, maxSize, 0), size, size));
+	}
+	
+}
@@ -0,0 +1,313 @@
+package com.zekrom_64.renderium.util.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.zekrom_64.renderium.util.collections.Map3D;
+import com.zekrom_64.renderium.util.io.RegionFile.Compression;
+
+/** <p>Stores the contents of {@link Map3D}s in a directory of {@link RegionFile}s. Cells are
+ * grouped into 16x16x16 aligned groups, each of which is stored in a single slot, and each region
+ * file holds an 8x8x8 block of groups. Loading a region only requires decoding the groups that
+ * are requested, and uncompressed groups are decoded directly from the file mapping.</p>
+ * 
+ * <p>Region files are kept open after they are first used, up to a limit on the number of open
+ * files. Once the limit is reached the least recently used region file is closed (as approximated
+ * by {@link Map3D#setMaxSize}) to make room for the next one.</p>
+ * 
+ * @author Zekrom_64
+ * 
+ * @param <V> The mapped value type
+ */
+public class Map3DRegionStorage<V> implements Closeable {
+	
+	/** A value codec converts map values to and from their binary form.
+	 * 
+	 * @author Zekrom_64
+	 * 
+	 * @param <V> The value type
+	 */
+	public static interface ValueCodec<V> {
+		
+		/** Gets the number of bytes required to encode a value.
+		 * 
+		 * @param value The value to encode
+		 * @return Encoded size in bytes
+		 */
+		public int getSize(@NonNull V value);
+		
+		/** Encodes a value, advancing the position of the buffer.
+		 * 
+		 * @param value The value to encode
+		 * @param buf The buffer to write to
+		 */
+		public void write(@NonNull V value, ByteBuffer buf);
+		
+		/** Decodes a value, advancing the position of the buffer.
+		 * 
+		 * @param buf The buffer to read from
+		 * @return The decoded value
+		 */
+		public @NonNull V read(ByteBuffer buf);
+		
+	}
+	
+	/** The base 2 logarithm of the size of a group along each axis. */
+	public static final int GROUP_SIZE_LOG2 = 4;
+	/** The base 2 logarithm of the number of groups in a region along each axis. */
+	public static final int REGION_SIZE_LOG2 = 3;
+	/** The default maximum number of region files kept open. */
+	public static final int DEFAULT_MAX_OPEN_REGIONS = 64;
+	
+	// Mask for the local coordinates of a cell in a group
+	private static final int GROUP_MASK = (1 << GROUP_SIZE_LOG2) - 1;
+	// Mask for the local coordinates of a group in a region
+	private static final int REGION_MASK = (1 << REGION_SIZE_LOG2) - 1;
+	// The number of slots in each region file
+	private static final int REGION_SLOTS = 1 << (3 * REGION_SIZE_LOG2);
+	
+	// A group of encoded cells being saved
+	private static class GroupWriter {
+		
+		public ByteBuffer buffer = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN).putInt(0);
+		public int count = 0;
+		
+		public void ensureRemaining(int n) {
+			if (buffer.remaining() < n) {
+				ByteBuffer newBuffer = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + n)).order(ByteOrder.LITTLE_ENDIAN);
+				buffer = newBuffer.put(buffer.flip());
+			}
+		}
+		
+	}
+	
+	// The directory holding region files
+	private final File directory;
+	// The value codec
+	private final ValueCodec<V> codec;
+	// The compression applied to groups
+	private final Compression compression;
+	// The currently open region files
+	private final Map3D<RegionFile> regions = new Map3D<>();
+	// The first error closing an evicted region file, thrown by the operation that evicted it
+	private @Nullable IOException evictionError = null;
+	
+	/** Creates a new region storage in the given directory.
+	 * 
+	 * @param directory The directory holding region files
+	 * @param codec The codec for map values
+	 * @param compression The compression to apply to saved groups
+	 * @param maxOpenRegions The maximum number of region files kept open
+	 */
+	public Map3DRegionStorage(@NonNull File directory, @NonNull ValueCodec<V> codec, @NonNull Compression compression, int maxOpenRegions) {
+		if (maxOpenRegions <= 0) throw new IllegalArgumentException("Maximum open region count must be positive");
+		this.directory = directory;
+		this.codec = codec;
+		this.compression = compression;
+		regions.setMaxSize(maxOpenRegions, (int rx, int ry, int rz, RegionFile region) -> {
+			try {
+				region.close();
+			} catch (IOException e) {
+				if (evictionError == null) evictionError = e;
+				else evictionError.addSuppressed(e);
+			}
+		});
+	}
+	
+	/** Creates a new region storage in the given directory, keeping up to
+	 * {@link #DEFAULT_MAX_OPEN_REGIONS} region files open.
+	 * 
+	 * @param directory The directory holding region files
+	 * @param codec The codec for map values
+	 * @param compression The compression to apply to saved groups
+	 */
+	public Map3DRegionStorage(@NonNull File directory, @NonNull ValueCodec<V> codec, @NonNull Compression compression) {
+		this(directory, codec, compression, DEFAULT_MAX_OPEN_REGIONS);
+	}
+	
+	/** Gets the maximum number of region files kept open.
+	 * 
+	 * @return Maximum open region count
+	 */
+	public int getMaxOpenRegions() {
+		return regions.getMaxSize();
+	}
+	
+	/** Gets the number of region files currently open.
+	 * 
+	 * @return Open region count
+	 */
+	public int getOpenRegionCount() {
+		return regions.size();
+	}
+	
+	// Gets the slot of a group within its region
+	private static int slotOf(int gx, int gy, int gz) {
+		return (gx & REGION_MASK) | ((gy & REGION_MASK) << REGION_SIZE_LOG2) | ((gz & REGION_MASK) << (2 * REGION_SIZE_LOG2));
+	}
+	
+	/** Gets the region file with the given region coordinates, opening it if necessary. Opening a
+	 * region file may close the least recently used one, after which it must no longer be used.
+	 * 
+	 * @param rx Region X coordinate
+	 * @param ry Region Y coordinate
+	 * @param rz Region Z coordinate
+	 * @param create If the region file should be created if it does not exist
+	 * @return The region file, or <b>null</b> if it does not exist and was not created
+	 * @throws IOException If an error occurs opening the region file
+	 */
+	public @Nullable RegionFile getRegion(int rx, int ry, int rz, boolean create) throws IOException {
+		RegionFile region = regions.get(rx, ry, rz);
+		if (region == null) {
+			File file = new File(directory, "r." + rx + "." + ry + "." + rz + ".rgn");
+			if (!file.exists()) {
+				if (!create) return null;
+				directory.mkdirs();
+			}
+			region = new RegionFile(file, REGION_SLOTS);
+			regions.put(rx, ry, rz, region);
+			IOException e = evictionError;
+			if (e != null) {
+				evictionError = null;
+				throw e;
+			}
+		}
+		return region;
+	}
+	
+	//========//
+	// Saving //
+	//========//
+	
+	/** Saves every entry of a map. Each group containing entries replaces the group stored in the
+	 * corresponding region file, while groups without any entries are left unchanged.
+	 * 
+	 * @param map The map to save
+	 * @throws IOException If an error occurs writing the region files
+	 */
+	public void save(@NonNull Map3D<V> map) throws IOException {
+		// Encode every entry into its group
+		Map3D<GroupWriter> groups = new Map3D<>();
+		map.forEach((int x, int y, int z, V value) -> {
+			GroupWriter group = groups.computeIfAbsent(x >> GROUP_SIZE_LOG2, y >> GROUP_SIZE_LOG2, z >> GROUP_SIZE_LOG2, (int gx, int gy, int gz) -> new GroupWriter());
+			group.ensureRemaining(2 + codec.getSize(value));
+			group.buffer.putShort((short)((x & GROUP_MASK) | ((y & GROUP_MASK) << GROUP_SIZE_LOG2) | ((z & GROUP_MASK) << (2 * GROUP_SIZE_LOG2))));
+			codec.write(value, group.buffer);
+			group.count++;
+		});
+		
+		try {
+			groups.forEach((int gx, int gy, int gz, GroupWriter group) -> {
+				try {
+					RegionFile region = getRegion(gx >> REGION_SIZE_LOG2, gy >> REGION_SIZE_LOG2, gz >> REGION_SIZE_LOG2, true);
+					ByteBuffer buf = group.buffer.flip().putInt(0, group.count);
+					region.write(slotOf(gx, gy, gz), buf, compression);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+	
+	/** Removes a group from storage.
+	 * 
+	 * @param gx Group X coordinate
+	 * @param gy Group Y coordinate
+	 * @param gz Group Z coordinate
+	 * @throws IOException If an error occurs updating the region file
+	 */
+	public void removeGroup(int gx, int gy, int gz) throws IOException {
+		RegionFile region = getRegion(gx >> REGION_SIZE_LOG2, gy >> REGION_SIZE_LOG2, gz >> REGION_SIZE_LOG2, false);
+		if (region != null) region.remove(slotOf(gx, gy, gz));
+	}
+	
+	//=========//
+	// Loading //
+	//=========//
+	
+	/** Loads a single group into a map.
+	 * 
+	 * @param map The map to load into
+	 * @param gx Group X coordinate
+	 * @param gy Group Y coordinate
+	 * @param gz Group Z coordinate
+	 * @return If the group was present in storage
+	 * @throws IOException If an error occurs reading the region file
+	 */
+	public boolean loadGroup(@NonNull Map3D<V> map, int gx, int gy, int gz) throws IOException {
+		RegionFile region = getRegion(gx >> REGION_SIZE_LOG2, gy >> REGION_SIZE_LOG2, gz >> REGION_SIZE_LOG2, false);
+		if (region == null) return false;
+		ByteBuffer buf = region.read(slotOf(gx, gy, gz));
+		if (buf == null) return false;
+		decodeGroup(map, gx, gy, gz, buf.order(ByteOrder.LITTLE_ENDIAN));
+		return true;
+	}
+	
+	/** Loads every group of a region into a map.
+	 * 
+	 * @param map The map to load into
+	 * @param rx Region X coordinate
+	 * @param ry Region Y coordinate
+	 * @param rz Region Z coordinate
+	 * @return The number of groups loaded
+	 * @throws IOException If an error occurs reading the region file
+	 */
+	public int loadRegion(@NonNull Map3D<V> map, int rx, int ry, int rz) throws IOException {
+		RegionFile region = getRegion(rx, ry, rz, false);
+		if (region == null) return 0;
+		int loaded = 0;
+		for(int slot = 0; slot < REGION_SLOTS; slot++) {
+			ByteBuffer buf = region.read(slot);
+			if (buf == null) continue;
+			int gx = (rx << REGION_SIZE_LOG2) | (slot & REGION_MASK);
+			int gy = (ry << REGION_SIZE_LOG2) | ((slot >> REGION_SIZE_LOG2) & REGION_MASK);
+			int gz = (rz << REGION_SIZE_LOG2) | (slot >> (2 * REGION_SIZE_LOG2));
+			decodeGroup(map, gx, gy, gz, buf.order(ByteOrder.LITTLE_ENDIAN));
+			loaded++;
+		}
+		return loaded;
+	}
+	
+	// Decodes the cells of a group into a map
+	private void decodeGroup(Map3D<V> map, int gx, int gy, int gz, ByteBuffer buf) {
+		int bx = gx << GROUP_SIZE_LOG2, by = gy << GROUP_SIZE_LOG2, bz = gz << GROUP_SIZE_LOG2;
+		int count = buf.getInt();
+		for(int i = 0; i < count; i++) {
+			int cell = buf.getShort() & 0xFFFF;
+			map.put(bx | (cell & GROUP_MASK), by | ((cell >> GROUP_SIZE_LOG2) & GROUP_MASK), bz | (cell >> (2 * GROUP_SIZE_LOG2)), codec.read(buf));
+		}
+	}
+	
+	/** Forces all written data in open region files to be stored to the underlying device.
+	 * 
+	 * @throws IOException If an error occurs flushing a region file
+	 */
+	public void flush() throws IOException {
+		for(RegionFile region : regions.values()) region.flush();
+	}
+	
+	@Override
+	public void close() throws IOException {
+		IOException ex = null;
+		for(RegionFile region : regions.values()) {
+			try {
+				region.close();
+			} catch (IOException e) {
+				if (ex == null) ex = e;
+				else ex.addSuppressed(e);
+			}
+		}
+		regions.clear();
+		if (ex != null) throw ex;
+	}
+	
+}
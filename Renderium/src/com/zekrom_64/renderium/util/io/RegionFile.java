@@ -0,0 +1,401 @@
+package com.zekrom_64.renderium.util.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.Objects;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+/** <p>A region file stores a fixed number of variable-length data slots in a single file. The
+ * file is divided into fixed-size sectors, and a header at the start of the file holds a table
+ * giving the first sector, stored length, and compression of each slot. Each slot occupies a
+ * contiguous run of sectors, and sectors freed by rewriting or removing a slot are reused.</p>
+ * 
+ * <p>Rewriting a slot never overwrites its existing data. The new data is written to free sectors
+ * and the slot's header entry is updated afterwards, so if writing is interrupted the slot still
+ * holds either its old or its new data. Protecting against power loss as well requires calling
+ * {@link #flush()}, since the operating system may otherwise store the writes in any order.</p>
+ * 
+ * <p>Reads are performed through a memory mapping of the file, so reading an uncompressed slot
+ * does not copy any data and only touches the pages it needs. Writes go through the file
+ * channel and are visible to subsequent reads. Region files are not thread-safe.</p>
+ * 
+ * @author Zekrom_64
+ * 
+ */
+public class RegionFile implements Closeable {
+	
+	/** The default size of a sector in bytes. */
+	public static final int DEFAULT_SECTOR_SIZE = 4096;
+	
+	/** Enumeration of compression methods that may be applied to slot data.
+	 * 
+	 * @author Zekrom_64
+	 * 
+	 */
+	public enum Compression {
+		/** Data is stored as-is. */
+		NONE,
+		/** Data is compressed using Deflate. */
+		DEFLATE
+	}
+	
+	// Magic number at the start of a region file
+	private static final int MAGIC = 0x52474E31;
+	// The version of the region file format
+	private static final int VERSION = 1;
+	// The size of the fixed header fields
+	private static final int HEADER_SIZE = 16;
+	// The size of a single slot entry in the header
+	private static final int ENTRY_SIZE = 16;
+	
+	// The file channel
+	private final FileChannel channel;
+	// If the file was opened read-only
+	private final boolean readOnly;
+	// The size of each sector
+	private final int sectorSize;
+	// The number of slots in the file
+	private final int slotCount;
+	// The number of sectors occupied by the header
+	private final int headerSectors;
+	
+	// The first sector of each slot, or 0 if the slot is empty
+	private final int[] firstSector;
+	// The stored length of each slot
+	private final int[] storedLength;
+	// The uncompressed length of each slot
+	private final int[] rawLength;
+	// The compression of each slot
+	private final Compression[] compression;
+	
+	// Bitset of sectors that are in use
+	private final BitSet usedSectors = new BitSet();
+	// The number of sectors in the file
+	private int fileSectors;
+	// Read-only mapping of the file
+	private @Nullable MappedByteBuffer mapping = null;
+	
+	/** Opens a region file, creating it if it does not exist. The slot count and sector size are
+	 * only used when creating a new file, otherwise they are read from the file header.
+	 * 
+	 * @param file The file to open
+	 * @param slotCount The number of slots in a new file
+	 * @param sectorSize The sector size of a new file
+	 * @param readOnly If the file should be opened read-only
+	 * @throws IOException If an error occurs opening the file or the file is not a valid region file
+	 */
+	public RegionFile(@NonNull File file, int slotCount, int sectorSize, boolean readOnly) throws IOException {
+		this.readOnly = readOnly;
+		channel = readOnly ?
+			FileChannel.open(file.toPath(), StandardOpenOption.READ) :
+			FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			if (channel.size() == 0 && !readOnly) {
+				if (slotCount <= 0) throw new IllegalArgumentException("Slot count must be positive");
+				if (sectorSize < ENTRY_SIZE || Integer.bitCount(sectorSize) != 1) throw new IllegalArgumentException("Sector size must be a power of two");
+				header.putInt(MAGIC).putInt(VERSION).putInt(sectorSize).putInt(slotCount).flip();
+				writeFully(header, 0);
+			} else {
+				readFully(header, 0);
+				header.flip();
+				if (header.getInt() != MAGIC) throw new IOException("File is not a region file");
+				if (header.getInt() != VERSION) throw new IOException("Unsupported region file version");
+				sectorSize = header.getInt();
+				slotCount = header.getInt();
+				if (sectorSize < ENTRY_SIZE || Integer.bitCount(sectorSize) != 1 || slotCount <= 0) throw new IOException("Corrupt region file header");
+			}
+			this.sectorSize = sectorSize;
+			this.slotCount = slotCount;
+			headerSectors = (int)((HEADER_SIZE + (long)ENTRY_SIZE * slotCount + sectorSize - 1) / sectorSize);
+			usedSectors.set(0, headerSectors);
+			
+			firstSector = new int[slotCount];
+			storedLength = new int[slotCount];
+			rawLength = new int[slotCount];
+			compression = new Compression[slotCount];
+			
+			// Make sure the header sectors exist so the table can be mapped
+			long headerBytes = (long)headerSectors * sectorSize;
+			if (channel.size() < headerBytes) {
+				if (readOnly) throw new IOException("Truncated region file header");
+				writeFully(ByteBuffer.allocate(1), headerBytes - 1);
+			}
+			fileSectors = (int)((channel.size() + sectorSize - 1) / sectorSize);
+			
+			ByteBuffer table = map().slice(HEADER_SIZE, ENTRY_SIZE * slotCount).order(ByteOrder.LITTLE_ENDIAN);
+			Compression[] compressions = Compression.values();
+			for(int i = 0; i < slotCount; i++) {
+				int first = table.getInt(), stored = table.getInt(), raw = table.getInt(), comp = table.getInt();
+				if (first == 0) continue;
+				int count = sectorsFor(stored);
+				if (first < headerSectors || first + count > fileSectors || comp < 0 || comp >= compressions.length)
+					throw new IOException("Corrupt region file entry for slot " + i);
+				firstSector[i] = first;
+				storedLength[i] = stored;
+				rawLength[i] = raw;
+				compression[i] = compressions[comp];
+				usedSectors.set(first, first + count);
+			}
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+	
+	/** Opens a region file for reading and writing, creating it with the default sector size if
+	 * it does not exist.
+	 * 
+	 * @param file The file to open
+	 * @param slotCount The number of slots in a new file
+	 * @throws IOException If an error occurs opening the file or the file is not a valid region file
+	 */
+	public RegionFile(@NonNull File file, int slotCount) throws IOException {
+		this(file, slotCount, DEFAULT_SECTOR_SIZE, false);
+	}
+	
+	//==========//
+	// File I/O //
+	//==========//
+	
+	private void readFully(ByteBuffer buf, long pos) throws IOException {
+		while(buf.hasRemaining()) {
+			int n = channel.read(buf, pos);
+			if (n < 0) throw new IOException("Unexpected end of region file");
+			pos += n;
+		}
+	}
+	
+	private void writeFully(ByteBuffer buf, long pos) throws IOException {
+		while(buf.hasRemaining()) pos += channel.write(buf, pos);
+	}
+	
+	// Gets a mapping covering the whole file, remapping if the file has grown
+	private MappedByteBuffer map() throws IOException {
+		MappedByteBuffer m = mapping;
+		long size = (long)fileSectors * sectorSize;
+		if (m == null || m.capacity() < size) mapping = m = channel.map(MapMode.READ_ONLY, 0, size);
+		return m;
+	}
+	
+	// Gets the number of sectors needed to hold a number of bytes
+	private int sectorsFor(int length) {
+		return Math.max(1, (int)(((long)length + sectorSize - 1) / sectorSize));
+	}
+	
+	// Finds the first run of free sectors of the given length
+	private int findFreeSectors(int count) {
+		int start = usedSectors.nextClearBit(headerSectors);
+		for(;;) {
+			int end = usedSectors.nextSetBit(start);
+			if (end < 0 || end - start >= count) return start;
+			start = usedSectors.nextClearBit(end);
+		}
+	}
+	
+	// Writes the header entry for a slot
+	private void writeEntry(int slot) throws IOException {
+		ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		Compression comp = compression[slot];
+		entry.putInt(firstSector[slot]).putInt(storedLength[slot]).putInt(rawLength[slot]).putInt(comp != null ? comp.ordinal() : 0).flip();
+		writeFully(entry, HEADER_SIZE + (long)ENTRY_SIZE * slot);
+	}
+	
+	private void checkWritable() throws IOException {
+		if (readOnly) throw new IOException("Region file is read-only");
+	}
+	
+	//=================//
+	// Slot Operations //
+	//=================//
+	
+	/** Tests if a slot holds any data.
+	 * 
+	 * @param slot Slot index
+	 * @return If the slot holds data
+	 */
+	public boolean contains(int slot) {
+		return firstSector[Objects.checkIndex(slot, slotCount)] != 0;
+	}
+	
+	/** Reads the data stored in a slot. Uncompressed data is returned as a read-only view of the
+	 * file mapping, and is only valid until the slot is next written or removed.
+	 * 
+	 * @param slot Slot index
+	 * @return Slot data, or <b>null</b> if the slot is empty
+	 * @throws IOException If an error occurs reading the slot
+	 */
+	public @Nullable ByteBuffer read(int slot) throws IOException {
+		Objects.checkIndex(slot, slotCount);
+		int first = firstSector[slot];
+		if (first == 0) return null;
+		ByteBuffer stored = map().slice(first * sectorSize, storedLength[slot]);
+		switch(compression[slot]) {
+		case DEFLATE:
+			Inflater inflater = new Inflater();
+			try {
+				inflater.setInput(stored);
+				ByteBuffer raw = ByteBuffer.allocate(rawLength[slot]);
+				while(raw.hasRemaining() && !inflater.finished()) {
+					if (inflater.inflate(raw) == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+						throw new IOException("Truncated compressed data in slot " + slot);
+				}
+				return raw.flip();
+			} catch (DataFormatException e) {
+				throw new IOException("Corrupt compressed data in slot " + slot, e);
+			} finally {
+				inflater.end();
+			}
+		default:
+			return stored;
+		}
+	}
+	
+	/** Writes data to a slot, replacing any data already stored in it. If compressing the data
+	 * does not reduce its size it is stored uncompressed.
+	 * 
+	 * @param slot Slot index
+	 * @param data The data to write, which is consumed
+	 * @param comp The compression to apply to the data
+	 * @throws IOException If an error occurs writing the slot
+	 */
+	public void write(int slot, @NonNull ByteBuffer data, @NonNull Compression comp) throws IOException {
+		checkWritable();
+		Objects.checkIndex(slot, slotCount);
+		int raw = data.remaining();
+		ByteBuffer stored = data;
+		if (comp == Compression.DEFLATE) {
+			stored = deflate(data.duplicate());
+			if (stored.remaining() >= raw) {
+				stored = data;
+				comp = Compression.NONE;
+			}
+		}
+		
+		// Always write to a new run of sectors, the old sectors stay in use until the entry is updated
+		int count = sectorsFor(stored.remaining());
+		int first = findFreeSectors(count);
+		if ((long)(first + count) * sectorSize > Integer.MAX_VALUE) throw new IOException("Region file is full");
+		usedSectors.set(first, first + count);
+		
+		int length = stored.remaining();
+		try {
+			writeFully(stored, (long)first * sectorSize);
+			if (first + count > fileSectors) {
+				// Pad the file to a whole number of sectors
+				long end = (long)(first + count) * sectorSize;
+				if (channel.size() < end) writeFully(ByteBuffer.allocate(1), end - 1);
+				fileSectors = first + count;
+			}
+		} catch (IOException e) {
+			usedSectors.clear(first, first + count);
+			throw e;
+		}
+		data.position(data.limit());
+		
+		// Point the entry at the new data, then release the old sectors
+		int oldFirst = firstSector[slot];
+		int oldCount = oldFirst != 0 ? sectorsFor(storedLength[slot]) : 0;
+		firstSector[slot] = first;
+		storedLength[slot] = length;
+		rawLength[slot] = raw;
+		compression[slot] = comp;
+		writeEntry(slot);
+		if (oldFirst != 0) usedSectors.clear(oldFirst, oldFirst + oldCount);
+	}
+	
+	// Compresses data using Deflate
+	private static ByteBuffer deflate(ByteBuffer data) {
+		Deflater deflater = new Deflater();
+		try {
+			deflater.setInput(data);
+			deflater.finish();
+			ByteBuffer out = ByteBuffer.allocate(data.remaining() + (data.remaining() >> 6) + 64);
+			while(!deflater.finished()) {
+				if (!out.hasRemaining()) {
+					ByteBuffer newOut = ByteBuffer.allocate(out.capacity() * 2);
+					newOut.put(out.flip());
+					out = newOut;
+				}
+				deflater.deflate(out);
+			}
+			return out.flip();
+		} finally {
+			deflater.end();
+		}
+	}
+	
+	/** Removes the data stored in a slot, freeing its sectors.
+	 * 
+	 * @param slot Slot index
+	 * @throws IOException If an error occurs updating the file
+	 */
+	public void remove(int slot) throws IOException {
+		checkWritable();
+		Objects.checkIndex(slot, slotCount);
+		int first = firstSector[slot];
+		if (first == 0) return;
+		usedSectors.clear(first, first + sectorsFor(storedLength[slot]));
+		firstSector[slot] = 0;
+		storedLength[slot] = 0;
+		rawLength[slot] = 0;
+		compression[slot] = null;
+		writeEntry(slot);
+	}
+	
+	/** Forces any written data to be stored to the underlying device.
+	 * 
+	 * @throws IOException If an error occurs flushing the file
+	 */
+	public void flush() throws IOException {
+		if (!readOnly) channel.force(false);
+	}
+	
+	//=========//
+	// Getters //
+	//=========//
+	
+	/** Gets the number of slots in the region file.
+	 * 
+	 * @return Slot count
+	 */
+	public int getSlotCount() {
+		return slotCount;
+	}
+	
+	/** Gets the size of each sector in the region file.
+	 * 
+	 * @return Sector size in bytes
+	 */
+	public int getSectorSize() {
+		return sectorSize;
+	}
+	
+	/** Gets the number of sectors in the region file, including the header.
+	 * 
+	 * @return Sector count
+	 */
+	public int getSectorCount() {
+		return fileSectors;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		mapping = null;
+		channel.close();
+	}
+	
+}
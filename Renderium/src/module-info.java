@@ -12,6 +12,9 @@ open module com.zekrom_64.renderium {
 	
 	requires transitive org.eclipse.jdt.annotation;
 	
+	// Only used by benchmarks to measure allocations
+	requires static jdk.management;
+	
 	exports com.zekrom_64.renderium.input;
 	exports com.zekrom_64.renderium.localization;
 	exports com.zekrom_64.renderium.render;
@@ -21,6 +24,7 @@ open module com.zekrom_64.renderium {
 	exports com.zekrom_64.renderium.util;
 	exports com.zekrom_64.renderium.util.collections;
 	exports com.zekrom_64.renderium.util.geometry;
+	exports com.zekrom_64.renderium.util.io;
 	exports com.zekrom_64.renderium.util.threading;
 	
 }
\ No newline at end of file